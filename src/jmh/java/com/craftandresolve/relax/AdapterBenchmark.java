@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Gson's reflective adapters against the ones AdapterProcessor generates for the entities of
+ * SampleService, writing and reading the same people.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AdapterBenchmark {
+
+    private static final Type PEOPLE = new TypeToken<List<SampleService.Person>>() {}.getType();
+
+    @Param({"1", "100"})
+    public int people;
+
+    private Gson reflective;
+    private Gson generated;
+    private List<SampleService.Person> response;
+    private String json;
+
+    @Setup
+    public void setup() {
+        reflective = new Gson();
+        generated = new GsonBuilder().registerTypeAdapterFactory(new SampleService_RelaxAdapters()).create();
+        response = new ArrayList<>();
+        for (int i = 0; i < people; ++i) {
+            response.add(SampleService.person(i));
+        }
+        json = reflective.toJson(response, PEOPLE);
+        if (!json.equals(generated.toJson(response, PEOPLE))) {
+            throw new IllegalStateException("generated adapters write different JSON");
+        }
+    }
+
+    @Benchmark
+    public String writeReflective() {
+        return reflective.toJson(response, PEOPLE);
+    }
+
+    @Benchmark
+    public String writeGenerated() {
+        return generated.toJson(response, PEOPLE);
+    }
+
+    @Benchmark
+    public Object readReflective() {
+        return reflective.fromJson(json, PEOPLE);
+    }
+
+    @Benchmark
+    public Object readGenerated() {
+        return generated.fromJson(json, PEOPLE);
+    }
+}
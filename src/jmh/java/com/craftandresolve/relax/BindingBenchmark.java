@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Argument binding for a GET endpoint taking a path, a query and a header parameter, with and
+ * without the endpoint invocation itself, and the string-to-type conversion behind path and query values.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BindingBenchmark {
+
+    private RelaxServlet servlet;
+    private Exchange exchange;
+
+    @Setup
+    public void setup() throws Exception {
+        servlet = new RelaxServlet();
+        servlet.initialize(null, Collections.<Class<?>>singletonList(SampleService.class), null, null, false);
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Authorization", "Bearer token");
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("lang", "fr");
+        String path = "/sample/v1/person/42";
+        Stubs.Context context = Stubs.exchange("GET", path, headers, parameters, null);
+        exchange = new Exchange(context, servlet.router.match("GET", path));
+    }
+
+    @TearDown
+    public void tearDown() {
+        servlet.destroy();
+    }
+
+    @Benchmark
+    public Object[] bindArguments() throws Exception {
+        return servlet.bindArguments(exchange);
+    }
+
+    @Benchmark
+    public Object invokeEndpoint() throws Exception {
+        return servlet.invokeEndpoint(exchange);
+    }
+
+    @Benchmark
+    public Integer castInteger() {
+        return RelaxServlet.castPrimitive("42", Integer.class);
+    }
+
+    @Benchmark
+    public Double castDouble() {
+        return RelaxServlet.castPrimitive("1.5", Double.class);
+    }
+
+    @Benchmark
+    public String castString() {
+        return RelaxServlet.castPrimitive("fr", String.class);
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.service.Bulkhead;
+import com.craftandresolve.relax.annotation.service.Service;
+
+
+/**
+ * The sample endpoints on a bounded bulkhead instead of the shared I/O scheduler, for
+ * comparing schedulers under the same load.
+ */
+@Bulkhead(value = Bulkhead.Kind.BOUNDED, threads = 64, queue = 4096)
+@Service(root = "/bounded", version = "v1")
+public class BoundedSampleService extends SampleService {
+}
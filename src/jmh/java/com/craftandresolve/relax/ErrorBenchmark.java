@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.exception.HTTPCodeException;
+import com.craftandresolve.relax.exception.NotFoundException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Cost of constructing an HTTP exception with and without a recorded stack trace, from a few
+ * frames deep as it would be inside an endpoint.
+ */
+// the setting is per thread, so each benchmark thread sets up its own
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ErrorBenchmark {
+
+    @Param({"true", "false"})
+    public boolean stackTraces;
+
+    @Setup
+    public void setup() {
+        HTTPCodeException.setStackTraces(stackTraces);
+    }
+
+    @TearDown
+    public void tearDown() {
+        HTTPCodeException.setStackTraces(true);
+    }
+
+    @Benchmark
+    public Exception notFound() {
+        return nested(8);
+    }
+
+    private static Exception nested(int depth) {
+        return 0 == depth ? new NotFoundException("person-not-found", "No such person") : nested(depth - 1);
+    }
+}
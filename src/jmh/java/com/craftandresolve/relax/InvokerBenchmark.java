@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import io.reactivex.Single;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Compares Method.invoke, the bound MethodHandle invoker and a direct call of the kind
+ * RouteProcessor generates, on a typical GET endpoint shape: a couple of boxed path/query
+ * arguments and a Single result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class InvokerBenchmark {
+
+    public static class PersonService {
+        public Single<String> getPerson(Integer id, String authorization) {
+            return Single.just(authorization);
+        }
+    }
+
+    private EndpointInvoker reflective;
+    private EndpointInvoker methodHandle;
+    private EndpointInvoker generated;
+    private Object[] arguments;
+
+    @Setup
+    public void setup() throws Exception {
+        PersonService service = new PersonService();
+        Method method = PersonService.class.getMethod("getPerson", Integer.class, String.class);
+        reflective = EndpointInvoker.reflective(service, method);
+        methodHandle = EndpointInvoker.methodHandle(service, method);
+        // what RouteProcessor emits for this method
+        generated = EndpointInvoker.generated(service,
+                (container, arguments) -> ((PersonService) container).getPerson((Integer) arguments[0], (String) arguments[1]));
+        arguments = new Object[] {42, "Bearer token"};
+    }
+
+    @Benchmark
+    public Object reflection() throws Exception {
+        return reflective.invoke(arguments);
+    }
+
+    @Benchmark
+    public Object methodHandle() throws Exception {
+        return methodHandle.invoke(arguments);
+    }
+
+    @Benchmark
+    public Object generated() throws Exception {
+        return generated.invoke(arguments);
+    }
+}
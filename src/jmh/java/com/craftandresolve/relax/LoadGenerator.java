@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Drives a RelaxServlet in this process through the in-memory servlet stubs and reports
+ * throughput and latency percentiles.
+ *
+ * In open-loop mode requests are started on a fixed schedule at the given rate, whether or not
+ * earlier ones have completed, and latency is taken from each request's intended start, so a
+ * stall shows up in every request it delays. In closed-loop mode a fixed number of workers send
+ * back to back; a worker that stalls sends nothing meanwhile, so each recorded latency is also
+ * back-filled with the samples the stall kept from being taken, at the expected interval
+ * (the mean latency of the warm-up, or 1/rate per worker when a rate is given).
+ *
+ * <pre>
+ * java ... com.craftandresolve.relax.LoadGenerator --mode=open --rate=20000 --duration=30 \
+ *     --services=com.craftandresolve.relax.BoundedSampleService --mix=get,blocking --param=dispatchthreads=4
+ * </pre>
+ */
+public final class LoadGenerator {
+
+    private static final class Template {
+        final String method;
+        final String path;
+        final Map<String, String> headers;
+        final Map<String, String> parameters;
+        final byte[] body;
+
+        Template(String method, String path, Map<String, String> headers, Map<String, String> parameters, String body) {
+            this.method = method;
+            this.path = path;
+            this.headers = headers;
+            this.parameters = parameters;
+            this.body = null != body ? body.getBytes(StandardCharsets.UTF_8) : null;
+        }
+    }
+
+    private static final class Run {
+        final Histogram corrected = new Histogram();
+        final Histogram raw = new Histogram();
+        final LongAdder completed = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final AtomicInteger outstanding = new AtomicInteger();
+        long elapsed;
+    }
+
+    private final RelaxServlet servlet;
+    private final List<Template> templates;
+    private final String mode;
+    private final int concurrency;
+    private final double rate;
+
+    private LoadGenerator(RelaxServlet servlet, List<Template> templates, String mode, int concurrency, double rate) {
+        this.servlet = servlet;
+        this.templates = templates;
+        this.mode = mode;
+        this.concurrency = concurrency;
+        this.rate = rate;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        Map<String, String> initParameters = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                usage("unrecognized argument " + arg);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if ("param".equals(name)) {
+                initParameters.put(value.substring(0, value.indexOf('=')), value.substring(value.indexOf('=') + 1));
+            } else {
+                options.put(name, value);
+            }
+        }
+
+        String mode = options.getOrDefault("mode", "closed");
+        if (!"closed".equals(mode) && !"open".equals(mode)) {
+            usage("mode must be closed or open");
+        }
+        double rate = Double.parseDouble(options.getOrDefault("rate", "open".equals(mode) ? "10000" : "0"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        long duration = Long.parseLong(options.getOrDefault("duration", "10"));
+        long warmup = Long.parseLong(options.getOrDefault("warmup", "5"));
+        long blockingMillis = Long.parseLong(options.getOrDefault("blocking", "5"));
+        String services = options.getOrDefault("services", SampleService.class.getName());
+        String mix = options.getOrDefault("mix", "get,score,put,post,delete");
+
+        initParameters.put("services", services);
+        RelaxServlet servlet = new RelaxServlet();
+        servlet.init(Stubs.config(initParameters));
+
+        List<Template> templates = new ArrayList<>();
+        for (String service : services.split(",")) {
+            String root = rootOf(Class.forName(service.trim()));
+            for (String name : mix.split(",")) {
+                templates.add(template(root, name.trim(), blockingMillis));
+            }
+        }
+
+        LoadGenerator generator = new LoadGenerator(servlet, templates, mode, concurrency, rate);
+        System.out.println("mode=" + mode + " concurrency=" + concurrency + (0 < rate ? " rate=" + rate + "/s" : "")
+                + " duration=" + duration + "s warmup=" + warmup + "s services=" + services + " mix=" + mix
+                + " params=" + initParameters);
+
+        Run warm = generator.run(TimeUnit.SECONDS.toNanos(warmup), 0);
+        long expectedMicros = Math.round(warm.raw.snapshot().mean());
+        Run run = generator.run(TimeUnit.SECONDS.toNanos(duration), expectedMicros);
+        generator.report(run, expectedMicros);
+
+        servlet.destroy();
+        System.exit(0);
+    }
+
+    private Run run(long durationNanos, long expectedMicros) throws InterruptedException {
+        Run run = new Run();
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+        if ("open".equals(mode)) {
+            open(run, start, deadline);
+        } else {
+            closed(run, start, deadline, expectedMicros);
+        }
+        run.elapsed = System.nanoTime() - start;
+        return run;
+    }
+
+    private void open(Run run, long start, long deadline) throws InterruptedException {
+        long interval = (long) (1e9 / rate);
+        for (long i = 0; ; ++i) {
+            long intended = start + i * interval;
+            if (intended >= deadline) {
+                break;
+            }
+            waitUntil(intended);
+            send(templates.get((int) (i % templates.size())), run, intended);
+        }
+        long drain = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (0 < run.outstanding.get() && System.nanoTime() < drain) {
+            Thread.sleep(1);
+        }
+        run.errors.add(run.outstanding.get());
+    }
+
+    private void closed(Run run, long start, long deadline, long expectedMicros) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long interval = 0 < rate ? (long) (1e9 * concurrency / rate) : 0;
+        long expected = 0 < interval ? interval / 1000 : expectedMicros;
+        for (int w = 0; w < concurrency; ++w) {
+            int worker = w;
+            workers.execute(() -> {
+                long intended = start + (0 < interval ? worker * interval / concurrency : 0);
+                for (int i = worker; ; i += concurrency) {
+                    if (0 < interval) {
+                        waitUntil(intended);
+                    } else {
+                        intended = System.nanoTime();
+                    }
+                    if (intended >= deadline) {
+                        break;
+                    }
+                    Stubs.Context context = send(templates.get(i % templates.size()), run, intended);
+                    try {
+                        context.await(10, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    if (0 < interval) {
+                        intended += interval;
+                    } else if (0 < expected) {
+                        backfill(run.corrected, (System.nanoTime() - intended) / 1000, expected);
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(TimeUnit.NANOSECONDS.toSeconds(deadline - start) + 30, TimeUnit.SECONDS);
+        run.errors.add(run.outstanding.get());
+    }
+
+    private Stubs.Context send(Template template, Run run, long intended) {
+        Stubs.Context context = Stubs.exchange(template.method, template.path, template.headers, template.parameters, template.body);
+        Stubs.Response response = (Stubs.Response) context.getResponse();
+        long sent = System.nanoTime();
+        run.outstanding.incrementAndGet();
+        context.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                long now = System.nanoTime();
+                run.outstanding.decrementAndGet();
+                run.corrected.recordNanos(now - intended);
+                run.raw.recordNanos(now - sent);
+                run.completed.increment();
+                if (response.status >= 500) {
+                    run.errors.increment();
+                }
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        try {
+            servlet.service(context.getRequest(), response);
+        }
+        catch (Exception e) {
+            run.outstanding.decrementAndGet();
+            run.errors.increment();
+        }
+        return context;
+    }
+
+    private void report(Run run, long expectedMicros) {
+        double seconds = run.elapsed / 1e9;
+        System.out.printf("requests=%d errors=%d throughput=%.1f/s%n",
+                run.completed.sum(), run.errors.sum(), run.completed.sum() / seconds);
+        String correction = "open".equals(mode)
+                ? "from intended start"
+                : 0 < rate ? "from intended start, " + (long) (1e6 * concurrency / rate) + "us per worker"
+                : "back-filled at " + expectedMicros + "us";
+        print("corrected (" + correction + ")", run.corrected.snapshot());
+        print("uncorrected (from send)", run.raw.snapshot());
+    }
+
+    private static void print(String label, Histogram.Snapshot snapshot) {
+        System.out.printf("latency %s, us: count=%d mean=%d p50=%d p90=%d p99=%d p99.9=%d max=%d%n",
+                label, snapshot.count, Math.round(snapshot.mean()), snapshot.quantile(0.5), snapshot.quantile(0.9),
+                snapshot.quantile(0.99), snapshot.quantile(0.999), snapshot.max());
+    }
+
+    private static void backfill(Histogram histogram, long micros, long expected) {
+        // the samples a closed loop failed to take while this request was stalled
+        for (long missed = micros - expected; missed >= expected; missed -= expected) {
+            histogram.record(missed);
+        }
+    }
+
+    private static void waitUntil(long nanos) {
+        long remaining;
+        while ((remaining = nanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static String rootOf(Class<?> service) {
+        com.craftandresolve.relax.annotation.service.Service annotation =
+                service.getAnnotation(com.craftandresolve.relax.annotation.service.Service.class);
+        return annotation.root() + (annotation.version().isEmpty() ? "" : "/" + annotation.version());
+    }
+
+    private static Template template(String root, String name, long blockingMillis) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Authorization", "Bearer token");
+        headers.put("Content-Type", "application/json");
+        String person = "{\"name\":\"Ada\",\"language\":\"en\",\"active\":true,\"tags\":[\"a\",\"b\"]}";
+        switch (name) {
+            case "get":
+                return new Template("GET", root + "/person/42", headers, Collections.singletonMap("lang", "fr"), null);
+            case "score":
+                return new Template("GET", root + "/person/42/score", headers, Collections.singletonMap("scale", "2.5"), null);
+            case "blocking":
+                return new Template("GET", root + "/person/42/blocking", headers, Collections.singletonMap("ms", String.valueOf(blockingMillis)), null);
+            case "put":
+                return new Template("PUT", root + "/person/42", headers, Collections.<String, String>emptyMap(), person);
+            case "post":
+                return new Template("POST", root + "/person", headers, Collections.<String, String>emptyMap(), person);
+            case "delete":
+                return new Template("DELETE", root + "/person/42", headers, Collections.singletonMap("soft", "true"), null);
+            default:
+                usage("unknown request " + name);
+                return null;
+        }
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("usage: LoadGenerator [--mode=closed|open] [--rate=requests/s] [--concurrency=workers]"
+                + " [--duration=s] [--warmup=s] [--services=class,...] [--mix=get,score,blocking,put,post,delete]"
+                + " [--blocking=ms] [--param=initparam=value]...");
+        System.exit(2);
+    }
+}
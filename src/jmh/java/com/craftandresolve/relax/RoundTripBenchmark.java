@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A whole request through HttpServlet.service: async start, routing, binding, invocation on
+ * the endpoint's scheduler, serialization and completion, against in-memory servlet stubs.
+ * Run with the gc and stack profilers (the gradle jmh task adds them by default) to see
+ * allocation per request and where the time goes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RoundTripBenchmark {
+
+    private static final byte[] PERSON = "{\"name\":\"Ada\",\"language\":\"en\",\"active\":true,\"tags\":[\"a\",\"b\"]}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private RelaxServlet servlet;
+    private Map<String, String> headers;
+    private Map<String, String> parameters;
+
+    @Setup
+    public void setup() throws Exception {
+        servlet = new RelaxServlet();
+        servlet.initialize(null, Collections.<Class<?>>singletonList(SampleService.class), null, null, false);
+
+        headers = new HashMap<>();
+        headers.put("Authorization", "Bearer token");
+        headers.put("Content-Type", "application/json");
+        parameters = new HashMap<>();
+        parameters.put("lang", "fr");
+    }
+
+    @TearDown
+    public void tearDown() {
+        servlet.destroy();
+    }
+
+    @Benchmark
+    public int get() throws Exception {
+        return roundTrip("GET", "/sample/v1/person/42", null);
+    }
+
+    @Benchmark
+    public int put() throws Exception {
+        return roundTrip("PUT", "/sample/v1/person/42", PERSON);
+    }
+
+    @Benchmark
+    public int notFound() throws Exception {
+        return roundTrip("GET", "/sample/v1/nothing", null);
+    }
+
+    private int roundTrip(String method, String path, byte[] body) throws Exception {
+        Stubs.Context context = Stubs.exchange(method, path, headers, parameters, body);
+        servlet.service(context.getRequest(), context.getResponse());
+        if (!context.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("request did not complete: " + method + " " + path);
+        }
+        return ((Stubs.Response) context.getResponse()).status;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Route matching over tables of 10, 100 and 1000 patterns, for a literal route, a route with
+ * path parameters, and a path that matches nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RouterBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int routes;
+
+    private Router<Integer> router;
+    private String literal;
+    private String parameterized;
+
+    @Setup
+    public void setup() {
+        router = new Router<>();
+        for (int i = 0; i < routes; ++i) {
+            String root = "/service" + (i % 10) + "/v1/resource" + i;
+            if (0 == i % 2) {
+                router.add("GET", root + "/{id}/items/{item}", i);
+            } else {
+                router.add("GET", root + "/all", i);
+            }
+        }
+        int last = routes - 1;
+        literal = "/service" + (last % 10) + "/v1/resource" + last + "/all";
+        parameterized = "/service" + ((last - 1) % 10) + "/v1/resource" + (last - 1) + "/42/items/7";
+    }
+
+    @Benchmark
+    public Object literal() {
+        return router.match("GET", literal);
+    }
+
+    @Benchmark
+    public Object parameterized() {
+        return router.match("GET", parameterized);
+    }
+
+    @Benchmark
+    public Object miss() {
+        return router.match("GET", "/service3/v1/unknown/42");
+    }
+}
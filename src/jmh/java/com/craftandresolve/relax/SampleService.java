@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.DELETE;
+import com.craftandresolve.relax.annotation.endpoint.GET;
+import com.craftandresolve.relax.annotation.endpoint.POST;
+import com.craftandresolve.relax.annotation.endpoint.PUT;
+import com.craftandresolve.relax.annotation.parameter.Body;
+import com.craftandresolve.relax.annotation.parameter.Header;
+import com.craftandresolve.relax.annotation.parameter.Path;
+import com.craftandresolve.relax.annotation.parameter.Query;
+import com.craftandresolve.relax.annotation.service.Service;
+import com.craftandresolve.relax.type.EmptyResponse;
+import io.reactivex.Single;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Endpoints shaped like a typical service, one per parameter binding kind, shared by the
+ * benchmarks and the load generator.
+ */
+@Service(root = "/sample", version = "v1")
+public class SampleService {
+
+    public static class Person {
+        public Integer id;
+        public String name;
+        public String language;
+        public Boolean active;
+        public Double score;
+        public List<String> tags;
+    }
+
+    static Person person(Integer id) {
+        Person person = new Person();
+        person.id = id;
+        person.name = "Person " + id;
+        person.language = "en";
+        person.active = true;
+        person.score = id * 1.5;
+        person.tags = new ArrayList<>();
+        person.tags.add("alpha");
+        person.tags.add("beta");
+        return person;
+    }
+
+    @GET(path = "/person/{id}", description = "Get a person")
+    public Single<Person> getPerson(
+            @Path(key = "id") Integer id,
+            @Query(key = "lang") String language,
+            @Header(key = "Authorization") String authorization) {
+        Person person = person(id);
+        if (null != language) {
+            person.language = language;
+        }
+        return Single.just(person);
+    }
+
+    @GET(path = "/person/{id}/score", description = "Get a score")
+    public Single<Double> getScore(@Path(key = "id") Long id, @Query(key = "scale") Double scale) {
+        return Single.just(id * (null != scale ? scale : 1.0));
+    }
+
+    @GET(path = "/person/{id}/blocking", description = "Get a person after a blocking call")
+    public Single<Person> getPersonBlocking(@Path(key = "id") Integer id, @Query(key = "ms") Long millis) throws InterruptedException {
+        // stands in for a synchronous database or HTTP client call
+        Thread.sleep(null != millis ? millis : 5);
+        return Single.just(person(id));
+    }
+
+    @PUT(path = "/person/{id}", description = "Replace a person")
+    public Single<Person> putPerson(@Path(key = "id") Integer id, @Body Person person) {
+        person.id = id;
+        return Single.just(person);
+    }
+
+    @POST(path = "/person", description = "Create a person")
+    public Single<Person> postPerson(HttpServletRequest request, @Body Person person) {
+        person.id = request.getContentLength();
+        return Single.just(person);
+    }
+
+    @DELETE(path = "/person/{id}", description = "Delete a person")
+    public Single<EmptyResponse> deletePerson(@Path(key = "id") Integer id, @Query(key = "soft") Boolean soft) {
+        return Single.just(new EmptyResponse());
+    }
+}
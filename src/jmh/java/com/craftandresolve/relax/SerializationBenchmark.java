@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Gson response serialization along the two paths the servlet takes: building the body as a
+ * String and encoding it, and streaming JSON straight into the output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SerializationBenchmark {
+
+    @Param({"1", "100"})
+    public int people;
+
+    private Gson gson;
+    private Object response;
+    private ByteArrayOutputStream output;
+
+    @Setup
+    public void setup() {
+        gson = new Gson();
+        if (1 == people) {
+            response = SampleService.person(1);
+        } else {
+            List<SampleService.Person> list = new ArrayList<>();
+            for (int i = 0; i < people; ++i) {
+                list.add(SampleService.person(i));
+            }
+            response = list;
+        }
+        output = new ByteArrayOutputStream(64 * 1024);
+    }
+
+    @Benchmark
+    public byte[] buffered() {
+        return gson.toJson(response, response.getClass()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int streamed() throws IOException {
+        output.reset();
+        JsonWriter writer = gson.newJsonWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
+        gson.toJson(response, response.getClass(), writer);
+        writer.flush();
+        return output.size();
+    }
+}
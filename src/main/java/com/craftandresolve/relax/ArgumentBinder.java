@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import java.io.IOException;
+
+
+/**
+ * Produces one endpoint argument from the request. Binders are resolved once per endpoint
+ * during initialization, so binding a request involves no annotation or parameter reflection.
+ */
+interface ArgumentBinder {
+    Object bind(Exchange exchange) throws IOException;
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.exception.InternalErrorException;
+import com.craftandresolve.relax.exception.PayloadTooLargeException;
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Reads a request body with Servlet 3.1 non-blocking I/O, so no thread waits on a slow upload.
+ * The body is buffered whole and handed to the argument binders once the last byte has arrived.
+ */
+final class BodyReader implements ReadListener {
+
+    // Content-Length is the client's claim; the buffer grows past this only as bytes actually arrive
+    private static final int MAX_INITIAL_CAPACITY = 64 * 1024;
+    private static final int CHUNK = 8192;
+
+    private final ServletInputStream input;
+    private final SingleEmitter<byte[]> emitter;
+    private final long max;
+    private final ByteArrayOutputStream buffer;
+    private final byte[] chunk = new byte[CHUNK];
+    private boolean tooLarge;
+
+    private BodyReader(ServletInputStream input, SingleEmitter<byte[]> emitter, long contentLength, long max) {
+        this.input = input;
+        this.emitter = emitter;
+        this.max = max;
+        this.buffer = new ByteArrayOutputStream(initialCapacity(contentLength));
+    }
+
+    static Single<byte[]> read(Exchange exchange, long max) {
+        return Single.create(emitter -> {
+            ServletInputStream input = exchange.request.getInputStream();
+            input.setReadListener(new BodyReader(input, emitter, exchange.request.getContentLengthLong(), max));
+        });
+    }
+
+    /**
+     * Reads a body on the calling thread, failing with {@link TooLargeException} past max bytes (0 for no limit).
+     */
+    static byte[] readFully(InputStream input, long contentLength, long max) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(initialCapacity(contentLength));
+        byte[] chunk = new byte[CHUNK];
+        int count;
+        while ((count = input.read(chunk)) != -1) {
+            if (0 < max && buffer.size() + count > max) {
+                throw new TooLargeException();
+            }
+            buffer.write(chunk, 0, count);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static int initialCapacity(long contentLength) {
+        return contentLength > 0 ? (int) Math.min(contentLength, MAX_INITIAL_CAPACITY) : CHUNK;
+    }
+
+    @Override
+    public void onDataAvailable() throws IOException {
+        int count;
+        while (!tooLarge && input.isReady() && (count = input.read(chunk)) != -1) {
+            if (0 < max && buffer.size() + count > max) {
+                // stop reading; the rest of the body is left for the container to discard
+                tooLarge = true;
+                emitter.onError(new PayloadTooLargeException("payload-too-large", "The request body is too large."));
+                return;
+            }
+            buffer.write(chunk, 0, count);
+        }
+    }
+
+    @Override
+    public void onAllDataRead() {
+        if (!tooLarge) {
+            emitter.onSuccess(buffer.toByteArray());
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        emitter.onError(new InternalErrorException("error-reading-body", throwable));
+    }
+
+    static final class TooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Accept-Encoding negotiation and the gzip/deflate streams used for response bodies.
+ * Compressing streams never close the stream they write to, so the servlet output stays open.
+ */
+final class Compression {
+
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    private Compression() {
+    }
+
+    static String negotiate(String acceptEncoding) {
+        if (null == acceptEncoding || acceptEncoding.isEmpty()) {
+            return null;
+        }
+
+        // -1 marks a coding the header does not name
+        double gzip = -1;
+        double deflate = -1;
+        double identity = -1;
+        double any = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.split(";");
+            String coding = tokens[0].trim().toLowerCase();
+            double q = quality(tokens);
+            if (GZIP.equals(coding) || "x-gzip".equals(coding)) {
+                gzip = Math.max(gzip, q);
+            } else if (DEFLATE.equals(coding)) {
+                deflate = q;
+            } else if ("identity".equals(coding)) {
+                identity = q;
+            } else if ("*".equals(coding)) {
+                any = q;
+            }
+        }
+
+        // the wildcard only speaks for codings not named on their own, so gzip;q=0 stays refused under *
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        double best = Math.max(gzip, deflate);
+        if (best <= 0 || identity > best) {
+            return null;
+        }
+        return gzip >= deflate ? GZIP : DEFLATE;
+    }
+
+    static OutputStream wrap(OutputStream output, String encoding, boolean syncFlush) throws IOException {
+        OutputStream target = new FilterOutputStream(output) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+        return GZIP.equals(encoding)
+                ? new GZIPOutputStream(target, 8192, syncFlush)
+                : new DeflaterOutputStream(target, syncFlush);
+    }
+
+    static byte[] compress(byte[] body, String encoding) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (OutputStream output = wrap(buffer, encoding, false)) {
+            output.write(body);
+        }
+        catch (IOException e) {
+            // cannot happen writing to memory
+            throw new IllegalStateException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    static boolean isRefused(String[] tokens) {
+        return quality(tokens) <= 0;
+    }
+
+    static double quality(String[] tokens) {
+        for (int i = 1; i < tokens.length; ++i) {
+            String parameter = tokens[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                }
+                catch (NumberFormatException e) {
+                    return 1;
+                }
+            }
+        }
+        return 1;
+    }
+}
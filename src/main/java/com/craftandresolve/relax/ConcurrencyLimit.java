@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Adaptive cap on the number of requests a route or a service works on at once. The cap is
+ * estimated from the round-trip times of the requests it admits: AIMD grows it by one per
+ * window of good answers and cuts it by a tenth on a failure or a slow answer, GRADIENT scales
+ * it by the ratio of the long-term to the recent round-trip time, so it shrinks as soon as
+ * requests start queueing somewhere behind the endpoint.
+ */
+final class ConcurrencyLimit {
+
+    enum Algorithm {AIMD, GRADIENT}
+
+    private static final int INITIAL = 20;
+    private static final int MIN = 1;
+    private static final double BACKOFF = 0.9;
+    private static final double SMOOTHING = 0.2;
+    private static final double SHORT_WINDOW = 10;
+    private static final double LONG_WINDOW = 600;
+
+    final String name;
+    final LongAdder rejected = new LongAdder();
+
+    private final Algorithm algorithm;
+    private final int max;
+    private final long slowNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile int limit;
+
+    // guarded by this
+    private double estimate;
+    private double shortRtt;
+    private double longRtt;
+
+    ConcurrencyLimit(String name, Algorithm algorithm, int max, long slowNanos) {
+        this.name = name;
+        this.algorithm = algorithm;
+        this.max = max;
+        this.slowNanos = slowNanos;
+        this.limit = Math.min(INITIAL, max);
+        this.estimate = limit;
+    }
+
+    boolean tryAcquire() {
+        for (;;) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /** Gives back a permit without a sample, when the request never reached the endpoint. */
+    void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    /** Gives back a permit and feeds its round-trip time; returns the new limit, or -1 if it did not change. */
+    int release(long rttNanos, boolean failed) {
+        int busy = inFlight.getAndDecrement();
+        synchronized (this) {
+            double next = algorithm == Algorithm.AIMD ? aimd(rttNanos, failed, busy) : gradient(rttNanos, failed, busy);
+            estimate = Math.max(MIN, Math.min(max, next));
+            int rounded = (int) estimate;
+            if (rounded == limit) {
+                return -1;
+            }
+            limit = rounded;
+            return rounded;
+        }
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    private double aimd(long rtt, boolean failed, int busy) {
+        if (failed || rtt > slowNanos) {
+            return estimate * BACKOFF;
+        }
+        // a limit that is not being used says nothing about whether more would be fine
+        return 2 * busy >= estimate ? estimate + 1 / estimate : estimate;
+    }
+
+    private double gradient(long rtt, boolean failed, int busy) {
+        shortRtt = 0 == shortRtt ? rtt : shortRtt + (rtt - shortRtt) / SHORT_WINDOW;
+        longRtt = 0 == longRtt ? rtt : longRtt + (rtt - longRtt) / LONG_WINDOW;
+        if (longRtt > 2 * shortRtt) {
+            // latency went down for good; let the baseline catch up quickly
+            longRtt *= 0.95;
+        }
+        if (failed) {
+            return estimate * BACKOFF;
+        }
+        if (2 * busy < estimate) {
+            return estimate;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, longRtt / shortRtt));
+        double next = estimate * gradient + Math.sqrt(estimate);
+        return estimate * (1 - SMOOTHING) + next * SMOOTHING;
+    }
+}
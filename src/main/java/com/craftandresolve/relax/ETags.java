@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+
+/**
+ * Strong entity tags for serialized responses and If-None-Match evaluation. Tags hash the body
+ * with 64-bit FNV-1a: cheap, non-cryptographic, and stable across restarts and instances.
+ */
+final class ETags {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ETags() {
+    }
+
+    static String of(byte[] body) {
+        long hash = FNV_OFFSET;
+        for (byte b : body) {
+            hash ^= (b & 0xff);
+            hash *= FNV_PRIME;
+        }
+        return "\"" + Long.toHexString(hash) + "\"";
+    }
+
+    static String version(String version) {
+        return "\"" + version.replace("\"", "") + "\"";
+    }
+
+    static String encoded(String etag, String encoding) {
+        // a compressed representation is a different entity, so it gets its own tag
+        return etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+    }
+
+    static String negotiated(String etag, String mediaType) {
+        // so is a representation in another media type
+        return encoded(etag, mediaType.substring(mediaType.indexOf('/') + 1));
+    }
+
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (null == ifNoneMatch || null == etag) {
+            return false;
+        }
+        String trimmed = ifNoneMatch.trim();
+        if ("*".equals(trimmed)) {
+            return true;
+        }
+        // If-None-Match uses the weak comparison, so W/ prefixes are ignored on both sides
+        String tag = strip(etag);
+        for (String candidate : trimmed.split(",")) {
+            if (tag.equals(strip(candidate.trim()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String strip(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.parameter.Body;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+
+final class Endpoint {
+
+    final String verb;
+    final String pattern;
+    final Object container;
+    final Method method;
+    final ArgumentBinder[] binders;
+    final EndpointInvoker invoker;
+    final boolean readsBody;
+    final boolean bindsServletObjects;
+
+    boolean streaming;
+    WorkerPool pool;
+    boolean compress;
+    int compressionThreshold;
+    ResponseCache cache;
+    SingleFlight flight;
+    RouteMetrics metrics;
+    ConcurrencyLimit limit;
+    ConcurrencyLimit serviceLimit;
+    long deadline;
+    boolean negotiates;
+    String vary;
+
+    Endpoint(String verb, String pattern, Object container, Method method, ArgumentBinder[] binders, EndpointInvoker invoker) {
+        this.verb = verb;
+        this.pattern = pattern;
+        this.container = container;
+        this.method = method;
+        this.binders = binders;
+        this.invoker = invoker;
+        this.readsBody = Arrays.stream(method.getParameters()).anyMatch(parameter -> parameter.isAnnotationPresent(Body.class));
+        this.bindsServletObjects = Arrays.stream(method.getParameterTypes()).anyMatch(type -> type == HttpServletRequest.class || type == HttpServletResponse.class);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+
+/**
+ * Calls an endpoint method on its service instance. Failures raised by the endpoint itself
+ * are reported as InvocationTargetException whatever the strategy, so callers handle both alike.
+ */
+interface EndpointInvoker {
+
+    Object invoke(Object[] arguments) throws IllegalAccessException, InvocationTargetException;
+
+    static EndpointInvoker reflective(Object container, Method method) {
+        return arguments -> method.invoke(container, arguments);
+    }
+
+    static EndpointInvoker methodHandle(Object container, Method method) throws IllegalAccessException {
+        MethodHandle handle = MethodHandles.publicLookup()
+                .unreflect(method)
+                .bindTo(container)
+                .asSpreader(Object[].class, method.getParameterCount())
+                .asType(MethodType.methodType(Object.class, Object[].class));
+
+        return arguments -> {
+            try {
+                return (Object) handle.invokeExact(arguments);
+            }
+            catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        };
+    }
+
+    static EndpointInvoker generated(Object container, RouteTable.Invoker invoker) {
+        return arguments -> {
+            try {
+                return invoker.invoke(container, arguments);
+            }
+            catch (Exception | Error e) {
+                throw new InvocationTargetException(e);
+            }
+        };
+    }
+
+    static EndpointInvoker create(String strategy, Object container, Method method, RouteTable.Invoker generated) {
+        if (null != generated && (null == strategy || "generated".equals(strategy))) {
+            return generated(container, generated);
+        }
+        if (!"reflection".equals(strategy)) {
+            try {
+                return methodHandle(container, method);
+            }
+            catch (IllegalAccessException e) {
+                // fall back to reflection
+            }
+        }
+        return reflective(container, method);
+    }
+}
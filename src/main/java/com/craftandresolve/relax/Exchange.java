@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.codec.Codec;
+import io.reactivex.disposables.Disposable;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * State of one in-flight request: the async context, the matched endpoint with its captured
+ * path values, and the request body once it has been read ahead of binding.
+ */
+final class Exchange {
+
+    final AsyncContext context;
+    final HttpServletRequest request;
+    final HttpServletResponse response;
+    final Endpoint endpoint;
+    final String[] pathValues;
+
+    private final AtomicBoolean answered = new AtomicBoolean();
+
+    // the subscription producing the answer, disposed when a deadline or a disconnect gets there first
+    volatile Disposable upstream;
+
+    byte[] body;
+    volatile WorkerPool pool;
+    String cacheKey;
+    String encoding;
+    // null while the answer is JSON, which the Gson paths write directly
+    Codec codec;
+
+    // timing marks, taken only while metrics are enabled
+    long startedAt;
+    long invokedAt;
+    long respondedAt;
+
+    long mark() {
+        return 0 != startedAt ? System.nanoTime() : 0;
+    }
+
+    /** Claims the right to answer; only the first of the result, the deadline and a disconnect gets it. */
+    boolean answer() {
+        return answered.compareAndSet(false, true);
+    }
+
+    boolean answered() {
+        return answered.get();
+    }
+
+    /**
+     * Disposes the subscription producing the answer and, as its work is then over, releases the
+     * pool permit. Before there is a subscription the endpoint is still running; the permit is
+     * released when it returns and its result is disposed on subscription.
+     */
+    void cancel() {
+        Disposable disposable = upstream;
+        if (null != disposable) {
+            disposable.dispose();
+            release();
+        }
+    }
+
+    synchronized void release() {
+        if (null != pool) {
+            pool.release();
+            pool = null;
+        }
+    }
+
+    Exchange(AsyncContext context, Router.Match<Endpoint> match) {
+        this.context = context;
+        this.request = (HttpServletRequest) context.getRequest();
+        this.response = (HttpServletResponse) context.getResponse();
+        this.endpoint = null != match ? match.target : null;
+        this.pathValues = null != match ? match.values : null;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * Lock-free latency histogram in microseconds with HDR-style log-linear buckets: 16 linear
+ * sub-buckets per power of two, so every recorded value is kept within about 6% of its true
+ * magnitude, from 1 microsecond up to about 71 minutes. Recording threads are spread over
+ * striped bucket arrays, allocated on first use, and merged only when a snapshot is taken.
+ */
+final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int HALF = 1 << (SUB_BUCKET_BITS - 1);
+    private static final int MAX_BITS = 32;
+    static final int BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 2) * HALF;
+    private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+
+    private static final int STRIPES = stripes();
+
+    // the last slot of each stripe holds the running sum
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+
+    void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+
+    void record(long micros) {
+        AtomicLongArray stripe = stripe();
+        long value = micros < 0 ? 0 : micros > MAX_VALUE ? MAX_VALUE : micros;
+        stripe.getAndIncrement(index(value));
+        stripe.getAndAdd(BUCKETS, value);
+    }
+
+    Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long sum = 0;
+        for (int s = 0; s < STRIPES; ++s) {
+            AtomicLongArray stripe = stripes.get(s);
+            if (null != stripe) {
+                for (int i = 0; i < BUCKETS; ++i) {
+                    counts[i] += stripe.get(i);
+                }
+                sum += stripe.get(BUCKETS);
+            }
+        }
+        return new Snapshot(counts, sum);
+    }
+
+    static final class Snapshot {
+        final long[] counts;
+        final long count;
+        final long sum;
+
+        private Snapshot(long[] counts, long sum) {
+            long count = 0;
+            for (long c : counts) {
+                count += c;
+            }
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+        }
+
+        double mean() {
+            return 0 == count ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Highest value equivalent to the bucket holding the given quantile (0 to 1).
+         */
+        long quantile(double quantile) {
+            if (0 == count) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; ++i) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return upperBound(i) - 1;
+                }
+            }
+            return MAX_VALUE;
+        }
+
+        long max() {
+            for (int i = BUCKETS - 1; i >= 0; --i) {
+                if (0 != counts[i]) {
+                    return upperBound(i) - 1;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Number of recorded values whose bucket lies entirely at or below the given bound.
+         */
+        long countAtOrBelow(long micros) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS && upperBound(i) - 1 <= micros; ++i) {
+                total += counts[i];
+            }
+            return total;
+        }
+    }
+
+    static int index(long value) {
+        if (value < 2 * HALF) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    static long upperBound(int index) {
+        if (index < 2 * HALF) {
+            return index + 1;
+        }
+        int shift = index / HALF - 1;
+        long mantissa = index % HALF + HALF;
+        return (mantissa + 1) << shift;
+    }
+
+    private AtomicLongArray stripe() {
+        int s = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        AtomicLongArray stripe = stripes.get(s);
+        if (null == stripe) {
+            stripes.compareAndSet(s, null, new AtomicLongArray(BUCKETS + 1));
+            stripe = stripes.get(s);
+        }
+        return stripe;
+    }
+
+    private static int stripes() {
+        int processors = Math.min(Runtime.getRuntime().availableProcessors(), 16);
+        return Integer.highestOneBit(Math.max(1, processors - 1)) << 1;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.google.gson.Gson;
+import io.reactivex.disposables.Disposables;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+
+/**
+ * Writes the items of a Flowable endpoint result one at a time, as a JSON array or as
+ * newline-delimited JSON. The next item is requested only once the previous one has been
+ * handed to a ready servlet output, so a slow client slows the producer instead of growing a buffer.
+ * When the exchange negotiated an encoding, every item is sync-flushed through one compressor
+ * so the client can decode each item as soon as it arrives.
+ */
+final class ItemStreamWriter implements Subscriber<Object> {
+
+    private static final byte[] EMPTY_ARRAY = "[]".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ARRAY_END = "]".getBytes(StandardCharsets.UTF_8);
+
+    private final Exchange exchange;
+    private final Gson gson;
+    private final boolean ndjson;
+    private final Function<Throwable, byte[]> errorRenderer;
+    private final ByteArrayOutputStream sink;
+    private final OutputStream compressor;
+
+    private ServletOutputStream output;
+    private Subscription subscription;
+    private byte[] pending;
+    private int items;
+    private boolean requested;
+    private boolean draining;
+    private boolean done;
+    private boolean closed;
+    private boolean finished;
+
+    ItemStreamWriter(Exchange exchange, Gson gson, boolean ndjson, Function<Throwable, byte[]> errorRenderer) {
+        this.exchange = exchange;
+        this.gson = gson;
+        this.ndjson = ndjson;
+        this.errorRenderer = errorRenderer;
+        if (null != exchange.encoding) {
+            this.sink = new ByteArrayOutputStream();
+            try {
+                this.compressor = Compression.wrap(sink, exchange.encoding, true);
+            }
+            catch (IOException e) {
+                // writing the header into memory does not fail
+                throw new IllegalStateException(e);
+            }
+        } else {
+            this.sink = null;
+            this.compressor = null;
+        }
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+        synchronized (this) {
+            subscription = s;
+        }
+        exchange.upstream = Disposables.fromRunnable(s::cancel);
+        if (exchange.answered()) {
+            s.cancel();
+            exchange.release();
+            return;
+        }
+        try {
+            output = exchange.response.getOutputStream();
+            output.setWriteListener(new WriteListener() {
+                @Override
+                public void onWritePossible() {
+                    drain();
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    // the client went away; stop producing
+                    s.cancel();
+                    finish();
+                }
+            });
+        }
+        catch (IOException | IllegalStateException e) {
+            s.cancel();
+            finish();
+        }
+    }
+
+    @Override
+    public void onNext(Object item) {
+        String json = gson.toJson(item, item.getClass());
+        synchronized (this) {
+            pending = encode((ndjson ? json + "\n" : (0 == items ? "[" : ",") + json).getBytes(StandardCharsets.UTF_8), false);
+            requested = false;
+            ++items;
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        synchronized (this) {
+            if (0 < items) {
+                // the status line is gone already; cutting the body short is all that is left
+                finish();
+                return;
+            }
+            pending = encode(errorRenderer.apply(throwable), true);
+            done = true;
+            closed = true;
+        }
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (this) {
+            done = true;
+        }
+        drain();
+    }
+
+    private synchronized void drain() {
+        if (draining || finished || null == output) {
+            return;
+        }
+        draining = true;
+        try {
+            while (output.isReady()) {
+                if (null != pending) {
+                    byte[] chunk = pending;
+                    pending = null;
+                    output.write(chunk);
+                }
+                else if (closed) {
+                    finish();
+                    return;
+                }
+                else if (done) {
+                    closed = true;
+                    if (!ndjson) {
+                        pending = encode(0 == items ? EMPTY_ARRAY : ARRAY_END, true);
+                    } else if (null != compressor) {
+                        pending = encode(new byte[0], true);
+                    }
+                }
+                else if (!requested) {
+                    requested = true;
+                    subscription.request(1);
+                }
+                else {
+                    return;
+                }
+            }
+        }
+        catch (IOException e) {
+            subscription.cancel();
+            finish();
+        }
+        finally {
+            draining = false;
+        }
+    }
+
+    private byte[] encode(byte[] bytes, boolean last) {
+        if (null == compressor) {
+            return bytes;
+        }
+        try {
+            compressor.write(bytes);
+            if (last) {
+                compressor.close();
+            } else {
+                compressor.flush();
+            }
+        }
+        catch (IOException e) {
+            // writing into memory does not fail
+            throw new IllegalStateException(e);
+        }
+        byte[] encoded = sink.toByteArray();
+        sink.reset();
+        return encoded;
+    }
+
+    private synchronized void finish() {
+        if (!finished) {
+            finished = true;
+            exchange.release();
+            if (exchange.answer()) {
+                exchange.context.complete();
+            }
+        }
+    }
+}
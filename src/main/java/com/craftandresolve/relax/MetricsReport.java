@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.google.gson.Gson;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Renders route metrics, pool queue depths and cache and coalescing statistics, either as
+ * Prometheus text exposition or as JSON. Latencies in JSON are in microseconds.
+ */
+final class MetricsReport {
+
+    private static final long[] BOUNDS = {
+            500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000,
+            1_000_000, 2_500_000, 5_000_000, 10_000_000};
+
+    private static final Set<String> GAUGES = new HashSet<>(Arrays.asList("entries", "bytes", "inFlight", "limit"));
+
+    private final Collection<RouteMetrics> routes;
+    private final Map<String, Integer> queueDepths;
+    private final Map<String, Map<String, Map<String, Long>>> statistics = new LinkedHashMap<>();
+
+    MetricsReport(Collection<RouteMetrics> routes, Map<String, Integer> queueDepths) {
+        this.routes = routes;
+        this.queueDepths = queueDepths;
+    }
+
+    MetricsReport add(String family, Map<String, Map<String, Long>> values) {
+        statistics.put(family, values);
+        return this;
+    }
+
+    String prometheus() {
+        StringBuilder out = new StringBuilder(4096);
+
+        out.append("# HELP relax_requests_total Completed requests by route and status.\n");
+        out.append("# TYPE relax_requests_total counter\n");
+        for (RouteMetrics route : routes) {
+            for (Map.Entry<Integer, LongAdder> status : route.statuses.entrySet()) {
+                out.append("relax_requests_total{route=\"").append(escape(route.name))
+                        .append("\",status=\"").append(status.getKey()).append("\"} ")
+                        .append(status.getValue().sum()).append('\n');
+            }
+        }
+
+        out.append("# HELP relax_requests_in_flight Requests started but not yet completed.\n");
+        out.append("# TYPE relax_requests_in_flight gauge\n");
+        for (RouteMetrics route : routes) {
+            out.append("relax_requests_in_flight{route=\"").append(escape(route.name)).append("\"} ")
+                    .append(route.inFlight.sum()).append('\n');
+        }
+
+        out.append("# HELP relax_request_duration_seconds Request latency by route and phase.\n");
+        out.append("# TYPE relax_request_duration_seconds histogram\n");
+        for (RouteMetrics route : routes) {
+            for (int p = 0; p < RouteMetrics.PHASES.length; ++p) {
+                Histogram.Snapshot snapshot = route.phases[p].snapshot();
+                if (0 == snapshot.count) {
+                    continue;
+                }
+                String labels = "route=\"" + escape(route.name) + "\",phase=\"" + RouteMetrics.PHASES[p] + "\"";
+                for (long bound : BOUNDS) {
+                    out.append("relax_request_duration_seconds_bucket{").append(labels).append(",le=\"")
+                            .append(seconds(bound)).append("\"} ").append(snapshot.countAtOrBelow(bound)).append('\n');
+                }
+                out.append("relax_request_duration_seconds_bucket{").append(labels).append(",le=\"+Inf\"} ")
+                        .append(snapshot.count).append('\n');
+                out.append("relax_request_duration_seconds_sum{").append(labels).append("} ")
+                        .append(seconds(snapshot.sum)).append('\n');
+                out.append("relax_request_duration_seconds_count{").append(labels).append("} ")
+                        .append(snapshot.count).append('\n');
+            }
+        }
+
+        out.append("# HELP relax_pool_queue_depth Tasks waiting for a worker thread.\n");
+        out.append("# TYPE relax_pool_queue_depth gauge\n");
+        for (Map.Entry<String, Integer> pool : queueDepths.entrySet()) {
+            out.append("relax_pool_queue_depth{pool=\"").append(escape(pool.getKey())).append("\"} ")
+                    .append(pool.getValue()).append('\n');
+        }
+
+        for (Map.Entry<String, Map<String, Map<String, Long>>> family : statistics.entrySet()) {
+            Map<String, StringBuilder> metrics = new LinkedHashMap<>();
+            for (Map.Entry<String, Map<String, Long>> owner : family.getValue().entrySet()) {
+                for (Map.Entry<String, Long> value : owner.getValue().entrySet()) {
+                    boolean gauge = GAUGES.contains(value.getKey());
+                    String metric = "relax_" + family.getKey() + "_" + snake(value.getKey()) + (gauge ? "" : "_total");
+                    StringBuilder lines = metrics.computeIfAbsent(metric, k -> new StringBuilder()
+                            .append("# TYPE ").append(k).append(gauge ? " gauge\n" : " counter\n"));
+                    lines.append(metric).append("{route=\"").append(escape(owner.getKey().replace('|', ' ')))
+                            .append("\"} ").append(value.getValue()).append('\n');
+                }
+            }
+            for (StringBuilder lines : metrics.values()) {
+                out.append(lines);
+            }
+        }
+
+        return out.toString();
+    }
+
+    String json(Gson gson) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        Map<String, Object> routeReports = new LinkedHashMap<>();
+        for (RouteMetrics route : routes) {
+            Map<String, Object> routeReport = new LinkedHashMap<>();
+            routeReport.put("inFlight", route.inFlight.sum());
+            Map<String, Long> statuses = new LinkedHashMap<>();
+            for (Map.Entry<Integer, LongAdder> status : route.statuses.entrySet()) {
+                statuses.put(String.valueOf(status.getKey()), status.getValue().sum());
+            }
+            routeReport.put("statuses", statuses);
+            Map<String, Object> phases = new LinkedHashMap<>();
+            for (int p = 0; p < RouteMetrics.PHASES.length; ++p) {
+                Histogram.Snapshot snapshot = route.phases[p].snapshot();
+                if (0 == snapshot.count) {
+                    continue;
+                }
+                Map<String, Object> phase = new LinkedHashMap<>();
+                phase.put("count", snapshot.count);
+                phase.put("mean", Math.round(snapshot.mean()));
+                phase.put("p50", snapshot.quantile(0.5));
+                phase.put("p90", snapshot.quantile(0.9));
+                phase.put("p99", snapshot.quantile(0.99));
+                phase.put("p999", snapshot.quantile(0.999));
+                phase.put("max", snapshot.max());
+                phases.put(RouteMetrics.PHASES[p], phase);
+            }
+            routeReport.put("phases", phases);
+            routeReports.put(route.name, routeReport);
+        }
+        report.put("routes", routeReports);
+        report.put("queueDepths", queueDepths);
+        report.putAll(statistics);
+        return gson.toJson(report);
+    }
+
+    private static String seconds(long micros) {
+        return BigDecimal.valueOf(micros, 6).stripTrailingZeros().toPlainString();
+    }
+
+    private static String snake(String name) {
+        StringBuilder snake = new StringBuilder(name.length() + 4);
+        for (char c : name.toCharArray()) {
+            if (Character.isUpperCase(c)) {
+                snake.append('_').append(Character.toLowerCase(c));
+            } else {
+                snake.append(c);
+            }
+        }
+        return snake.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
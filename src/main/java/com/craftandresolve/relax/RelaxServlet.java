@@ -22,31 +22,67 @@ import com.craftandresolve.relax.annotation.parameter.Body;
 import com.craftandresolve.relax.annotation.parameter.Header;
 import com.craftandresolve.relax.annotation.parameter.Path;
 import com.craftandresolve.relax.annotation.parameter.Query;
+import com.craftandresolve.relax.annotation.service.Bulkhead;
 import com.craftandresolve.relax.annotation.service.Service;
+import com.craftandresolve.relax.codec.CborCodec;
+import com.craftandresolve.relax.codec.Codec;
+import com.craftandresolve.relax.codec.JsonCodec;
+import com.craftandresolve.relax.exception.BadRequestException;
+import com.craftandresolve.relax.exception.GatewayTimeoutException;
 import com.craftandresolve.relax.exception.HTTPCodeException;
 import com.craftandresolve.relax.exception.InternalErrorException;
 import com.craftandresolve.relax.exception.NotFoundException;
+import com.craftandresolve.relax.exception.PayloadTooLargeException;
+import com.craftandresolve.relax.exception.ServiceUnavailableException;
 import com.craftandresolve.relax.type.CorsPreflightResponse;
 import com.craftandresolve.relax.type.EmptyResponse;
+import com.craftandresolve.relax.type.Response;
+import com.craftandresolve.relax.type.Versioned;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Completable;
+import io.reactivex.CompletableObserver;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.MaybeObserver;
+import io.reactivex.Observable;
 import io.reactivex.Single;
 import io.reactivex.SingleObserver;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.schedulers.Schedulers;
 
+import javax.servlet.AsyncEvent;
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class  RelaxServlet extends HttpServlet {
@@ -68,7 +104,7 @@ public class  RelaxServlet extends HttpServlet {
         String format;
     }
 
-    private class DirectoryEntity {
+    private static class DirectoryEntity {
         String type;
         String format;
         DirectoryEntity ofType;
@@ -84,6 +120,8 @@ public class  RelaxServlet extends HttpServlet {
         List<QueryArgument> queryArguments;
         DirectoryEntity request;
         DirectoryEntity response;
+        String responseKind;
+        List<String> formats;
     }
 
     private class DirectoryService {
@@ -107,11 +145,66 @@ public class  RelaxServlet extends HttpServlet {
 
     private Gson gson;
 
-    private final Map<String, Object> endpointContainers = new HashMap<>();
-    private final Map<String, Method> endpoints = new HashMap<>();
+    private static final int MAX_ERROR_BODIES = 256;
+    private final Map<String, byte[]> errorBodies = new ConcurrentHashMap<>();
+
+    private final Map<String, Endpoint> endpoints = new LinkedHashMap<>();
+    final Router<Endpoint> router = new Router<>();
+
+    private final WorkerPool defaultPool = WorkerPool.io("io");
+    private final Map<String, WorkerPool> pools = new LinkedHashMap<>();
+
+    // routes of paths whose GET answer is cached, so a hit skips the router; GET is the only verb cached
+    private int cachedPathBound;
+    private final Map<String, Router.Match<Endpoint>> cachedRoutes = Collections.synchronizedMap(new LinkedHashMap<String, Router.Match<Endpoint>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Router.Match<Endpoint>> eldest) {
+            return size() > cachedPathBound;
+        }
+    });
 
     private String directory;
     private String directoryJson;
+    private String directoryEtag;
+    private byte[] directoryGzip;
+
+    private String invoker;
+    private boolean streamJson;
+    private boolean nonBlocking;
+    private boolean etags;
+    private boolean compression;
+    private int compressionThreshold = 1024;
+    private ExecutorService dispatchExecutor;
+    private String metrics;
+    private String codecNames;
+    private String warmUpMode;
+    private final Map<String, Codec> codecs = new LinkedHashMap<>();
+    private boolean debug;
+    private boolean stackless;
+    private RouteMetrics unmatchedMetrics;
+    private ConcurrencyLimit.Algorithm limitAlgorithm;
+    private int limitMax = 1000;
+    private long limitLatency = TimeUnit.SECONDS.toNanos(1);
+    private String retryAfter = "1";
+    private final Map<String, ConcurrencyLimit> limits = new LinkedHashMap<>();
+    private long deadline;
+    private String deadlineHeader = "X-Request-Timeout";
+    private static final long TIMEOUT_MARGIN = 1000;
+    private final GatewayTimeoutException deadlineExceeded =
+            new GatewayTimeoutException("deadline-exceeded", "The request did not complete before its deadline.");
+    private long maxBody;
+    private final PayloadTooLargeException bodyTooLarge =
+            new PayloadTooLargeException("payload-too-large", "The request body is too large.");
+    private final ServiceUnavailableException limitExceeded =
+            new ServiceUnavailableException("concurrency-limit", "The endpoint is at its concurrency limit; retry later.");
+    private final ServiceUnavailableException serviceOverloaded =
+            new ServiceUnavailableException("service-overloaded", "The service has no capacity for this request.");
+    private final NotFoundException endpointNotFound =
+            new NotFoundException("endpoint-not-found", "No endpoint was found.");
+
+    private ServiceFactory serviceFactory;
+    private long lifecycleTimeout = TimeUnit.SECONDS.toMillis(60);
+    private final Map<Class<?>, Object> services = new LinkedHashMap<>();
 
     private String corsOrigins;
     private String corsLifetime;
@@ -120,57 +213,6 @@ public class  RelaxServlet extends HttpServlet {
 
     //
 
-    private String trimPath(String path) {
-        if(path.length() > 1) {
-            int start = 0;
-            int end = path.length();
-            if (path.charAt(start) == '/') {
-                ++start;
-            }
-            if (path.charAt(end - 1) == '/') {
-                --end;
-            }
-            return path.substring(start, end);
-        }
-        return path;
-    }
-
-    private boolean requestPathMatchesPattern(String requestPath, String pattern) {
-
-        // trim verb
-        String pathVerb = (requestPath.split("\\|"))[0];
-        String patternVerb = (pattern.split("\\|"))[0];
-        if(!pathVerb.equals(patternVerb)) {
-            return false;
-        }
-
-        requestPath = requestPath.substring(requestPath.indexOf('|')+1, requestPath.length());
-        pattern = pattern.substring(pattern.indexOf('|')+1, pattern.length());
-
-        // trim ends
-        requestPath = trimPath(requestPath);
-        pattern = trimPath(pattern);
-
-        // split
-        String[] pathParts = requestPath.split("/");
-        String[] patternParts = pattern.split("/");
-
-        if(pathParts.length != patternParts.length) {
-            return false;
-        }
-
-        for(int i=0; i<patternParts.length; ++i) {
-            String pathPart = pathParts[i];
-            String patternPart = patternParts[i];
-
-            if(patternPart.charAt(0) != '{' && !pathPart.equals(patternPart)) {
-                return false;
-            }
-        }
-
-        return true;
-    }
-
     private boolean isValidPattern(String pattern) {
         if (pattern.isEmpty() || pattern.equals("/")) {
             return true;
@@ -212,32 +254,209 @@ public class  RelaxServlet extends HttpServlet {
         return true;
     }
 
-    private void addEndpoint(String verb, String pattern, Object container, Method endpoint) {
-        endpointContainers.put(verb + "|" + pattern, container);
+    private WorkerPool addPool(String name, Bulkhead bulkhead) {
+        // a service deployed under several roots keeps one bulkhead
+        WorkerPool pool = pools.get(name);
+        if (null == pool) {
+            pool = WorkerPool.create(name, bulkhead);
+            pools.put(name, pool);
+        }
+        return pool;
+    }
+
+    private ConcurrencyLimit addLimit(String name) {
+        if (null == limitAlgorithm) {
+            return null;
+        }
+        return limits.computeIfAbsent(name, k -> new ConcurrencyLimit(name, limitAlgorithm, limitMax, limitLatency));
+    }
+
+    private void addEndpoint(String verb, String pattern, Object container, Method method, RouteTable.Route route, WorkerPool pool, ConcurrencyLimit serviceLimit) throws ServletException {
+        Endpoint endpoint = new Endpoint(
+                verb,
+                pattern,
+                container,
+                method,
+                createBinders(method, route.arguments, Router.parameterLabels(pattern)),
+                EndpointInvoker.create(invoker, container, method, route.invoker));
+        endpoint.streaming = method.isAnnotationPresent(Streaming.class) ? method.getAnnotation(Streaming.class).value() : streamJson;
+        endpoint.pool = pool;
+
+        Compressed compressed = method.getAnnotation(Compressed.class);
+        endpoint.compress = null != compressed ? compressed.value() : compression;
+        endpoint.compressionThreshold = null != compressed && compressed.threshold() >= 0 ? compressed.threshold() : compressionThreshold;
+
+        endpoint.negotiates = codecs.size() > 1 && !"stream".equals(responseKind(method.getReturnType()));
+        endpoint.vary = endpoint.negotiates
+                ? endpoint.compress ? "Accept, Accept-Encoding" : "Accept"
+                : endpoint.compress ? "Accept-Encoding" : null;
+
+        Cached cached = method.getAnnotation(Cached.class);
+        if (null != cached) {
+            String kind = responseKind(method.getReturnType());
+            if (!"GET".equals(verb) || !("single".equals(kind) || "optional".equals(kind))) {
+                throw new ServletException("@Cached requires a GET endpoint with a single result: " + method);
+            }
+            endpoint.cache = new ResponseCache(endpoint, cached);
+            // cached bodies are stored whole, so the endpoint is never streamed
+            endpoint.streaming = false;
+            cachedPathBound += cached.maxEntries();
+        }
+
+        Coalesced coalesced = method.getAnnotation(Coalesced.class);
+        if (null != coalesced) {
+            String kind = responseKind(method.getReturnType());
+            if (!"GET".equals(verb) || !("single".equals(kind) || "optional".equals(kind))) {
+                throw new ServletException("@Coalesced requires a GET endpoint with a single result: " + method);
+            }
+            if (endpoint.bindsServletObjects) {
+                throw new ServletException("@Coalesced endpoints cannot take the servlet request or response: " + method);
+            }
+            endpoint.flight = new SingleFlight(endpoint, coalesced);
+            // every waiting request gets the same serialized bytes
+            endpoint.streaming = false;
+        }
+        if (null != metrics) {
+            endpoint.metrics = new RouteMetrics(verb + " " + pattern);
+        }
+        endpoint.limit = addLimit(verb + " " + pattern);
+
+        Deadline endpointDeadline = method.getAnnotation(Deadline.class);
+        endpoint.deadline = null != endpointDeadline ? endpointDeadline.value() : deadline;
+        endpoint.serviceLimit = serviceLimit;
         endpoints.put(verb + "|" + pattern, endpoint);
+        router.add(verb, pattern, endpoint);
+    }
+
+    private List<String> formats(String responseKind) {
+        // item streams are framed as JSON arrays or lines, so only the JSON codec can write them
+        return "stream".equals(responseKind)
+                ? Arrays.asList(JsonCodec.MEDIA_TYPE, "application/x-ndjson")
+                : new ArrayList<>(codecs.keySet());
+    }
+
+    private Codec acceptedCodec(String accept) {
+        if (null == accept || codecs.size() < 2) {
+            return null;
+        }
+        String[] parts = accept.split(",");
+        String[] types = new String[parts.length];
+        double[] qualities = new double[parts.length];
+        for (int i = 0; i < parts.length; ++i) {
+            String[] tokens = parts[i].split(";");
+            types[i] = tokens[0].trim().toLowerCase();
+            qualities[i] = Compression.quality(tokens);
+        }
+
+        // each format takes the q-value of the most specific range naming it; the highest wins, the earliest listed on a tie
+        Codec best = null;
+        double bestQuality = 0;
+        int bestIndex = parts.length;
+        for (Map.Entry<String, Codec> format : codecs.entrySet()) {
+            String type = format.getKey();
+            String range = type.substring(0, type.indexOf('/') + 1) + "*";
+            int index = -1;
+            int specificity = -1;
+            for (int i = 0; i < types.length; ++i) {
+                int matched = type.equals(types[i]) ? 2 : range.equals(types[i]) ? 1 : "*/*".equals(types[i]) ? 0 : -1;
+                if (matched > specificity) {
+                    specificity = matched;
+                    index = i;
+                }
+            }
+            if (index < 0 || qualities[index] <= 0) {
+                continue;
+            }
+            if (qualities[index] > bestQuality || qualities[index] == bestQuality && index < bestIndex) {
+                best = format.getValue();
+                bestQuality = qualities[index];
+                bestIndex = index;
+            }
+        }
+        // JSON is written by the Gson paths directly
+        return null != best && !JsonCodec.MEDIA_TYPE.equals(best.getMediaType()) ? best : null;
+    }
+
+    private Codec contentCodec(String contentType) {
+        if (null == contentType || codecs.size() < 2) {
+            return null;
+        }
+        int semicolon = contentType.indexOf(';');
+        String type = (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim().toLowerCase();
+        return JsonCodec.MEDIA_TYPE.equals(type) ? null : codecs.get(type);
+    }
+
+    private Codec createCodec(String name) throws ServletException {
+        if ("cbor".equals(name)) {
+            return new CborCodec(gson);
+        }
+        try {
+            Class<?> clazz = Class.forName(name);
+            try {
+                return (Codec) clazz.getConstructor(Gson.class).newInstance(gson);
+            }
+            catch (NoSuchMethodException e) {
+                return (Codec) clazz.getConstructor().newInstance();
+            }
+        }
+        catch (ReflectiveOperationException | ClassCastException e) {
+            throw new ServletException("Cannot create codec " + name, e);
+        }
     }
 
-    private Map<String, String> generatePathValues(AsyncContext context, String pattern) {
-        Map<String, String> map = new HashMap<>();
+    private ArgumentBinder[] createBinders(Method method, RouteTable.Argument[] arguments, String[] pathLabels) throws ServletException {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        ArgumentBinder[] binders = new ArgumentBinder[parameterTypes.length];
 
-        String[] patternParts = pattern.split("/");
-        String[] pathParts = ((HttpServletRequest)context.getRequest()).getPathInfo().split("/");
+        for(int i = 0; i < parameterTypes.length; ++i) {
+            RouteTable.Argument argument = arguments[i];
+            Class<?> parameterClass = parameterTypes[i];
 
-        for(int i=0; i<patternParts.length; ++i) {
-            String patternPart = patternParts[i];
-            String pathPart = pathParts[i];
+            if(null == argument) {
+                throw new ServletException("Unbindable parameter " + method.getParameters()[i].getName() + " of endpoint " + method);
+            }
 
-            if(patternPart.startsWith("{")) {
-                String label = patternPart.substring(1, patternPart.length()-1);
-                map.put(label, pathPart);
+            switch (argument.kind) {
+                case REQUEST:
+                    binders[i] = exchange -> exchange.request;
+                    break;
+                case RESPONSE:
+                    binders[i] = exchange -> exchange.response;
+                    break;
+                case BODY:
+                    binders[i] = exchange -> {
+                        if (null == exchange.body && 0 < maxBody) {
+                            // a limited body is read whole, so it is counted before anything decodes it
+                            exchange.body = BodyReader.readFully(exchange.request.getInputStream(), exchange.request.getContentLengthLong(), maxBody);
+                        }
+                        Codec codec = contentCodec(exchange.request.getContentType());
+                        if (null != codec) {
+                            return codec.decode(null != exchange.body ? new ByteArrayInputStream(exchange.body) : exchange.request.getInputStream(), parameterClass);
+                        }
+                        return null != exchange.body
+                                ? gson.fromJson(new InputStreamReader(new ByteArrayInputStream(exchange.body), StandardCharsets.UTF_8), parameterClass)
+                                : gson.fromJson(exchange.request.getReader(), parameterClass);
+                    };
+                    break;
+                case HEADER:
+                    String header = argument.key;
+                    binders[i] = exchange -> exchange.request.getHeader(header);
+                    break;
+                case PATH:
+                    int index = Arrays.asList(pathLabels).indexOf(argument.key);
+                    binders[i] = exchange -> castPrimitive(index < 0 ? null : exchange.pathValues[index], parameterClass);
+                    break;
+                default:
+                    String key = argument.key;
+                    binders[i] = exchange -> castPrimitive(exchange.request.getParameter(key), parameterClass);
             }
         }
 
-        return map;
+        return binders;
     }
 
     @SuppressWarnings("unchecked")
-    private <T> T castPrimitive(String s, Class<T> clazz) {
+    static <T> T castPrimitive(String s, Class<T> clazz) {
         if(clazz == String.class) {
             return (T)s;
         }
@@ -265,79 +484,156 @@ public class  RelaxServlet extends HttpServlet {
         throw new IllegalArgumentException();
     }
 
-    private Single<?> invokeEndpoint(AsyncContext context, Object container, Method method, String pattern) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException, IOException {
+    Object invokeEndpoint(Exchange exchange) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException, IOException {
+        if (!stackless) {
+            return exchange.endpoint.invoker.invoke(bindArguments(exchange));
+        }
+        // only exceptions constructed on this thread while the endpoint runs are affected, not other servlets' or code's
+        boolean traced = HTTPCodeException.setStackTraces(false);
+        try {
+            return exchange.endpoint.invoker.invoke(bindArguments(exchange));
+        }
+        finally {
+            HTTPCodeException.setStackTraces(traced);
+        }
+    }
+
+    Object[] bindArguments(Exchange exchange) throws IOException {
+        ArgumentBinder[] binders = exchange.endpoint.binders;
 
-        Map<String, String> pathValues = generatePathValues(context, pattern);
+        Object[] arguments = new Object[binders.length];
+        for(int i = 0; i < binders.length; ++i) {
+            arguments[i] = binders[i].bind(exchange);
+        }
 
-        Annotation[][] annotations = method.getParameterAnnotations();
-        Class<?>[] parameterTypes = method.getParameterTypes();
+        return arguments;
+    }
 
-        List<Object> parameters = new ArrayList<>();
-        for(int i = 0; i < parameterTypes.length; ++i) {
-            Class<?> parameterClass = parameterTypes[i];
+    private void invokeOnPool(Exchange exchange, ResponseObserver observer) {
+        SingleFlight flight = exchange.endpoint.flight;
+        if (null != flight) {
+            flight.join(flight.key(exchange.request), () -> invokeShared(exchange)).subscribe(observer);
+            return;
+        }
 
-            if(parameterClass == HttpServletRequest.class) {
-                parameters.add(context.getRequest());
+        WorkerPool pool = exchange.endpoint.pool;
+        if (!pool.tryAcquire()) {
+            observer.onError(serviceOverloaded);
+            return;
+        }
+        exchange.pool = pool;
+        pool.scheduler.scheduleDirect(() -> {
+            if (exchange.answered()) {
+                // the deadline passed or the client left while the request was queued
+                exchange.release();
+                return;
             }
-            else if(parameterClass == HttpServletResponse.class) {
-                parameters.add(context.getResponse());
+            exchange.invokedAt = exchange.mark();
+            try {
+                subscribe(exchange, findAndInvokeEndpoint(exchange), observer);
             }
-            else {
-                for(Annotation annotation : annotations[i]) {
+            catch (RuntimeException e) {
+                // a bare scheduled task has nobody else to hand the failure to; the observer answers and releases the permits
+                observer.onError(e);
+            }
+        });
+    }
 
-                    Class<?> annotationClass = annotation.annotationType();
+    private Maybe<Object> invokeShared(Exchange exchange) {
+        // runs for the first of the coalesced requests; the pool permit belongs to the flight, not to
+        // that request, so it is held until the shared work has ended whoever is still waiting for it
+        return Maybe.defer(() -> {
+            WorkerPool pool = exchange.endpoint.pool;
+            if (!pool.tryAcquire()) {
+                return Maybe.error(serviceOverloaded);
+            }
+            return Maybe.defer(() -> {
+                        exchange.invokedAt = exchange.mark();
+                        return toMaybe(findAndInvokeEndpoint(exchange));
+                    })
+                    .subscribeOn(pool.scheduler)
+                    .map(o -> {
+                        if (o instanceof EmptyResponse || o instanceof Response) {
+                            return o;
+                        }
+                        byte[] body = gson.toJson(o, o.getClass()).getBytes(StandardCharsets.UTF_8);
+                        return new SingleFlight.Shared(o, body, !(o instanceof Versioned) && etags ? ETags.of(body) : null);
+                    })
+                    .doFinally(pool::release);
+        });
+    }
 
-                    if(annotationClass == Body.class) {
-                        parameters.add(gson.fromJson(context.getRequest().getReader(), parameterTypes[i]));
-                    }
-                    else if(annotationClass == Header.class) {
-                        parameters.add(((HttpServletRequest)context.getRequest()).getHeader(method.getParameters()[i].getAnnotation(Header.class).key()));
-                    }
-                    else if(annotationClass == Path.class) {
-                        parameters.add(castPrimitive(pathValues.get(method.getParameters()[i].getAnnotation(Path.class).key()), parameterClass));
-                    }
-                    else if(annotationClass == Query.class) {
-                        parameters.add(castPrimitive(context.getRequest().getParameter(method.getParameters()[i].getAnnotation(Query.class).key()), parameterClass));
-                    }
-                }
+    private Object findAndInvokeEndpoint(Exchange exchange) {
+
+        if (null != exchange.endpoint) {
+            try {
+                return invokeEndpoint(exchange);
+            }
+            catch (IllegalAccessException e) {
+                return Single.error(new InternalErrorException("illegal-access", e));
+            }
+            catch (InvocationTargetException e) {
+                return Single.error(new InternalErrorException("invocation-target", e));
+            }
+            catch (JsonParseException e) {
+                return Single.error(new BadRequestException("malformed-body", "The request body could not be parsed."));
+            }
+            catch (IllegalArgumentException e) {
+                return Single.error(new InternalErrorException("error-bad-argument-type", e));
             }
+            catch (BodyReader.TooLargeException e) {
+                return Single.error(bodyTooLarge);
+            }
+            catch (IOException e) {
+                return Single.error(new InternalErrorException("error-reading-body", e));
+            }
+            catch (RuntimeException e) {
+                return Single.error(e);
+            }
+        }
+
+        if (null != corsOrigins && "OPTIONS".equals(exchange.request.getMethod())) {
+            return Single.just(new CorsPreflightResponse());
         }
 
-        return ((Single<?>)method.invoke(container, parameters.toArray()));
+        return Single.error(endpointNotFound);
     }
 
-    private Single<?> findAndInvokeEndpoint(AsyncContext context) {
+    private void subscribe(Exchange exchange, Object result, ResponseObserver observer) {
+        if (result instanceof Single) {
+            ((Single<?>) result).subscribe(observer);
+        } else if (result instanceof Maybe) {
+            ((Maybe<?>) result).subscribe(observer);
+        } else if (result instanceof Completable) {
+            ((Completable) result).subscribe(observer);
+        } else if (result instanceof CompletionStage) {
+            toMaybe(result).subscribe(observer);
+        } else if (result instanceof Flowable) {
+            streamItems(exchange, (Flowable<?>) result);
+        } else if (result instanceof Observable) {
+            // Observable has no backpressure of its own; items wait in a buffer until the output is ready
+            streamItems(exchange, ((Observable<?>) result).toFlowable(BackpressureStrategy.BUFFER));
+        } else {
+            observer.onError(new InternalErrorException("unsupported-return-type",
+                    new IllegalStateException("Unsupported endpoint return type: " + (null != result ? result.getClass().getName() : null))));
+        }
+    }
 
-        HttpServletRequest request = (HttpServletRequest)context.getRequest();
-        String matchable = request.getMethod() + "|" + request.getPathInfo();
+    private void streamItems(Exchange exchange, Flowable<?> items) {
+        exchange.respondedAt = exchange.mark();
+        String accept = exchange.request.getHeader("Accept");
+        boolean ndjson = null != accept && accept.contains("application/x-ndjson");
 
-        for(String pattern : endpoints.keySet()) {
-            if(requestPathMatchesPattern(matchable, pattern)) {
-                Method method = endpoints.get(pattern);
-                Object endpointContainer = endpointContainers.get(pattern);
-                try {
-                    return invokeEndpoint(context, endpointContainer, method, pattern);
-                }
-                catch (IllegalAccessException e) {
-                    return Single.error(new InternalErrorException("illegal-access", e));
-                }
-                catch (InvocationTargetException e) {
-                    return Single.error(new InternalErrorException("invocation-target", e));
-                }
-                catch (IllegalArgumentException e) {
-                    return Single.error(new InternalErrorException("error-bad-argument-type", e));
-                }
-                catch (IOException e) {
-                    return Single.error(new InternalErrorException("error-reading-body", e));
-                }
-            }
+        sendCorsHeaders(exchange.request, exchange.response);
+        exchange.response.addHeader("Content-Type", ndjson ? "application/x-ndjson" : "application/json");
+        if (null != exchange.endpoint.vary) {
+            exchange.response.addHeader("Vary", exchange.endpoint.vary);
         }
-
-        if (null != corsOrigins && "OPTIONS".equals(request.getMethod())) {
-            return Single.just(new CorsPreflightResponse());
+        if (null != exchange.encoding) {
+            exchange.response.addHeader("Content-Encoding", exchange.encoding);
         }
 
-        return Single.error(new NotFoundException("endpoint-not-found", "No endpoint was found."));
+        items.subscribe(new ItemStreamWriter(exchange, gson, ndjson, throwable -> renderError(exchange, throwable)));
     }
 
     protected void initialize(
@@ -347,12 +643,45 @@ public class  RelaxServlet extends HttpServlet {
             String corsLifetime,
             boolean prettyJson) throws ServletException {
         directory = directoryRoot;
+        if (null != metrics) {
+            unmatchedMetrics = new RouteMetrics("unmatched");
+        }
 
         GsonBuilder gsonBuilder = new GsonBuilder();
         if(prettyJson) {
             gsonBuilder.setPrettyPrinting();
         }
+        if (null != endpointClasses) {
+            for (List<Class<?>> classes : endpointClasses.values()) {
+                for (Class<?> clazz : classes) {
+                    // entity adapters AdapterProcessor generated for the service, if it was compiled with -Arelax.adapters=true
+                    Class<?> adapters = generated(clazz, "_RelaxAdapters");
+                    if (null != adapters) {
+                        try {
+                            gsonBuilder.registerTypeAdapterFactory((TypeAdapterFactory) adapters.getConstructor().newInstance());
+                        }
+                        catch (ReflectiveOperationException e) {
+                            throw new ServletException(e);
+                        }
+                    }
+                }
+            }
+        }
         gson = gsonBuilder.create();
+        codecs.clear();
+        codecs.put(JsonCodec.MEDIA_TYPE, new JsonCodec(gson));
+        if (null != codecNames) {
+            for (String name : codecNames.split(",")) {
+                Codec codec = createCodec(name.trim());
+                codecs.put(codec.getMediaType(), codec);
+            }
+        }
+        errorBodies.clear();
+        errorBody(404, "endpoint-not-found");
+        errorBody(503, "service-overloaded");
+        errorBody(503, "concurrency-limit");
+        errorBody(504, "deadline-exceeded");
+        errorBody(500, null);
 
         this.corsOrigins = corsOrigins;
         this.corsLifetime = corsLifetime;
@@ -387,128 +716,109 @@ public class  RelaxServlet extends HttpServlet {
                             directoryResponse.services.add(directoryService);
                         }
 
-                        for (Method method : clazz.getMethods()) {
-
-                            String httpVerb = null;
-                            String httpPath = null;
-                            String endpointDescription = null;
-
-                            Annotation[] annotations = method.getAnnotations();
-                            for (Annotation annotation : annotations) {
-                                String name = annotation.annotationType().getCanonicalName();
-                                if (name.startsWith("com.craftandresolve.relax.annotation.endpoint.")) {
-                                    httpVerb = name.replace("com.craftandresolve.relax.annotation.endpoint.", "");
-                                    if ("GET".equals(httpVerb)) {
-                                        GET ann = method.getAnnotation(GET.class);
-                                        httpPath = ann.path();
-                                        endpointDescription = ann.description();
-                                    } else if ("POST".equals(httpVerb)) {
-                                        POST ann = method.getAnnotation(POST.class);
-                                        httpPath = ann.path();
-                                        endpointDescription = ann.description();
-                                    } else if ("PUT".equals(httpVerb)) {
-                                        PUT ann = method.getAnnotation(PUT.class);
-                                        httpPath = ann.path();
-                                        endpointDescription = ann.description();
-                                    } else if ("HEAD".equals(httpVerb)) {
-                                        HEAD ann = method.getAnnotation(HEAD.class);
-                                        httpPath = ann.path();
-                                        endpointDescription = ann.description();
-                                    } else if ("OPTIONS".equals(httpVerb)) {
-                                        OPTIONS ann = method.getAnnotation(OPTIONS.class);
-                                        httpPath = ann.path();
-                                        endpointDescription = ann.description();
-                                    } else if ("DELETE".equals(httpVerb)) {
-                                        DELETE ann = method.getAnnotation(DELETE.class);
-                                        httpPath = ann.path();
-                                        endpointDescription = ann.description();
-                                    }
-                                }
-                            }
+                        Bulkhead serviceBulkhead = clazz.getAnnotation(Bulkhead.class);
+                        WorkerPool servicePool = null != serviceBulkhead
+                                ? addPool(clazz.getName(), serviceBulkhead)
+                                : defaultPool;
+                        // named in full, so services with the same simple name in different packages stay apart
+                        ConcurrencyLimit serviceLimit = addLimit(clazz.getName());
+
+                        Object service = services.get(clazz);
+                        if (null == service) {
+                            service = createService(clazz);
+                            services.put(clazz, service);
+                        }
 
-                            if (null != httpVerb && null != httpPath) {
+                        for (RouteTable.Route route : routes(clazz)) {
 
-                                if (httpPath.equals("/")) {
-                                    httpPath = "";
-                                }
+                            String httpVerb = route.verb;
+                            String httpPath = route.path;
+                            Method method = clazz.getMethod(route.method, route.parameterTypes);
 
-                                if (null != corsOrigins && !"OPTIONS".equals(httpVerb)) {
-                                    Set<String> methods = corsMethods.computeIfAbsent(prefix + httpPath, k -> new HashSet<>());
-                                    methods.add(httpVerb);
-                                    Set<String> headers = corsHeaders.computeIfAbsent(httpVerb + "|" + prefix + httpPath, k -> new HashSet<>());
-                                    headers.add("Content-Type");
-                                }
+                            if (httpPath.equals("/")) {
+                                httpPath = "";
+                            }
+
+                            if (null != corsOrigins && !"OPTIONS".equals(httpVerb)) {
+                                Set<String> methods = corsMethods.computeIfAbsent(prefix + httpPath, k -> new HashSet<>());
+                                methods.add(httpVerb);
+                                Set<String> headers = corsHeaders.computeIfAbsent(httpVerb + "|" + prefix + httpPath, k -> new HashSet<>());
+                                headers.add("Content-Type");
+                            }
 
-                                if (isValidPattern(httpPath)) {
-                                    if (null != directoryService) {
-                                        if (null == directoryService.endpoints) {
-                                            directoryService.endpoints = new ArrayList<>();
+                            if (isValidPattern(httpPath)) {
+                                if (null != directoryService) {
+                                    if (null == directoryService.endpoints) {
+                                        directoryService.endpoints = new ArrayList<>();
+                                    }
+                                    DirectoryEndpoint directoryEndpoint;
+                                    directoryEndpoint = new DirectoryEndpoint();
+                                    directoryEndpoint.method = httpVerb;
+                                    directoryEndpoint.path = prefix + httpPath;
+                                    directoryEndpoint.description = route.description;
+                                    directoryService.endpoints.add(directoryEndpoint);
+
+                                    directoryEndpoint.response = null != route.response
+                                            ? gson.fromJson(route.response, DirectoryEntity.class)
+                                            : typeToEntity(responseType(method));
+                                    directoryEndpoint.responseKind = responseKind(method.getReturnType());
+                                    directoryEndpoint.formats = formats(directoryEndpoint.responseKind);
+
+                                    Class<?>[] parameterTypes = route.parameterTypes;
+
+                                    for (int i = 0; i < parameterTypes.length; ++i) {
+                                        RouteTable.Argument argument = route.arguments[i];
+                                        if (null == argument) {
+                                            continue;
                                         }
-                                        DirectoryEndpoint directoryEndpoint;
-                                        directoryEndpoint = new DirectoryEndpoint();
-                                        directoryEndpoint.method = httpVerb;
-                                        directoryEndpoint.path = prefix + httpPath;
-                                        directoryEndpoint.description = endpointDescription;
-                                        directoryService.endpoints.add(directoryEndpoint);
-
-                                        Class returnClass = (Class) ((ParameterizedType) method.getGenericReturnType()).getActualTypeArguments()[0];
-                                        directoryEndpoint.response = classToEntity(returnClass, null, null);
-
-                                        Annotation[][] anns = method.getParameterAnnotations();
-                                        Class<?>[] parameterTypes = method.getParameterTypes();
-
-                                        for (int i = 0; i < parameterTypes.length; ++i) {
-                                            Class<?> parameterClass = parameterTypes[i];
-
-                                            for (Annotation annotation : anns[i]) {
-
-                                                Class<?> annotationClass = annotation.annotationType();
-
-                                                if (annotationClass == Body.class) {
-                                                    directoryEndpoint.request = classToEntity(annotationClass, null, null);
-                                                } else if (annotationClass == Header.class) {
-                                                    Header header = method.getParameters()[i].getAnnotation(Header.class);
-                                                    if (null == directoryEndpoint.headers) {
-                                                        directoryEndpoint.headers = new ArrayList<>();
-                                                    }
-                                                    HeaderArgument argument = new HeaderArgument();
-                                                    argument.header = header.key();
-                                                    argument.format = header.format();
-                                                    directoryEndpoint.headers.add(argument);
-
-                                                    if (null != corsOrigins && !"OPTIONS".equals(httpVerb)) {
-                                                        Set<String> headers = corsHeaders.get(httpVerb + "|" + prefix + httpPath);
-                                                        headers.add(header.key());
-                                                    }
-                                                } else if (annotationClass == Path.class) {
-                                                    Path path = method.getParameters()[i].getAnnotation(Path.class);
-                                                    if (null == directoryEndpoint.pathArguments) {
-                                                        directoryEndpoint.pathArguments = new ArrayList<>();
-                                                    }
-                                                    PathArgument argument = new PathArgument();
-                                                    argument.name = path.key();
-                                                    argument.format = path.format();
-                                                    argument.type = parameterClass.getCanonicalName();
-                                                    directoryEndpoint.pathArguments.add(argument);
-                                                } else if (annotationClass == Query.class) {
-                                                    Query query = method.getParameters()[i].getAnnotation(Query.class);
-                                                    if (null == directoryEndpoint.queryArguments) {
-                                                        directoryEndpoint.queryArguments = new ArrayList<>();
-                                                    }
-                                                    QueryArgument argument = new QueryArgument();
-                                                    argument.name = query.key();
-                                                    argument.format = query.format();
-                                                    argument.type = parameterClass.getCanonicalName();
-                                                    directoryEndpoint.queryArguments.add(argument);
-                                                }
+
+                                        if (RouteTable.Argument.Kind.BODY == argument.kind) {
+                                            directoryEndpoint.request = null != route.request
+                                                    ? gson.fromJson(route.request, DirectoryEntity.class)
+                                                    : typeToEntity(method.getGenericParameterTypes()[i]);
+                                        } else if (RouteTable.Argument.Kind.HEADER == argument.kind) {
+                                            if (null == directoryEndpoint.headers) {
+                                                directoryEndpoint.headers = new ArrayList<>();
+                                            }
+                                            HeaderArgument headerArgument = new HeaderArgument();
+                                            headerArgument.header = argument.key;
+                                            headerArgument.format = argument.format;
+                                            directoryEndpoint.headers.add(headerArgument);
+
+                                            if (null != corsOrigins && !"OPTIONS".equals(httpVerb)) {
+                                                Set<String> headers = corsHeaders.get(httpVerb + "|" + prefix + httpPath);
+                                                headers.add(argument.key);
+                                            }
+                                        } else if (RouteTable.Argument.Kind.PATH == argument.kind) {
+                                            if (null == directoryEndpoint.pathArguments) {
+                                                directoryEndpoint.pathArguments = new ArrayList<>();
+                                            }
+                                            PathArgument pathArgument = new PathArgument();
+                                            pathArgument.name = argument.key;
+                                            pathArgument.format = argument.format;
+                                            pathArgument.type = parameterTypes[i].getCanonicalName();
+                                            directoryEndpoint.pathArguments.add(pathArgument);
+                                        } else if (RouteTable.Argument.Kind.QUERY == argument.kind) {
+                                            if (null == directoryEndpoint.queryArguments) {
+                                                directoryEndpoint.queryArguments = new ArrayList<>();
                                             }
+                                            QueryArgument queryArgument = new QueryArgument();
+                                            queryArgument.name = argument.key;
+                                            queryArgument.format = argument.format;
+                                            queryArgument.type = parameterTypes[i].getCanonicalName();
+                                            directoryEndpoint.queryArguments.add(queryArgument);
                                         }
                                     }
-
-                                    addEndpoint(httpVerb, prefix + httpPath, clazz.getConstructors()[0].newInstance(), method);
-                                } else {
-                                    throw new ServletException("Invalid endpoint pattern: " + httpPath);
                                 }
+
+                                Bulkhead endpointBulkhead = method.getAnnotation(Bulkhead.class);
+                                WorkerPool pool = null != endpointBulkhead
+                                        ? addPool(clazz.getName() + "." + method.getName(), endpointBulkhead)
+                                        : servicePool;
+
+                                addEndpoint(httpVerb, prefix + httpPath, service, method, route, pool, serviceLimit);
+                            } else {
+                                throw new ServletException("Invalid endpoint pattern: " + httpPath);
                             }
                         }
                     }
@@ -520,6 +830,119 @@ public class  RelaxServlet extends HttpServlet {
 
         if (null != directoryResponse) {
             directoryJson = gson.toJson(directoryResponse, DirectoryResponse.class);
+            byte[] directoryBytes = directoryJson.getBytes(StandardCharsets.UTF_8);
+            directoryEtag = ETags.of(directoryBytes);
+            // compressed once, and only when the compression init-param asks for encoded responses at all
+            directoryGzip = compression ? Compression.compress(directoryBytes, Compression.GZIP) : null;
+        }
+
+        if (null != warmUpMode) {
+            warmUp("serialization".equals(warmUpMode));
+        }
+
+        startServices();
+    }
+
+    private void startServices() throws ServletException {
+        List<Completable> starts = new ArrayList<>();
+        for (Object service : services.values()) {
+            if (service instanceof ServiceLifecycle) {
+                starts.add(Completable.defer(((ServiceLifecycle) service)::start));
+            }
+        }
+        if (starts.isEmpty()) {
+            return;
+        }
+        // services start together, and the servlet is not ready until all of them are; a timeout
+        // disposes the starts still running before the services are stopped
+        Throwable failure;
+        try {
+            failure = Completable.merge(starts).timeout(lifecycleTimeout, TimeUnit.MILLISECONDS).blockingGet();
+        }
+        catch (RuntimeException e) {
+            failure = e;
+        }
+        if (null != failure) {
+            // the container does not call destroy() when init() fails
+            stopServices();
+            throw failure instanceof TimeoutException
+                    ? new ServletException("Services did not start within " + lifecycleTimeout + " ms")
+                    : new ServletException("Service failed to start", failure);
+        }
+    }
+
+    private void stopServices() {
+        List<Completable> stops = new ArrayList<>();
+        for (Object service : services.values()) {
+            if (service instanceof ServiceLifecycle) {
+                // one failing service does not keep the others from releasing their resources
+                stops.add(Completable.defer(((ServiceLifecycle) service)::stop)
+                        .doOnError(e -> {
+                            if (null != getServletConfig()) {
+                                log("Service " + service.getClass().getName() + " failed to stop", e);
+                            }
+                        })
+                        .onErrorComplete());
+            }
+        }
+        // failed stops are already logged, so what is left is the timeout, which disposes those still running
+        if (!stops.isEmpty() && null != Completable.merge(stops).timeout(lifecycleTimeout, TimeUnit.MILLISECONDS).blockingGet() && null != getServletConfig()) {
+            log("Services did not stop within " + lifecycleTimeout + " ms");
+        }
+    }
+
+    protected Object createService(Class<?> serviceClass) throws Exception {
+        return null != serviceFactory ? serviceFactory.create(serviceClass) : serviceClass.getConstructor().newInstance();
+    }
+
+    private void warmUp(boolean serialize) {
+        // the first request to each endpoint would otherwise build its Gson adapters and load its entity classes
+        long startedAt = System.nanoTime();
+        Set<Type> warmed = new HashSet<>();
+        for (Endpoint endpoint : endpoints.values()) {
+            warmUp(responseType(endpoint.method), serialize, warmed);
+            for (Parameter parameter : endpoint.method.getParameters()) {
+                if (parameter.isAnnotationPresent(Body.class)) {
+                    warmUp(parameter.getParameterizedType(), serialize, warmed);
+                }
+            }
+        }
+        if (null != getServletConfig()) {
+            log("Warmed up " + warmed.size() + " types in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) + " ms");
+        }
+    }
+
+    private void warmUp(Type type, boolean serialize, Set<Type> warmed) {
+        if (null == type || !warmed.add(type)) {
+            return;
+        }
+        if (type instanceof ParameterizedType) {
+            for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+                warmUp(argument, serialize, warmed);
+            }
+        }
+        Class<?> raw = TypeToken.get(type).getRawType();
+        if (raw.isPrimitive() || Void.class == raw || Object.class == raw) {
+            return;
+        }
+        try {
+            gson.getAdapter(TypeToken.get(type));
+            if (raw != type) {
+                // bodies are read, and results written, by their class rather than their declared type
+                gson.getAdapter(raw);
+            }
+            if (serialize && !raw.isEnum() && !raw.isInterface() && !raw.getName().startsWith("java.lang.")) {
+                // an empty instance through every codec and back loads the code paths of a real request
+                Object sample = gson.fromJson(raw.isArray() || Collection.class.isAssignableFrom(raw) ? "[]" : "{}", type);
+                for (Codec codec : codecs.values()) {
+                    codec.decode(new ByteArrayInputStream(codec.encode(sample, sample.getClass())), type);
+                }
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            if (null != getServletConfig()) {
+                log("Could not warm up " + type.getTypeName(), e);
+            }
         }
     }
 
@@ -547,6 +970,141 @@ public class  RelaxServlet extends HttpServlet {
         initialize(directoryRoot, endpointClasses, corsOrigins, corsLifecycle, prettyJson);
     }
 
+    private List<RouteTable.Route> routes(Class<?> clazz) throws ReflectiveOperationException {
+        // the table RouteProcessor generated next to the service, when it was compiled with the processor
+        Class<?> table = generated(clazz, "_RelaxRoutes");
+        return null != table ? ((RouteTable) table.getConstructor().newInstance()).routes() : reflectRoutes(clazz);
+    }
+
+    private Class<?> generated(Class<?> clazz, String suffix) {
+        String name = clazz.getName();
+        int dot = name.lastIndexOf('.');
+        try {
+            return Class.forName(name.substring(0, dot + 1) + name.substring(dot + 1).replace('$', '_') + suffix, true, clazz.getClassLoader());
+        }
+        catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    static List<RouteTable.Route> reflectRoutes(Class<?> clazz) {
+        List<RouteTable.Route> routes = new ArrayList<>();
+
+        for (Method method : clazz.getMethods()) {
+
+            String httpVerb = null;
+            String httpPath = null;
+            String endpointDescription = null;
+
+            Annotation[] annotations = method.getAnnotations();
+            for (Annotation annotation : annotations) {
+                String name = annotation.annotationType().getCanonicalName();
+                if (name.startsWith("com.craftandresolve.relax.annotation.endpoint.")) {
+                    // @Cached, @Streaming and the like share the package; only the verb annotations name the endpoint
+                    String verb = name.replace("com.craftandresolve.relax.annotation.endpoint.", "");
+                    if ("GET".equals(verb)) {
+                        httpVerb = verb;
+                        GET ann = method.getAnnotation(GET.class);
+                        httpPath = ann.path();
+                        endpointDescription = ann.description();
+                    } else if ("POST".equals(verb)) {
+                        httpVerb = verb;
+                        POST ann = method.getAnnotation(POST.class);
+                        httpPath = ann.path();
+                        endpointDescription = ann.description();
+                    } else if ("PUT".equals(verb)) {
+                        httpVerb = verb;
+                        PUT ann = method.getAnnotation(PUT.class);
+                        httpPath = ann.path();
+                        endpointDescription = ann.description();
+                    } else if ("HEAD".equals(verb)) {
+                        httpVerb = verb;
+                        HEAD ann = method.getAnnotation(HEAD.class);
+                        httpPath = ann.path();
+                        endpointDescription = ann.description();
+                    } else if ("OPTIONS".equals(verb)) {
+                        httpVerb = verb;
+                        OPTIONS ann = method.getAnnotation(OPTIONS.class);
+                        httpPath = ann.path();
+                        endpointDescription = ann.description();
+                    } else if ("DELETE".equals(verb)) {
+                        httpVerb = verb;
+                        DELETE ann = method.getAnnotation(DELETE.class);
+                        httpPath = ann.path();
+                        endpointDescription = ann.description();
+                    }
+                }
+            }
+
+            if (null != httpVerb && null != httpPath) {
+                Parameter[] parameters = method.getParameters();
+                RouteTable.Argument[] arguments = new RouteTable.Argument[parameters.length];
+                for (int i = 0; i < parameters.length; ++i) {
+                    Parameter parameter = parameters[i];
+                    if (parameter.getType() == HttpServletRequest.class) {
+                        arguments[i] = new RouteTable.Argument(RouteTable.Argument.Kind.REQUEST, null, null);
+                    } else if (parameter.getType() == HttpServletResponse.class) {
+                        arguments[i] = new RouteTable.Argument(RouteTable.Argument.Kind.RESPONSE, null, null);
+                    } else if (parameter.isAnnotationPresent(Body.class)) {
+                        arguments[i] = new RouteTable.Argument(RouteTable.Argument.Kind.BODY, null, null);
+                    } else if (parameter.isAnnotationPresent(Header.class)) {
+                        Header header = parameter.getAnnotation(Header.class);
+                        arguments[i] = new RouteTable.Argument(RouteTable.Argument.Kind.HEADER, header.key(), header.format());
+                    } else if (parameter.isAnnotationPresent(Path.class)) {
+                        Path path = parameter.getAnnotation(Path.class);
+                        arguments[i] = new RouteTable.Argument(RouteTable.Argument.Kind.PATH, path.key(), path.format());
+                    } else if (parameter.isAnnotationPresent(Query.class)) {
+                        Query query = parameter.getAnnotation(Query.class);
+                        arguments[i] = new RouteTable.Argument(RouteTable.Argument.Kind.QUERY, query.key(), query.format());
+                    }
+                }
+                routes.add(new RouteTable.Route(httpVerb, httpPath, endpointDescription, method.getName(),
+                        method.getParameterTypes(), arguments, null, null, null));
+            }
+        }
+
+        return routes;
+    }
+
+    private Type responseType(Method method) {
+        Type returnType = method.getGenericReturnType();
+        if (!(returnType instanceof ParameterizedType)) {
+            // Completable carries no value
+            return null;
+        }
+
+        Type responseType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+        if (responseType instanceof ParameterizedType && Response.class == ((ParameterizedType) responseType).getRawType()) {
+            // what gets serialized is the body a Response carries
+            responseType = ((ParameterizedType) responseType).getActualTypeArguments()[0];
+        }
+        return responseType;
+    }
+
+    private DirectoryEntity typeToEntity(Type type) {
+        if (type instanceof Class) {
+            return classToEntity((Class<?>) type, null, null);
+        }
+        if (type instanceof ParameterizedType) {
+            ParameterizedType pt = (ParameterizedType) type;
+            Type[] arguments = pt.getActualTypeArguments();
+            Type contained = arguments[arguments.length - 1];
+            return classToEntity((Class<?>) pt.getRawType(), null, contained instanceof Class ? (Class<?>) contained : null);
+        }
+        return null;
+    }
+
+    private String responseKind(Class<?> returnClass) {
+        if (Maybe.class.isAssignableFrom(returnClass) || CompletionStage.class.isAssignableFrom(returnClass)) {
+            return "optional";
+        } else if (Completable.class.isAssignableFrom(returnClass)) {
+            return "none";
+        } else if (Flowable.class.isAssignableFrom(returnClass) || Observable.class.isAssignableFrom(returnClass)) {
+            return "stream";
+        }
+        return "single";
+    }
+
     private boolean isList(Class<?> clazz) {
         // for now, only List supported
         return List.class == clazz;
@@ -558,7 +1116,11 @@ public class  RelaxServlet extends HttpServlet {
     }
 
     private DirectoryEntity classToEntity(Class<?> classToConvert, String format, Class<?> containedType) {
-        if (classToConvert == Void.class) {
+        return classToEntity(classToConvert, format, containedType, new HashSet<>());
+    }
+
+    private DirectoryEntity classToEntity(Class<?> classToConvert, String format, Class<?> containedType, Set<Class<?>> path) {
+        if (null == classToConvert || classToConvert == Void.class) {
             return null;
         }
 
@@ -578,7 +1140,12 @@ public class  RelaxServlet extends HttpServlet {
 
                 entity.type = classToConvert.getCanonicalName();
 
-                entity.ofType = classToEntity(containedType, null, null);
+                entity.ofType = classToEntity(containedType, null, null, path);
+
+            } else if (!path.add(classToConvert)) {
+
+                // a recursive entity is described once, at its outermost occurrence, as RouteProcessor does
+                entity.type = className;
 
             } else {
 
@@ -586,7 +1153,7 @@ public class  RelaxServlet extends HttpServlet {
 
                 if (fields.length > 0) {
 
-                    entity.properties = new HashMap<>();
+                    entity.properties = new LinkedHashMap<>();
 
                     for (Field field : fields) {
                         Format formatAnnotation = field.getAnnotation(Format.class);
@@ -601,7 +1168,7 @@ public class  RelaxServlet extends HttpServlet {
                             if (type instanceof ParameterizedType) {
                                 ParameterizedType pt = (ParameterizedType) type;
                                 if (null != pt.getActualTypeArguments() && pt.getActualTypeArguments().length == 2) {
-                                    ofType = ((Class) pt.getActualTypeArguments()[1]);
+                                    ofType = plainClass(pt.getActualTypeArguments()[1]);
                                 }
                             }
                         } else if (isList(field.getType())) {
@@ -609,118 +1176,652 @@ public class  RelaxServlet extends HttpServlet {
                             if (type instanceof ParameterizedType) {
                                 ParameterizedType pt = (ParameterizedType) type;
                                 if (null != pt.getActualTypeArguments() && pt.getActualTypeArguments().length == 1) {
-                                    ofType = ((Class) pt.getActualTypeArguments()[0]);
+                                    ofType = plainClass(pt.getActualTypeArguments()[0]);
                                 }
                             }
                         }
 
-                        entity.properties.put(field.getName(), classToEntity(field.getType(), fieldFormat, ofType));
+                        entity.properties.put(field.getName(), classToEntity(field.getType(), fieldFormat, ofType, path));
                     }
                 }
+                path.remove(classToConvert);
             }
         }
 
         return entity;
     }
 
+    private static Class<?> plainClass(Type type) {
+        // a parameterized element type is not described, as with the generated tables
+        return type instanceof Class ? (Class<?>) type : null;
+    }
+
     private void processRequest(HttpServletRequest req) {
 
         final AsyncContext context = req.startAsync();
+        final long startedAt = null != metrics ? System.nanoTime() : 0;
+
+        // a path answered from the cache before is answered again without routing, binding or invocation
+        Router.Match<Endpoint> indexed = "GET".equals(req.getMethod()) && !cachedRoutes.isEmpty()
+                ? cachedRoutes.get(String.valueOf(req.getPathInfo()))
+                : null;
+        if (null != indexed && (!indexed.target.negotiates || null == acceptedCodec(req.getHeader("Accept")))
+                && serveFromCache(req, context, indexed, startedAt)) {
+            return;
+        }
 
-        findAndInvokeEndpoint(context)
-                .subscribeOn(Schedulers.io())
-                .subscribe(new SingleObserver<Object>() {
+        // routed here because the container only takes a timeout before this dispatch returns
+        final Router.Match<Endpoint> match = null != indexed ? indexed : router.match(req.getMethod(), req.getPathInfo());
+        final long millis = null != match ? deadline(match.target, req) : 0;
+        if (0 < millis) {
+            // a backstop for the container; watch() answers at the deadline itself
+            context.setTimeout(millis + TIMEOUT_MARGIN);
+        }
 
-                    private Disposable disposable;
+        if (null != dispatchExecutor) {
+            // keep the container thread free: binding and invocation happen on the dispatch pool
+            dispatchExecutor.execute(() -> dispatch(req, context, match, millis, startedAt));
+        } else {
+            dispatch(req, context, match, millis, startedAt);
+        }
+    }
 
-                    @Override
-                    public void onSubscribe(Disposable d) {
-                        disposable = d;
-                    }
+    private void dispatch(HttpServletRequest req, AsyncContext context, Router.Match<Endpoint> match, long millis, long startedAt) {
 
-                    @Override
-                    public void onSuccess(Object o) {
-                        HttpServletResponse response = (HttpServletResponse) context.getResponse();
-                        if (o instanceof EmptyResponse) {
-                            response.setStatus(HttpServletResponse.SC_NO_CONTENT);
-
-                            sendCorsHeaders(req, response);
-                        } else if (o instanceof CorsPreflightResponse) {
-
-                            response.addHeader("Access-Control-Allow-Origin", corsOrigins);
-                            String pathInfo = req.getPathInfo();
-                            Set<String> methods = corsMethods.get(pathInfo);
-                            if (null != methods) {
-                                response.addHeader("Access-Control-Allow-Methods", String.join(",", methods));
-                                Set<String> allHeaders = new HashSet<>();
-                                for (String method: methods) {
-                                    Set<String> headers = corsHeaders.get(method + "|" + req.getPathInfo());
-                                    if (null != headers) {
-                                        allHeaders.addAll(headers);
-                                    }
-                                }
-                                if (!allHeaders.isEmpty()) {
-                                    response.addHeader("Access-Control-Allow-Headers", String.join(",", allHeaders));
-                                }
-                            }
-                            if (null != corsLifetime) {
-                                response.addHeader("Access-Control-Max-Age", corsLifetime);
-                            }
-                        } else {
+        boolean get = "GET".equals(req.getMethod());
+        Codec codec = acceptedCodec(req.getHeader("Accept"));
 
-                            try {
-                                sendCorsHeaders(req, response);
+        final Exchange exchange = new Exchange(context, match);
+        final ResponseObserver observer = new ResponseObserver(exchange);
 
-                                response.addHeader("Content-Type", "application/json");
-                                context.getResponse().getWriter().print(gson.toJson(o, o.getClass()));
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
-                            }
+        RouteMetrics routeMetrics = null != exchange.endpoint ? exchange.endpoint.metrics : unmatchedMetrics;
+        if (null != routeMetrics) {
+            exchange.startedAt = startedAt;
+            routeMetrics.track(exchange);
+        }
+
+        if (null != exchange.endpoint) {
+            watch(exchange, millis);
+        }
+
+        if (null != exchange.endpoint && exchange.endpoint.compress) {
+            exchange.encoding = Compression.negotiate(req.getHeader("Accept-Encoding"));
+        }
+        if (null != exchange.endpoint && exchange.endpoint.negotiates) {
+            exchange.codec = codec;
+        }
+
+        // the cache only holds JSON
+        if (get && null == exchange.codec && null != exchange.endpoint && null != exchange.endpoint.cache) {
+            // a path already indexed was looked up before routing
+            if (null == cachedRoutes.put(String.valueOf(req.getPathInfo()), match) && serveFromCache(req, context, match, startedAt)) {
+                return;
+            }
+            exchange.cacheKey = exchange.endpoint.cache.key(req);
+        }
+
+        if (0 < maxBody && null != exchange.endpoint && exchange.endpoint.readsBody && exchange.request.getContentLengthLong() > maxBody) {
+            observer.onError(bodyTooLarge);
+            return;
+        }
+
+        if (null != exchange.endpoint && !admit(exchange)) {
+            exchange.response.setHeader("Retry-After", retryAfter);
+            observer.onError(limitExceeded);
+            return;
+        }
+
+        if (null == exchange.endpoint) {
+            subscribe(exchange, findAndInvokeEndpoint(exchange), observer);
+        } else if (nonBlocking && exchange.endpoint.readsBody) {
+            BodyReader.read(exchange, maxBody).subscribe(body -> {
+                exchange.body = body;
+                invokeOnPool(exchange, observer);
+            }, observer::onError);
+        } else {
+            invokeOnPool(exchange, observer);
+        }
+    }
+
+    private void watch(Exchange exchange, long millis) {
+        Disposable timer = 0 < millis
+                ? Schedulers.computation().scheduleDirect(() -> expire(exchange), millis, TimeUnit.MILLISECONDS)
+                : null;
+        exchange.context.addListener(new CompletionListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                if (null != timer) {
+                    timer.dispose();
+                }
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                expire(exchange);
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                // the client went away; nobody is left to answer
+                if (exchange.answer()) {
+                    exchange.cancel();
+                    exchange.context.complete();
+                }
+            }
+        });
+    }
+
+    private long deadline(Endpoint endpoint, HttpServletRequest req) {
+        long millis = endpoint.deadline;
+        String requested = null != deadlineHeader ? req.getHeader(deadlineHeader) : null;
+        if (null != requested) {
+            // callers may shorten the deadline, never extend it
+            try {
+                long callerMillis = Long.parseLong(requested.trim());
+                if (0 < callerMillis && (0 == millis || callerMillis < millis)) {
+                    millis = callerMillis;
+                }
+            }
+            catch (NumberFormatException e) {
+                // IGNORED
+            }
+        }
+        return millis;
+    }
+
+    private void expire(Exchange exchange) {
+        if (!exchange.answer()) {
+            return;
+        }
+        // the bulkhead permit stays with the work until it has stopped; cancel() releases it once it has
+        exchange.cancel();
+        exchange.respondedAt = exchange.mark();
+        if (exchange.response.isCommitted()) {
+            // part of a stream is out already; cutting it short is all that is left
+            exchange.context.complete();
+        } else {
+            complete(exchange, renderError(exchange, deadlineExceeded));
+        }
+    }
+
+    private boolean admit(Exchange exchange) {
+        ConcurrencyLimit route = exchange.endpoint.limit;
+        if (null == route) {
+            return true;
+        }
+        ConcurrencyLimit service = exchange.endpoint.serviceLimit;
+        if (!route.tryAcquire()) {
+            return false;
+        }
+        if (null != service && !service.tryAcquire()) {
+            route.cancel();
+            return false;
+        }
+        long admittedAt = System.nanoTime();
+        exchange.context.addListener((CompletionListener) event -> {
+            long rtt = System.nanoTime() - admittedAt;
+            boolean failed = exchange.response.getStatus() >= 500;
+            limitChanged(route, route.release(rtt, failed));
+            if (null != service) {
+                limitChanged(service, service.release(rtt, failed));
+            }
+        });
+        return true;
+    }
+
+    private void limitChanged(ConcurrencyLimit limit, int value) {
+        if (value >= 0) {
+            onConcurrencyLimitChanged(limit.name, value);
+        }
+    }
+
+    private class ResponseObserver implements SingleObserver<Object>, MaybeObserver<Object>, CompletableObserver {
+
+        private final Exchange exchange;
+        private Disposable disposable;
+
+        ResponseObserver(Exchange exchange) {
+            this.exchange = exchange;
+        }
+
+        @Override
+        public void onSubscribe(Disposable d) {
+            disposable = d;
+            exchange.upstream = d;
+            if (exchange.answered()) {
+                // the deadline or a disconnect got there while the endpoint was still being called
+                d.dispose();
+                exchange.release();
+            }
+        }
+
+        @Override
+        public void onSuccess(Object o) {
+            // the work is over whether or not anybody is still waiting for it
+            exchange.release();
+            if (!exchange.answer()) {
+                return;
+            }
+            exchange.respondedAt = exchange.mark();
+
+            HttpServletRequest req = exchange.request;
+            HttpServletResponse response = exchange.response;
+            byte[] body = null;
+            String encoding = null;
+
+            Response<?> typed = null;
+            if (o instanceof Response) {
+                typed = (Response<?>) o;
+                response.setStatus(typed.getStatus());
+                for (Map.Entry<String, String> header : typed.getHeaders().entrySet()) {
+                    response.addHeader(header.getKey(), header.getValue());
+                }
+                if (null == typed.getBody()) {
+                    sendCorsHeaders(req, response);
+                    complete(exchange, null);
+                    dispose();
+                    return;
+                }
+                o = typed.getBody();
+            }
+
+            if (o instanceof EmptyResponse) {
+                response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+
+                sendCorsHeaders(req, response);
+            } else if (o instanceof CorsPreflightResponse) {
+
+                response.addHeader("Access-Control-Allow-Origin", corsOrigins);
+                String pathInfo = req.getPathInfo();
+                Set<String> methods = corsMethods.get(pathInfo);
+                if (null != methods) {
+                    response.addHeader("Access-Control-Allow-Methods", String.join(",", methods));
+                    Set<String> allHeaders = new HashSet<>();
+                    for (String method: methods) {
+                        Set<String> headers = corsHeaders.get(method + "|" + req.getPathInfo());
+                        if (null != headers) {
+                            allHeaders.addAll(headers);
                         }
-                        context.complete();
-                        disposable.dispose();
                     }
+                    if (!allHeaders.isEmpty()) {
+                        response.addHeader("Access-Control-Allow-Headers", String.join(",", allHeaders));
+                    }
+                }
+                if (null != corsLifetime) {
+                    response.addHeader("Access-Control-Max-Age", corsLifetime);
+                }
+            } else {
 
-                    @Override
-                    public void onError(Throwable throwable) {
-                        HttpServletResponse response = (HttpServletResponse) context.getResponse();
+                try {
+                    sendCorsHeaders(req, response);
 
-                        sendCorsHeaders(req, response);
+                    SingleFlight.Shared shared = null;
+                    if (o instanceof SingleFlight.Shared) {
+                        shared = (SingleFlight.Shared) o;
+                        o = shared.value;
+                    }
 
-                        ErrorResponse errorResponse = new ErrorResponse();
-                        if(throwable instanceof HTTPCodeException) {
-                            errorResponse.code = ((HTTPCodeException) throwable).getCode();
-                            errorResponse.shortText = ((HTTPCodeException) throwable).getShortText();
+                    // validators and the response cache only apply to plain 200 answers
+                    boolean get = "GET".equals(req.getMethod()) && (null == typed || HttpServletResponse.SC_OK == typed.getStatus());
+                    String etag = null;
+                    if (get && o instanceof Versioned) {
+                        // the endpoint vouches for its own version, so a match needs no serialization at all
+                        etag = ETags.version(((Versioned) o).getVersion());
+                        if (null != exchange.codec) {
+                            etag = ETags.negotiated(etag, exchange.codec.getMediaType());
                         }
-                        else {
-                            errorResponse.code = 500;
+                        // only when the encoding is settled before serializing; otherwise the body size decides it below
+                        boolean streamed = null != exchange.endpoint && exchange.endpoint.streaming && null == exchange.codec;
+                        boolean encoded = null != exchange.encoding && (streamed || exchange.endpoint.compressionThreshold <= 0);
+                        if ((null == exchange.encoding || encoded)
+                                && notModified(req, response, encoded ? ETags.encoded(etag, exchange.encoding) : etag)) {
+                            complete(exchange, null);
+                            dispose();
+                            return;
                         }
+                    }
 
-                        if (!(throwable instanceof HTTPCodeException)) {
-                            StringWriter writer = new StringWriter();
-                            PrintWriter printWriter = new PrintWriter(writer);
-                            throwable.printStackTrace(printWriter);
-                            Throwable causedBy = throwable.getCause();
-                            while (null != causedBy) {
-                                writer.append("\n\nCaused By\n\n");
-                                causedBy.printStackTrace(printWriter);
-                                causedBy = causedBy.getCause();
+                    response.addHeader("Content-Type", null != exchange.codec ? exchange.codec.getMediaType() : JsonCodec.MEDIA_TYPE);
+                    if (null != exchange.endpoint && null != exchange.endpoint.vary) {
+                        response.addHeader("Vary", exchange.endpoint.vary);
+                    }
+                    if (null != exchange.endpoint && exchange.endpoint.streaming && null == exchange.codec) {
+                        // the size is unknown up front, so a negotiated encoding always applies
+                        if (null != exchange.encoding) {
+                            response.addHeader("Content-Encoding", exchange.encoding);
+                        }
+                        if (null != etag) {
+                            response.addHeader("ETag", null != exchange.encoding ? ETags.encoded(etag, exchange.encoding) : etag);
+                        }
+                        streamJson(response, o, exchange.encoding);
+                    } else {
+                        if (null != exchange.codec) {
+                            body = exchange.codec.encode(o, o.getClass());
+                            if (null == etag && get && etags) {
+                                etag = ETags.of(body);
+                            }
+                        } else if (null != shared) {
+                            body = shared.body;
+                            if (null == etag) {
+                                etag = shared.etag;
+                            }
+                        } else {
+                            body = gson.toJson(o, o.getClass()).getBytes(StandardCharsets.UTF_8);
+                            if (null == etag && get && etags) {
+                                etag = ETags.of(body);
                             }
-                            errorResponse.longText = writer.toString().replace("\\n\\t", "\n\t");
                         }
-
-                        response.setStatus(errorResponse.code);
-                        response.addHeader("Content-Type", "application/json");
-                        try {
-                            context.getResponse().getWriter().print(gson.toJson(errorResponse));
+                        if (null != exchange.cacheKey && null == typed) {
+                            exchange.endpoint.cache.put(exchange.cacheKey, body, etag);
+                        }
+                        if (null != exchange.encoding && body.length >= exchange.endpoint.compressionThreshold) {
+                            encoding = exchange.encoding;
                         }
-                        catch (IOException e) {
-                            // IGNORED
+                        // each encoding is its own representation, validated by its own tag
+                        String tag = null != etag && null != encoding ? ETags.encoded(etag, encoding) : etag;
+                        if (notModified(req, response, tag)) {
+                            body = null;
+                            encoding = null;
+                        } else {
+                            if (null != encoding) {
+                                response.addHeader("Content-Encoding", encoding);
+                            }
+                            if (null != tag) {
+                                response.addHeader("ETag", tag);
+                            }
                         }
-                        context.complete();
-                        disposable.dispose();
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            complete(exchange, body, encoding);
+            dispose();
+        }
+
+        @Override
+        public void onComplete() {
+            exchange.release();
+            if (!exchange.answer()) {
+                return;
+            }
+            exchange.respondedAt = exchange.mark();
+
+            exchange.response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+            sendCorsHeaders(exchange.request, exchange.response);
+
+            complete(exchange, null);
+            dispose();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            exchange.release();
+            if (!exchange.answer()) {
+                return;
+            }
+            exchange.respondedAt = exchange.mark();
+
+            complete(exchange, renderError(exchange, throwable));
+            dispose();
+        }
+
+        private void dispose() {
+            if (null != disposable) {
+                disposable.dispose();
+            }
+        }
+    }
+
+    private byte[] renderError(Exchange exchange, Throwable throwable) {
+        HttpServletResponse response = exchange.response;
+
+        sendCorsHeaders(exchange.request, response);
+
+        int code;
+        byte[] body;
+        if(throwable instanceof HTTPCodeException) {
+            code = ((HTTPCodeException) throwable).getCode();
+            body = errorBody(code, ((HTTPCodeException) throwable).getShortText());
+            if (null != throwable.getCause() && null != getServletConfig()) {
+                // a failure wrapped for its status; the response carries only the code, so the cause goes to the log
+                log("Endpoint error " + ((HTTPCodeException) throwable).getShortText(), throwable.getCause());
+            }
+        }
+        else {
+            code = 500;
+            if (null != getServletConfig()) {
+                log("Unhandled endpoint error", throwable);
+            }
+            body = debug ? stackTraceBody(throwable) : errorBody(code, null);
+        }
+
+        response.setStatus(code);
+        response.addHeader("Content-Type", "application/json");
+        return body;
+    }
+
+    private byte[] errorBody(int code, String shortText) {
+        // error bodies depend only on code and short text, so they are encoded once and reused
+        String key = code + "|" + shortText;
+        byte[] body = errorBodies.get(key);
+        if (null == body) {
+            ErrorResponse errorResponse = new ErrorResponse();
+            errorResponse.code = code;
+            errorResponse.shortText = shortText;
+            body = gson.toJson(errorResponse).getBytes(StandardCharsets.UTF_8);
+            if (errorBodies.size() < MAX_ERROR_BODIES) {
+                errorBodies.putIfAbsent(key, body);
+            }
+        }
+        return body;
+    }
+
+    private byte[] stackTraceBody(Throwable throwable) {
+        ErrorResponse errorResponse = new ErrorResponse();
+        errorResponse.code = 500;
+
+        StringWriter writer = new StringWriter();
+        PrintWriter printWriter = new PrintWriter(writer);
+        throwable.printStackTrace(printWriter);
+        Throwable causedBy = throwable.getCause();
+        while (null != causedBy) {
+            writer.append("\n\nCaused By\n\n");
+            causedBy.printStackTrace(printWriter);
+            causedBy = causedBy.getCause();
+        }
+        errorResponse.longText = writer.toString().replace("\\n\\t", "\n\t");
+
+        return gson.toJson(errorResponse).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private boolean serveFromCache(HttpServletRequest req, AsyncContext context, Router.Match<Endpoint> match, long startedAt) {
+        ResponseCache cache = match.target.cache;
+        String key = cache.key(req);
+        boolean[] revalidate = new boolean[1];
+        ResponseCache.Entry entry = cache.get(key, revalidate);
+        if (null == entry) {
+            return false;
+        }
+
+        if (revalidate[0]) {
+            revalidate(new Exchange(context, match), cache, key);
+        }
+
+        Exchange exchange = new Exchange(context, null);
+        if (null != cache.endpoint.metrics) {
+            exchange.startedAt = startedAt;
+            cache.endpoint.metrics.track(exchange);
+        }
+        sendCorsHeaders(req, exchange.response);
+        if (null != cache.endpoint.vary) {
+            exchange.response.addHeader("Vary", cache.endpoint.vary);
+        }
+
+        byte[] body = entry.body;
+        String encoding = null;
+        if (cache.endpoint.compress) {
+            if (body.length >= cache.endpoint.compressionThreshold) {
+                encoding = Compression.negotiate(req.getHeader("Accept-Encoding"));
+            }
+        }
+        String tag = null != entry.etag && null != encoding ? ETags.encoded(entry.etag, encoding) : entry.etag;
+        if (notModified(req, exchange.response, tag)) {
+            complete(exchange, null);
+            return true;
+        }
+
+        if (null != encoding) {
+            body = entry.encoded(encoding);
+            exchange.response.addHeader("Content-Encoding", encoding);
+        }
+        if (null != tag) {
+            exchange.response.addHeader("ETag", tag);
+        }
+        exchange.response.addHeader("Content-Type", "application/json");
+        complete(exchange, body);
+        return true;
+    }
+
+    private void revalidate(Exchange exchange, ResponseCache cache, String key) {
+        Endpoint endpoint = exchange.endpoint;
+        if (null == endpoint || endpoint.bindsServletObjects || !endpoint.pool.tryAcquire()) {
+            cache.refreshFailed(key);
+            return;
+        }
+
+        // arguments are bound now, while the request is still live; the call itself runs after the stale answer went out
+        Object[] arguments;
+        try {
+            arguments = bindArguments(exchange);
+        }
+        catch (IOException | RuntimeException e) {
+            endpoint.pool.release();
+            cache.refreshFailed(key);
+            return;
+        }
+
+        endpoint.pool.scheduler.scheduleDirect(() -> {
+            Single<?> refreshed;
+            try {
+                refreshed = toSingle(endpoint.invoker.invoke(arguments));
+            }
+            catch (Exception e) {
+                refreshed = Single.error(e);
+            }
+            refreshed
+                    .doFinally(endpoint.pool::release)
+                    .subscribe(
+                            o -> {
+                                Object value = o;
+                                if (value instanceof Response) {
+                                    // only a plain 200 body fits an entry; status and headers of anything else would be lost
+                                    Response<?> typed = (Response<?>) value;
+                                    value = HttpServletResponse.SC_OK == typed.getStatus() && typed.getHeaders().isEmpty() ? typed.getBody() : null;
+                                }
+                                if (null == value || value instanceof EmptyResponse) {
+                                    // the endpoint no longer answers with a cacheable body, so the stale one must not outlive it
+                                    cache.invalidate(key);
+                                    return;
+                                }
+                                byte[] body = gson.toJson(value, value.getClass()).getBytes(StandardCharsets.UTF_8);
+                                cache.put(key, body, value instanceof Versioned
+                                        ? ETags.version(((Versioned) value).getVersion())
+                                        : etags ? ETags.of(body) : null);
+                            },
+                            throwable -> cache.refreshFailed(key));
+        });
+    }
+
+    private Single<?> toSingle(Object result) {
+        return toMaybe(result).toSingle();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Maybe<Object> toMaybe(Object result) {
+        if (result instanceof Single) {
+            return ((Single<Object>) result).toMaybe();
+        } else if (result instanceof Maybe) {
+            return (Maybe<Object>) result;
+        } else if (result instanceof CompletionStage) {
+            CompletionStage<?> stage = (CompletionStage<?>) result;
+            return Maybe.create(emitter -> {
+                // disposing at a deadline or disconnect cancels the future, as it does a subscription
+                emitter.setCancellable(() -> cancel(stage));
+                stage.whenComplete((value, throwable) -> {
+                    if (emitter.isDisposed()) {
+                        // the cancellation above completes the stage too; nobody is listening any more
+                        return;
+                    }
+                    if (null != throwable) {
+                        emitter.onError(throwable instanceof CompletionException && null != throwable.getCause() ? throwable.getCause() : throwable);
+                    } else if (null != value) {
+                        emitter.onSuccess(value);
+                    } else {
+                        emitter.onComplete();
                     }
                 });
+            });
+        }
+        return Maybe.error(new InternalErrorException("unsupported-return-type",
+                new IllegalStateException("Unsupported endpoint return type: " + (null != result ? result.getClass().getName() : null))));
+    }
+
+    private static void cancel(CompletionStage<?> stage) {
+        try {
+            stage.toCompletableFuture().cancel(true);
+        }
+        catch (UnsupportedOperationException e) {
+            // IGNORED
+        }
+    }
+
+    private boolean notModified(HttpServletRequest request, HttpServletResponse response, String etag) {
+        if (!ETags.matches(request.getHeader("If-None-Match"), etag)) {
+            return false;
+        }
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        response.addHeader("ETag", etag);
+        return true;
+    }
+
+    private void complete(Exchange exchange, byte[] body) {
+        complete(exchange, body, null);
+    }
+
+    private void complete(Exchange exchange, byte[] body, String encoding) {
+        if (null == body) {
+            exchange.context.complete();
+            return;
+        }
+        try {
+            if (nonBlocking) {
+                // the drain completes the context once the last chunk has been accepted
+                ResponseDrain.write(exchange.context, null != encoding ? Compression.compress(body, encoding) : body);
+                return;
+            }
+            if (null != encoding) {
+                try (OutputStream output = Compression.wrap(exchange.response.getOutputStream(), encoding, false)) {
+                    output.write(body);
+                }
+            } else {
+                exchange.response.getOutputStream().write(body);
+            }
+        }
+        catch (IOException e) {
+            // IGNORED
+        }
+        exchange.context.complete();
+    }
+
+    private void streamJson(HttpServletResponse response, Object o, String encoding) throws IOException {
+        // serialize straight into the output stream so peak memory does not grow with the payload
+        OutputStream output = null != encoding
+                ? Compression.wrap(response.getOutputStream(), encoding, false)
+                : response.getOutputStream();
+        JsonWriter writer = gson.newJsonWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
+        gson.toJson(o, o.getClass(), writer);
+        writer.close();
     }
 
     private void sendCorsHeaders(HttpServletRequest request, HttpServletResponse response) {
@@ -748,6 +1849,70 @@ public class  RelaxServlet extends HttpServlet {
     }
 
     private void initialize(ServletConfig config) throws ServletException {
+        invoker = config.getInitParameter("invoker");
+        streamJson = "true".equals(config.getInitParameter("streamjson"));
+        nonBlocking = "true".equals(config.getInitParameter("nonblocking"));
+        etags = "true".equals(config.getInitParameter("etags"));
+        metrics = config.getInitParameter("metrics");
+        codecNames = config.getInitParameter("codecs");
+        warmUpMode = config.getInitParameter("warmup");
+        debug = "true".equals(config.getInitParameter("debug"));
+        stackless = "true".equals(config.getInitParameter("stacklessexceptions"));
+        compression = "true".equals(config.getInitParameter("compression"));
+        String threshold = config.getInitParameter("compressionthreshold");
+        if (null != threshold) {
+            compressionThreshold = Integer.parseInt(threshold.trim());
+        }
+        String adaptiveLimit = config.getInitParameter("concurrencylimit");
+        if (null != adaptiveLimit) {
+            limitAlgorithm = ConcurrencyLimit.Algorithm.valueOf(adaptiveLimit.trim().toUpperCase());
+        }
+        String maxLimit = config.getInitParameter("concurrencylimitmax");
+        if (null != maxLimit) {
+            limitMax = Integer.parseInt(maxLimit.trim());
+        }
+        String latency = config.getInitParameter("concurrencylimitlatency");
+        if (null != latency) {
+            limitLatency = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(latency.trim()));
+        }
+        String retry = config.getInitParameter("retryafter");
+        if (null != retry) {
+            retryAfter = retry.trim();
+        }
+        String requestDeadline = config.getInitParameter("deadline");
+        if (null != requestDeadline) {
+            deadline = Long.parseLong(requestDeadline.trim());
+        }
+        String bodyLimit = config.getInitParameter("maxbody");
+        if (null != bodyLimit) {
+            maxBody = Long.parseLong(bodyLimit.trim());
+        }
+        String header = config.getInitParameter("deadlineheader");
+        if (null != header) {
+            deadlineHeader = header.trim().isEmpty() ? null : header.trim();
+        }
+        String factory = config.getInitParameter("servicefactory");
+        if (null != factory) {
+            try {
+                serviceFactory = (ServiceFactory) Class.forName(factory.trim()).getConstructor().newInstance();
+            }
+            catch (ReflectiveOperationException | ClassCastException e) {
+                throw new ServletException("Cannot create service factory " + factory, e);
+            }
+        }
+        String timeout = config.getInitParameter("lifecycletimeout");
+        if (null != timeout) {
+            try {
+                lifecycleTimeout = Long.parseLong(timeout.trim());
+            }
+            catch (NumberFormatException e) {
+                throw new ServletException("Invalid lifecycletimeout " + timeout, e);
+            }
+        }
+        String dispatchThreads = config.getInitParameter("dispatchthreads");
+        if (null != dispatchThreads) {
+            dispatchExecutor = createDispatchExecutor(Integer.parseInt(dispatchThreads.trim()));
+        }
         initialize(
                 config.getInitParameter("directory"),
                 config.getInitParameter("services"),
@@ -756,9 +1921,131 @@ public class  RelaxServlet extends HttpServlet {
                 "true".equals(getInitParameter("prettyjson")));
     }
 
+    protected ExecutorService createDispatchExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "relax-dispatch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    protected Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        for (WorkerPool pool : pools.values()) {
+            depths.put(pool.name, pool.queueDepth());
+        }
+        return depths;
+    }
+
+    protected Map<String, Map<String, Long>> getCacheStatistics() {
+        Map<String, Map<String, Long>> statistics = new LinkedHashMap<>();
+        for (Endpoint endpoint : endpoints.values()) {
+            ResponseCache cache = endpoint.cache;
+            if (null != cache) {
+                Map<String, Long> counts = new LinkedHashMap<>();
+                counts.put("hits", cache.hits.sum());
+                counts.put("staleHits", cache.staleHits.sum());
+                counts.put("misses", cache.misses.sum());
+                counts.put("evictions", cache.evictions.sum());
+                counts.put("entries", (long) cache.size());
+                counts.put("bytes", cache.bytes());
+                statistics.put(cache.name, counts);
+            }
+        }
+        return statistics;
+    }
+
+    protected Map<String, Map<String, Long>> getCoalescingStatistics() {
+        Map<String, Map<String, Long>> statistics = new LinkedHashMap<>();
+        for (Endpoint endpoint : endpoints.values()) {
+            SingleFlight flight = endpoint.flight;
+            if (null != flight) {
+                Map<String, Long> counts = new LinkedHashMap<>();
+                counts.put("invocations", flight.invocations.sum());
+                counts.put("joined", flight.joined.sum());
+                counts.put("inFlight", (long) flight.size());
+                statistics.put(flight.name, counts);
+            }
+        }
+        return statistics;
+    }
+
+    protected Map<String, Map<String, Long>> getConcurrencyLimits() {
+        Map<String, Map<String, Long>> statistics = new LinkedHashMap<>();
+        for (ConcurrencyLimit limit : limits.values()) {
+            Map<String, Long> values = new LinkedHashMap<>();
+            values.put("limit", (long) limit.limit());
+            values.put("inFlight", (long) limit.inFlight());
+            values.put("rejected", limit.rejected.sum());
+            statistics.put(limit.name, values);
+        }
+        return statistics;
+    }
+
+    /**
+     * Called whenever an adaptive concurrency limit settles on a new value; override to export it.
+     */
+    protected void onConcurrencyLimitChanged(String name, int limit) {
+    }
+
+    private void writeMetrics(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        List<RouteMetrics> routes = new ArrayList<>();
+        for (Endpoint endpoint : endpoints.values()) {
+            routes.add(endpoint.metrics);
+        }
+        routes.add(unmatchedMetrics);
+
+        MetricsReport report = new MetricsReport(routes, getQueueDepths())
+                .add("cache", getCacheStatistics())
+                .add("coalescing", getCoalescingStatistics())
+                .add("concurrency", getConcurrencyLimits());
+
+        String accept = req.getHeader("Accept");
+        if ("json".equals(req.getParameter("format")) || (null != accept && accept.contains("application/json"))) {
+            resp.addHeader("Content-Type", "application/json");
+            resp.getOutputStream().write(report.json(gson).getBytes(StandardCharsets.UTF_8));
+        } else {
+            resp.addHeader("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            resp.getOutputStream().write(report.prometheus().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        stopServices();
+        if (null != dispatchExecutor) {
+            dispatchExecutor.shutdown();
+        }
+        for (WorkerPool pool : pools.values()) {
+            pool.shutdown();
+        }
+        super.destroy();
+    }
+
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (null != metrics && metrics.equals(req.getPathInfo())) {
+            writeMetrics(req, resp);
+            return;
+        }
         if(null != directory && directory.equals(req.getPathInfo())) {
+            boolean gzip = null != directoryGzip && Compression.GZIP.equals(Compression.negotiate(req.getHeader("Accept-Encoding")));
+            if (null != directoryGzip) {
+                resp.addHeader("Vary", "Accept-Encoding");
+            }
+            if (notModified(req, resp, gzip ? ETags.encoded(directoryEtag, Compression.GZIP) : directoryEtag)) {
+                return;
+            }
+            if (gzip) {
+                resp.addHeader("Content-Encoding", Compression.GZIP);
+                resp.addHeader("ETag", ETags.encoded(directoryEtag, Compression.GZIP));
+                resp.getOutputStream().write(directoryGzip);
+                return;
+            }
+            if (null != directoryEtag) {
+                resp.addHeader("ETag", directoryEtag);
+            }
             resp.getWriter().print(directoryJson);
             return;
         }
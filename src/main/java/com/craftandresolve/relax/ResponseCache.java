@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.Cached;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Serialized responses of one GET endpoint, keyed by request path plus the query parameters
+ * and headers named in its @Cached annotation. Entries are evicted least recently used first,
+ * whenever either the entry count or the total byte size goes over its bound.
+ */
+final class ResponseCache {
+
+    static final class Entry {
+        final byte[] body;
+        final String etag;
+        final long storedAt;
+        boolean refreshing;
+
+        private volatile byte[] gzip;
+        private volatile byte[] deflate;
+
+        Entry(byte[] body, String etag, long storedAt) {
+            this.body = body;
+            this.etag = etag;
+            this.storedAt = storedAt;
+        }
+
+        byte[] encoded(String encoding) {
+            // compressed once on first request for that encoding, then served as is
+            if (Compression.GZIP.equals(encoding)) {
+                byte[] bytes = gzip;
+                if (null == bytes) {
+                    gzip = bytes = Compression.compress(body, encoding);
+                }
+                return bytes;
+            }
+            byte[] bytes = deflate;
+            if (null == bytes) {
+                deflate = bytes = Compression.compress(body, encoding);
+            }
+            return bytes;
+        }
+    }
+
+    final String name;
+    final Endpoint endpoint;
+
+    private final long ttl;
+    private final long stale;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final String[] headers;
+    private final String[] query;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder staleHits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+
+    ResponseCache(Endpoint endpoint, Cached cached) {
+        this.name = endpoint.verb + "|" + endpoint.pattern;
+        this.endpoint = endpoint;
+        this.ttl = TimeUnit.SECONDS.toNanos(cached.ttl());
+        this.stale = TimeUnit.SECONDS.toNanos(cached.staleWhileRevalidate());
+        this.maxEntries = cached.maxEntries();
+        this.maxBytes = cached.maxBytes();
+        this.headers = cached.headers();
+        this.query = cached.query();
+    }
+
+    int maxEntries() {
+        return maxEntries;
+    }
+
+    String key(HttpServletRequest request) {
+        return key(request, query, headers);
+    }
+
+    static String key(HttpServletRequest request, String[] query, String[] headers) {
+        // every part is length-prefixed and a missing one has a mark no value can produce, so distinct requests never share a key
+        StringBuilder key = new StringBuilder(64);
+        append(key, request.getPathInfo());
+        for (String name : query) {
+            append(key, request.getParameter(name));
+        }
+        for (String name : headers) {
+            append(key, request.getHeader(name));
+        }
+        return key.toString();
+    }
+
+    private static void append(StringBuilder key, String value) {
+        if (null == value) {
+            key.append('-');
+        } else {
+            key.append(value.length()).append(':').append(value);
+        }
+    }
+
+    /**
+     * Returns a fresh entry, or a stale one still inside its revalidation window; in the latter
+     * case the entry is marked as refreshing and {@code revalidate} is true for exactly one caller.
+     */
+    synchronized Entry get(String key, boolean[] revalidate) {
+        Entry entry = entries.get(key);
+        if (null != entry) {
+            long age = System.nanoTime() - entry.storedAt;
+            if (age <= ttl) {
+                hits.increment();
+                return entry;
+            }
+            if (age <= ttl + stale) {
+                staleHits.increment();
+                if (!entry.refreshing) {
+                    entry.refreshing = true;
+                    revalidate[0] = true;
+                }
+                return entry;
+            }
+            remove(key);
+        }
+        misses.increment();
+        return null;
+    }
+
+    synchronized void put(String key, byte[] body, String etag) {
+        if (body.length > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(body, etag, System.nanoTime()));
+        if (null != previous) {
+            bytes -= previous.body.length;
+        }
+        bytes += body.length;
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().body.length;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    synchronized void refreshFailed(String key) {
+        Entry entry = entries.get(key);
+        if (null != entry) {
+            entry.refreshing = false;
+        }
+    }
+
+    synchronized void invalidate(String key) {
+        remove(key);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (null != entry) {
+            bytes -= entry.body.length;
+        }
+    }
+}
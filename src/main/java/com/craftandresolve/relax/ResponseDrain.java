@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+
+
+/**
+ * Writes a serialized response with Servlet 3.1 non-blocking I/O. Each chunk is written only
+ * while the container reports the output ready; the context completes once everything is out.
+ */
+final class ResponseDrain implements WriteListener {
+
+    private static final int CHUNK = 8192;
+
+    private final AsyncContext context;
+    private final ServletOutputStream output;
+    private final byte[] data;
+    private int offset;
+
+    private ResponseDrain(AsyncContext context, ServletOutputStream output, byte[] data) {
+        this.context = context;
+        this.output = output;
+        this.data = data;
+    }
+
+    static void write(AsyncContext context, byte[] data) throws IOException {
+        ServletOutputStream output = context.getResponse().getOutputStream();
+        output.setWriteListener(new ResponseDrain(context, output, data));
+    }
+
+    @Override
+    public void onWritePossible() throws IOException {
+        while (output.isReady()) {
+            if (offset == data.length) {
+                context.complete();
+                return;
+            }
+            int count = Math.min(CHUNK, data.length - offset);
+            output.write(data, offset, count);
+            offset += count;
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        context.complete();
+    }
+}
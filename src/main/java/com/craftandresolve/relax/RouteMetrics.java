@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Request counts by status, in-flight gauge and phase latencies of one route. The phases of an
+ * exchange are timed from the marks it collects on its way through the servlet:
+ * queue (accepted to invoked), execute (invoked to result) and write (result to completed).
+ */
+final class RouteMetrics {
+
+    static final String[] PHASES = {"total", "queue", "execute", "write"};
+
+    final String name;
+    final LongAdder inFlight = new LongAdder();
+    final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    final Histogram[] phases = new Histogram[PHASES.length];
+
+    RouteMetrics(String name) {
+        this.name = name;
+        for (int i = 0; i < phases.length; ++i) {
+            phases[i] = new Histogram();
+        }
+    }
+
+    void track(Exchange exchange) {
+        inFlight.increment();
+        exchange.context.addListener((CompletionListener) event -> completed(exchange, System.nanoTime()));
+    }
+
+    private void completed(Exchange exchange, long completedAt) {
+        inFlight.decrement();
+        statuses.computeIfAbsent(exchange.response.getStatus(), k -> new LongAdder()).increment();
+
+        phases[0].recordNanos(completedAt - exchange.startedAt);
+        if (0 != exchange.invokedAt) {
+            phases[1].recordNanos(exchange.invokedAt - exchange.startedAt);
+            if (0 != exchange.respondedAt) {
+                phases[2].recordNanos(exchange.respondedAt - exchange.invokedAt);
+            }
+        }
+        if (0 != exchange.respondedAt) {
+            phases[3].recordNanos(completedAt - exchange.respondedAt);
+        }
+    }
+}
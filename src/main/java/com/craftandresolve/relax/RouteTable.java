@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import java.util.List;
+
+
+/**
+ * Endpoints of one @Service class. The annotation processor in
+ * {@code com.craftandresolve.relax.processor} generates an implementation named after the
+ * service ({@code MyService_RelaxRoutes} for {@code MyService}) whose invokers call the endpoint
+ * methods directly and whose directory entities were worked out at compile time. Services
+ * compiled without the processor are read through reflection into the same shape.
+ */
+public interface RouteTable {
+
+    List<Route> routes();
+
+    @FunctionalInterface
+    interface Invoker {
+        Object invoke(Object service, Object[] arguments) throws Exception;
+    }
+
+    final class Argument {
+
+        public enum Kind {BODY, HEADER, PATH, QUERY, REQUEST, RESPONSE}
+
+        public final Kind kind;
+        public final String key;
+        public final String format;
+
+        public Argument(Kind kind, String key, String format) {
+            this.kind = kind;
+            this.key = key;
+            this.format = format;
+        }
+    }
+
+    final class Route {
+
+        public final String verb;
+        public final String path;
+        public final String description;
+        public final String method;
+        public final Class<?>[] parameterTypes;
+        // one per parameter, null for a parameter that cannot be bound
+        public final Argument[] arguments;
+        // null when the endpoint is invoked through reflection
+        public final Invoker invoker;
+        // directory entities of the @Body parameter and the result, as JSON; null to describe them by reflection
+        public final String request;
+        public final String response;
+
+        public Route(String verb, String path, String description, String method, Class<?>[] parameterTypes,
+                     Argument[] arguments, Invoker invoker, String request, String response) {
+            this.verb = verb;
+            this.path = path;
+            this.description = description;
+            this.method = method;
+            this.parameterTypes = parameterTypes;
+            this.arguments = arguments;
+            this.invoker = invoker;
+            this.request = request;
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Segment trie of endpoint patterns, one trie per HTTP verb.
+ *
+ * Literal segments take precedence over {param} segments at every level; when a literal
+ * branch does not lead to a registered target, matching backtracks into the parameter branch.
+ * Parameter values are captured positionally, in the order they appear in the pattern.
+ */
+final class Router<T> {
+
+    static final class Match<T> {
+        final T target;
+        final String[] values;
+
+        private Match(T target, String[] values) {
+            this.target = target;
+            this.values = values;
+        }
+    }
+
+    private static final class Node<T> {
+        final Map<String, Node<T>> literals = new HashMap<>();
+        Node<T> parameter;
+        T target;
+    }
+
+    private final Map<String, Node<T>> roots = new HashMap<>();
+    private final Map<String, Integer> maxParameters = new HashMap<>();
+
+    void add(String verb, String pattern, T target) {
+        Node<T> node = roots.computeIfAbsent(verb, k -> new Node<>());
+
+        int from = start(pattern);
+        int to = end(pattern);
+        int parameters = 0;
+
+        while (from < to) {
+            int slash = nextSlash(pattern, from, to);
+            String segment = pattern.substring(from, slash);
+            if (!segment.isEmpty() && segment.charAt(0) == '{') {
+                if (null == node.parameter) {
+                    node.parameter = new Node<>();
+                }
+                node = node.parameter;
+                ++parameters;
+            }
+            else {
+                node = node.literals.computeIfAbsent(segment, k -> new Node<>());
+            }
+            from = slash + 1;
+        }
+
+        node.target = target;
+        maxParameters.merge(verb, parameters, Math::max);
+    }
+
+    Match<T> match(String verb, String path) {
+        Node<T> root = roots.get(verb);
+        if (null == root) {
+            return null;
+        }
+        if (null == path) {
+            path = "";
+        }
+
+        int from = start(path);
+        int to = end(path);
+        String[] values = new String[maxParameters.get(verb)];
+
+        Node<T> node = from < to ? descend(root, path, from, to, values, 0) : root;
+        if (null == node || null == node.target) {
+            return null;
+        }
+        return new Match<>(node.target, values);
+    }
+
+    static String[] parameterLabels(String pattern) {
+        int from = start(pattern);
+        int to = end(pattern);
+        List<String> labels = new ArrayList<>();
+
+        while (from < to) {
+            int slash = nextSlash(pattern, from, to);
+            if (pattern.charAt(from) == '{') {
+                labels.add(pattern.substring(from + 1, slash - 1));
+            }
+            from = slash + 1;
+        }
+
+        return labels.toArray(new String[0]);
+    }
+
+    private static <T> Node<T> descend(Node<T> node, String path, int from, int to, String[] values, int index) {
+        if (from > to) {
+            return null != node.target ? node : null;
+        }
+
+        int slash = nextSlash(path, from, to);
+        String segment = path.substring(from, slash);
+
+        Node<T> literal = node.literals.get(segment);
+        if (null != literal) {
+            Node<T> found = descend(literal, path, slash + 1, to, values, index);
+            if (null != found) {
+                return found;
+            }
+        }
+
+        // an empty segment, as in "a//b", has no value to bind
+        if (null != node.parameter && !segment.isEmpty()) {
+            values[index] = segment;
+            return descend(node.parameter, path, slash + 1, to, values, index + 1);
+        }
+
+        return null;
+    }
+
+    private static int start(String path) {
+        return !path.isEmpty() && path.charAt(0) == '/' ? 1 : 0;
+    }
+
+    private static int end(String path) {
+        int end = path.length();
+        return end > 1 && path.charAt(end - 1) == '/' ? end - 1 : end;
+    }
+
+    private static int nextSlash(String path, int from, int to) {
+        int slash = path.indexOf('/', from);
+        return slash < 0 || slash > to ? to : slash;
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+
+/**
+ * Supplies the instance of each @Service class, for example from a dependency injection
+ * container. Called once per class at initialization; every endpoint of the class shares the
+ * instance. Name an implementation, with a public no-argument constructor, in the
+ * servicefactory init-param.
+ */
+@FunctionalInterface
+public interface ServiceFactory {
+
+    Object create(Class<?> serviceClass) throws Exception;
+}
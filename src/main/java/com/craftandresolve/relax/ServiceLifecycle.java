@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import io.reactivex.Completable;
+
+
+/**
+ * Implemented by @Service classes that hold resources worth setting up before the first
+ * request and releasing on shutdown. The servlet subscribes to start() of every service at
+ * once during initialization and waits for all of them, and to stop() in destroy().
+ */
+public interface ServiceLifecycle {
+
+    default Completable start() {
+        return Completable.complete();
+    }
+
+    default Completable stop() {
+        return Completable.complete();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.Coalesced;
+import io.reactivex.Maybe;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+
+/**
+ * In-flight invocations of one GET endpoint, keyed like a response cache by request path plus
+ * the query parameters and headers named in its @Coalesced annotation. Requests arriving while
+ * an identical one is in flight subscribe to its result instead of invoking the endpoint again;
+ * the flight is forgotten as soon as its result is delivered.
+ */
+final class SingleFlight {
+
+    static final class Shared {
+        final Object value;
+        final byte[] body;
+        final String etag;
+
+        Shared(Object value, byte[] body, String etag) {
+            this.value = value;
+            this.body = body;
+            this.etag = etag;
+        }
+    }
+
+    final String name;
+
+    private final String[] headers;
+    private final String[] query;
+    private final ConcurrentHashMap<String, Maybe<Object>> flights = new ConcurrentHashMap<>();
+
+    final LongAdder invocations = new LongAdder();
+    final LongAdder joined = new LongAdder();
+
+    SingleFlight(Endpoint endpoint, Coalesced coalesced) {
+        this.name = endpoint.verb + "|" + endpoint.pattern;
+        this.headers = coalesced.headers();
+        this.query = coalesced.query();
+    }
+
+    String key(HttpServletRequest request) {
+        return ResponseCache.key(request, query, headers);
+    }
+
+    Maybe<Object> join(String key, Supplier<Maybe<Object>> call) {
+        Maybe<Object> flight = flights.get(key);
+        if (null != flight) {
+            joined.increment();
+            return flight;
+        }
+
+        boolean[] created = new boolean[1];
+        flight = flights.computeIfAbsent(key, k -> {
+            created[0] = true;
+            Object[] self = new Object[1];
+            Maybe<Object> shared = call.get()
+                    .doFinally(() -> flights.remove(k, self[0]))
+                    .cache();
+            self[0] = shared;
+            return shared;
+        });
+        if (created[0]) {
+            invocations.increment();
+        } else {
+            joined.increment();
+        }
+        return flight;
+    }
+
+    int size() {
+        return flights.size();
+    }
+}
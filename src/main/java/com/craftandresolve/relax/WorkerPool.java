@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.service.Bulkhead;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Scheduler that endpoint invocations of one service (or one endpoint) run on, isolating it
+ * from the others. Bounded pools admit at most threads + queue requests; anything beyond that
+ * is refused up front rather than queued without limit.
+ */
+final class WorkerPool {
+
+    final String name;
+    final Scheduler scheduler;
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int capacity;
+
+    private WorkerPool(String name, Scheduler scheduler, ExecutorService executor, int capacity) {
+        this.name = name;
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.permits = capacity > 0 ? new Semaphore(capacity) : null;
+    }
+
+    static WorkerPool create(String name, Bulkhead bulkhead) {
+        switch (bulkhead.value()) {
+            case COMPUTATION:
+                return new WorkerPool(name, Schedulers.computation(), null, 0);
+            case BOUNDED:
+                ExecutorService bounded = new ThreadPoolExecutor(
+                        bulkhead.threads(),
+                        bulkhead.threads(),
+                        60L,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(),
+                        threadFactory(name));
+                return new WorkerPool(name, Schedulers.from(bounded), bounded, bulkhead.threads() + bulkhead.queue());
+            case VIRTUAL:
+                ExecutorService virtual = virtualThreadExecutor();
+                if (null != virtual) {
+                    return new WorkerPool(name, Schedulers.from(virtual), virtual, 0);
+                }
+                // virtual threads need Java 21+; use the shared I/O scheduler instead
+                return io(name);
+            default:
+                return io(name);
+        }
+    }
+
+    static WorkerPool io(String name) {
+        return new WorkerPool(name, Schedulers.io(), null, 0);
+    }
+
+    boolean tryAcquire() {
+        return null == permits || permits.tryAcquire();
+    }
+
+    void release() {
+        if (null != permits) {
+            permits.release();
+        }
+    }
+
+    int inFlight() {
+        return null != permits ? capacity - permits.availablePermits() : 0;
+    }
+
+    int queueDepth() {
+        return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getQueue().size() : 0;
+    }
+
+    void shutdown() {
+        if (null != executor) {
+            executor.shutdown();
+        }
+    }
+
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "relax-" + name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
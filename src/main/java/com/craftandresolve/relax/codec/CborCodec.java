@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+
+
+/**
+ * CBOR (RFC 7049) for the same entity classes as JSON. Gson's type adapters decide what an
+ * entity looks like, so field names, custom adapters and null handling match the JSON form;
+ * only the bytes on the wire differ. Encoding streams straight into CBOR, decoding goes
+ * through a Gson tree.
+ */
+public class CborCodec implements Codec {
+
+    public static final String MEDIA_TYPE = "application/cbor";
+
+    private final Gson gson;
+
+    public CborCodec(Gson gson) {
+        this.gson = gson;
+    }
+
+    @Override
+    public String getMediaType() {
+        return MEDIA_TYPE;
+    }
+
+    @Override
+    public byte[] encode(Object value, Type type) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(256);
+        try {
+            gson.toJson(value, type, new CborWriter(output));
+        }
+        catch (JsonIOException e) {
+            throw null != e.getCause() && e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    @Override
+    public Object decode(InputStream input, Type type) throws IOException {
+        return gson.fromJson(CborReader.read(input), type);
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax.codec;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Parses one CBOR item into a Gson tree. Byte strings become arrays of numbers, which is how
+ * Gson itself represents byte[]; tags are skipped. Lengths and nesting are bounded by the
+ * input actually present, so a hostile length prefix cannot make the reader allocate for it.
+ */
+final class CborReader {
+
+    private static final int MAX_DEPTH = 512;
+    private static final int CHUNK = 8192;
+    private static final int BREAK = 0xff;
+
+    private final DataInputStream input;
+    private int depth;
+
+    private CborReader(InputStream input) {
+        this.input = new DataInputStream(input);
+    }
+
+    static JsonElement read(InputStream input) throws IOException {
+        return new CborReader(input).item(input.read());
+    }
+
+    private JsonElement item(int initial) throws IOException {
+        if (initial < 0) {
+            throw new IOException("Truncated CBOR item");
+        }
+        int major = initial >>> 5;
+        int info = initial & 0x1f;
+        switch (major) {
+            case 0: {
+                long value = length(info);
+                return new JsonPrimitive(value >= 0 ? (Number) value : new BigInteger(Long.toUnsignedString(value)));
+            }
+            case 1: {
+                long value = length(info);
+                return new JsonPrimitive(value >= 0 ? (Number) (-1 - value) : BigInteger.ONE.negate().subtract(new BigInteger(Long.toUnsignedString(value))));
+            }
+            case 2: {
+                JsonArray bytes = new JsonArray();
+                for (byte b : string(major, info)) {
+                    bytes.add(b);
+                }
+                return bytes;
+            }
+            case 3:
+                return new JsonPrimitive(new String(string(major, info), StandardCharsets.UTF_8));
+            case 4:
+                return array(info);
+            case 5:
+                return map(info);
+            case 6: {
+                length(info);
+                enter();
+                JsonElement tagged = item(input.read());
+                --depth;
+                return tagged;
+            }
+            default:
+                return simple(info);
+        }
+    }
+
+    private JsonArray array(int info) throws IOException {
+        enter();
+        JsonArray array = new JsonArray();
+        if (31 == info) {
+            for (int initial = input.read(); BREAK != initial; initial = input.read()) {
+                array.add(item(initial));
+            }
+        } else {
+            for (long count = length(info); count > 0; --count) {
+                array.add(item(input.read()));
+            }
+        }
+        --depth;
+        return array;
+    }
+
+    private JsonObject map(int info) throws IOException {
+        enter();
+        JsonObject object = new JsonObject();
+        if (31 == info) {
+            for (int initial = input.read(); BREAK != initial; initial = input.read()) {
+                object.add(key(item(initial)), item(input.read()));
+            }
+        } else {
+            for (long count = length(info); count > 0; --count) {
+                object.add(key(item(input.read())), item(input.read()));
+            }
+        }
+        --depth;
+        return object;
+    }
+
+    private JsonElement simple(int info) throws IOException {
+        switch (info) {
+            case 20:
+                return new JsonPrimitive(false);
+            case 21:
+                return new JsonPrimitive(true);
+            case 22:
+            case 23:
+                return JsonNull.INSTANCE;
+            case 25:
+                return new JsonPrimitive(half(input.readUnsignedShort()));
+            case 26:
+                return new JsonPrimitive(Float.intBitsToFloat(input.readInt()));
+            case 27:
+                return new JsonPrimitive(Double.longBitsToDouble(input.readLong()));
+            default:
+                throw new IOException("Unsupported CBOR simple value " + info);
+        }
+    }
+
+    private byte[] string(int major, int info) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (31 == info) {
+            // indefinite strings are a sequence of definite chunks of the same type
+            for (int initial = input.read(); BREAK != initial; initial = input.read()) {
+                if (initial < 0 || initial >>> 5 != major || 31 == (initial & 0x1f)) {
+                    throw new IOException("Malformed CBOR string chunk");
+                }
+                copy(length(initial & 0x1f), bytes);
+            }
+        } else {
+            copy(length(info), bytes);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void copy(long length, ByteArrayOutputStream bytes) throws IOException {
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("CBOR string too long");
+        }
+        byte[] chunk = new byte[(int) Math.min(length, CHUNK)];
+        for (long remaining = length; remaining > 0; ) {
+            int count = (int) Math.min(remaining, chunk.length);
+            input.readFully(chunk, 0, count);
+            bytes.write(chunk, 0, count);
+            remaining -= count;
+        }
+    }
+
+    private long length(int info) throws IOException {
+        if (info < 24) {
+            return info;
+        }
+        switch (info) {
+            case 24:
+                return input.readUnsignedByte();
+            case 25:
+                return input.readUnsignedShort();
+            case 26:
+                return input.readInt() & 0xffffffffL;
+            case 27:
+                return input.readLong();
+            default:
+                throw new IOException("Malformed CBOR length " + info);
+        }
+    }
+
+    private void enter() throws IOException {
+        if (++depth > MAX_DEPTH) {
+            throw new IOException("CBOR nesting too deep");
+        }
+    }
+
+    private static String key(JsonElement key) throws IOException {
+        if (!key.isJsonPrimitive()) {
+            throw new IOException("CBOR map keys must be strings or numbers");
+        }
+        return key.getAsString();
+    }
+
+    private static float half(int bits) {
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+        float value = 0 == exponent
+                ? mantissa * (float) Math.pow(2, -24)
+                : 31 == exponent
+                        ? (0 == mantissa ? Float.POSITIVE_INFINITY : Float.NaN)
+                        : (1024 + mantissa) * (float) Math.pow(2, exponent - 25);
+        return 0 != (bits & 0x8000) ? -value : value;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax.codec;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * JsonWriter that emits CBOR, so any Gson type adapter can write it. Arrays and objects use
+ * indefinite lengths, which lets items stream out without knowing their count; doubles that
+ * survive a round trip through float are written in four bytes.
+ */
+final class CborWriter extends JsonWriter {
+
+    private static final Writer UNUSED = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private static final int UNSIGNED = 0;
+    private static final int NEGATIVE = 1;
+    private static final int TEXT = 3;
+    private static final int INDEFINITE_ARRAY = 0x9f;
+    private static final int INDEFINITE_MAP = 0xbf;
+    private static final int BREAK = 0xff;
+    private static final int FALSE = 0xf4;
+    private static final int TRUE = 0xf5;
+    private static final int NULL = 0xf6;
+    private static final int FLOAT = 0xfa;
+    private static final int DOUBLE = 0xfb;
+
+    private final OutputStream output;
+    private String pendingName;
+
+    CborWriter(OutputStream output) {
+        super(UNUSED);
+        this.output = output;
+    }
+
+    @Override
+    public JsonWriter beginArray() throws IOException {
+        writePendingName();
+        output.write(INDEFINITE_ARRAY);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+        output.write(BREAK);
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+        writePendingName();
+        output.write(INDEFINITE_MAP);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+        output.write(BREAK);
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) {
+        if (null == name) {
+            throw new NullPointerException("name == null");
+        }
+        pendingName = name;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) throws IOException {
+        if (null == value) {
+            return nullValue();
+        }
+        writePendingName();
+        writeText(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String value) throws IOException {
+        // there is no raw form in CBOR; the JSON text travels as a string
+        return value(value);
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+        if (null != pendingName && !getSerializeNulls()) {
+            // same as JSON: a null member is left out entirely
+            pendingName = null;
+            return this;
+        }
+        writePendingName();
+        output.write(NULL);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) throws IOException {
+        writePendingName();
+        output.write(value ? TRUE : FALSE);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) throws IOException {
+        return null == value ? nullValue() : value(value.booleanValue());
+    }
+
+    @Override
+    public JsonWriter value(double value) throws IOException {
+        writePendingName();
+        float narrow = (float) value;
+        if (narrow == value || Double.isNaN(value)) {
+            output.write(FLOAT);
+            writeBytes(Float.floatToIntBits(narrow), 4);
+        } else {
+            output.write(DOUBLE);
+            writeBytes(Double.doubleToLongBits(value), 8);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) throws IOException {
+        writePendingName();
+        if (value >= 0) {
+            writeHead(UNSIGNED, value);
+        } else {
+            writeHead(NEGATIVE, -1 - value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) throws IOException {
+        if (null == value) {
+            return nullValue();
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return value(value.doubleValue());
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return value(value.longValue());
+        }
+        // BigDecimal, BigInteger and Gson's lazily parsed numbers
+        String text = value.toString();
+        try {
+            return value(Long.parseLong(text));
+        }
+        catch (NumberFormatException e) {
+            return value(Double.parseDouble(text));
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() {
+        // the output belongs to the caller
+    }
+
+    private void writePendingName() throws IOException {
+        if (null != pendingName) {
+            writeText(pendingName);
+            pendingName = null;
+        }
+    }
+
+    private void writeText(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeHead(TEXT, bytes.length);
+        output.write(bytes);
+    }
+
+    private void writeHead(int major, long value) throws IOException {
+        int type = major << 5;
+        if (value < 24) {
+            output.write(type | (int) value);
+        } else if (value < 0x100) {
+            output.write(type | 24);
+            output.write((int) value);
+        } else if (value < 0x10000) {
+            output.write(type | 25);
+            writeBytes(value, 2);
+        } else if (value < 0x100000000L) {
+            output.write(type | 26);
+            writeBytes(value, 4);
+        } else {
+            output.write(type | 27);
+            writeBytes(value, 8);
+        }
+    }
+
+    private void writeBytes(long value, int count) throws IOException {
+        for (int shift = (count - 1) * 8; shift >= 0; shift -= 8) {
+            output.write((int) (value >>> shift));
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+
+
+/**
+ * Reads and writes entities in one media type. JSON through Gson is always available; further
+ * codecs are listed in the codecs init-param, by name ({@code cbor}) or by class name, and are
+ * chosen per request from the Accept and Content-Type headers. A codec class needs a public
+ * constructor taking the servlet's Gson instance, or a public no-argument one.
+ */
+public interface Codec {
+
+    String getMediaType();
+
+    byte[] encode(Object value, Type type) throws IOException;
+
+    Object decode(InputStream input, Type type) throws IOException;
+}
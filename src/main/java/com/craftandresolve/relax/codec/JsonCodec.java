@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax.codec;
+
+import com.google.gson.Gson;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+
+public class JsonCodec implements Codec {
+
+    public static final String MEDIA_TYPE = "application/json";
+
+    private final Gson gson;
+
+    public JsonCodec(Gson gson) {
+        this.gson = gson;
+    }
+
+    @Override
+    public String getMediaType() {
+        return MEDIA_TYPE;
+    }
+
+    @Override
+    public byte[] encode(Object value, Type type) {
+        return gson.toJson(value, type).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Object decode(InputStream input, Type type) {
+        return gson.fromJson(new InputStreamReader(input, StandardCharsets.UTF_8), type);
+    }
+}
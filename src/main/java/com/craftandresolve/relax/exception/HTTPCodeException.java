@@ -19,6 +19,9 @@ package com.craftandresolve.relax.exception;
 
 public class HTTPCodeException extends Exception {
 
+    // set on a thread while a servlet that asked for stackless exceptions is calling an endpoint on it
+    private static final ThreadLocal<Boolean> stackless = new ThreadLocal<>();
+
     private final int code;
     private final String shortText;
 
@@ -28,9 +31,35 @@ public class HTTPCodeException extends Exception {
         this.shortText = shortText;
     }
 
+    protected HTTPCodeException(int code, String shortText, String longText, Throwable cause) {
+        super(longText, cause);
+        this.code = code;
+        this.shortText = shortText;
+    }
+
     public int getCode() {
         return code;
     }
 
     public String getShortText() { return shortText; }
+
+    /**
+     * Whether HTTP exceptions constructed on the calling thread record a stack trace; returns the previous
+     * setting so it can be restored. They usually report an expected outcome such as a missing entity, so
+     * turning this off makes throwing them about as cheap as returning.
+     */
+    public static boolean setStackTraces(boolean enabled) {
+        boolean previous = null == stackless.get();
+        if (enabled) {
+            stackless.remove();
+        } else {
+            stackless.set(Boolean.TRUE);
+        }
+        return previous;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return null == stackless.get() ? super.fillInStackTrace() : this;
+    }
 }
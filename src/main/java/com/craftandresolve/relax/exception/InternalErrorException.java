@@ -19,6 +19,6 @@ package com.craftandresolve.relax.exception;
 
 public class InternalErrorException extends HTTPCodeException {
     public InternalErrorException(String shortText, Throwable cause) {
-        super(500, shortText, cause.getLocalizedMessage());
+        super(500, shortText, cause.getLocalizedMessage(), cause);
     }
 }
@@ -0,0 +1,502 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax.processor;
+
+import com.craftandresolve.relax.annotation.parameter.Body;
+import com.craftandresolve.relax.annotation.service.Service;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Generates, for every public @Service class, a Gson TypeAdapterFactory with a TypeAdapter for
+ * each entity class reachable from its endpoint results and @Body parameters. The adapters read
+ * and write fields directly and dispatch on field names with a switch, where Gson's reflective
+ * adapter goes through Field and a map of bound fields. Entities the adapters cannot reproduce
+ * exactly (private or final fields, no usable no-argument constructor, type parameters,
+ * {@code @JsonAdapter}, ...) are left to Gson.
+ *
+ * Off unless the compiler is given {@code -Arelax.adapters=true}.
+ */
+@SupportedAnnotationTypes("com.craftandresolve.relax.annotation.service.Service")
+@SupportedOptions(AdapterProcessor.OPTION)
+public class AdapterProcessor extends AbstractProcessor {
+
+    static final String OPTION = "relax.adapters";
+    static final String SUFFIX = "_RelaxAdapters";
+
+    private static final class Property {
+        final VariableElement field;
+        final String name;
+        final List<String> alternates;
+
+        Property(VariableElement field, String name, List<String> alternates) {
+            this.field = field;
+            this.name = name;
+            this.alternates = alternates;
+        }
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (!"true".equals(processingEnv.getOptions().get(OPTION))) {
+            return false;
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(Service.class)) {
+            if (element instanceof TypeElement && element.getModifiers().contains(Modifier.PUBLIC)) {
+                try {
+                    generate((TypeElement) element);
+                }
+                catch (IOException e) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write adapters: " + e, element);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void generate(TypeElement service) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(service).getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(service).toString();
+        String simpleName = binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1).replace('$', '_') + SUFFIX;
+
+        Map<String, TypeElement> entities = new LinkedHashMap<>();
+        Set<String> seen = new HashSet<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(service))) {
+            if (!method.getModifiers().contains(Modifier.PUBLIC) || null == Endpoints.verb(method)) {
+                continue;
+            }
+            collect(Endpoints.responseType(method.getReturnType()), packageName, entities, seen);
+            for (VariableElement parameter : method.getParameters()) {
+                if (null != parameter.getAnnotation(Body.class)) {
+                    collect(parameter.asType(), packageName, entities, seen);
+                }
+            }
+        }
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import com.google.gson.Gson;\n")
+                .append("import com.google.gson.JsonSyntaxException;\n")
+                .append("import com.google.gson.TypeAdapter;\n")
+                .append("import com.google.gson.TypeAdapterFactory;\n")
+                .append("import com.google.gson.reflect.TypeToken;\n")
+                .append("import com.google.gson.stream.JsonReader;\n")
+                .append("import com.google.gson.stream.JsonToken;\n")
+                .append("import com.google.gson.stream.JsonWriter;\n\n")
+                .append("import java.io.IOException;\n\n\n")
+                .append("// Generated by ").append(AdapterProcessor.class.getName()).append(" from ").append(service.getQualifiedName()).append("; do not edit.\n")
+                .append("public final class ").append(simpleName).append(" implements TypeAdapterFactory {\n\n")
+                .append("    @Override\n")
+                .append("    @SuppressWarnings(\"unchecked\")\n")
+                .append("    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {\n")
+                .append("        Class<? super T> raw = type.getRawType();\n");
+        int index = 0;
+        for (TypeElement entity : entities.values()) {
+            source.append("        if (").append(entity.getQualifiedName()).append(".class == raw) {\n")
+                    .append("            return (TypeAdapter<T>) new Adapter").append(index++).append("(gson);\n")
+                    .append("        }\n");
+        }
+        source.append("        return null;\n")
+                .append("    }\n\n")
+                .append("    @SuppressWarnings(\"unchecked\")\n")
+                .append("    private static <F> void writeRuntime(Gson gson, TypeAdapter<F> adapter, Class<?> declared, JsonWriter out, F value) throws IOException {\n")
+                .append("        if (null != value && declared != value.getClass()) {\n")
+                .append("            // as with Gson's reflective adapters, a subclass is written by the adapter of its runtime type\n")
+                .append("            ((TypeAdapter<Object>) gson.getAdapter(value.getClass())).write(out, value);\n")
+                .append("        } else {\n")
+                .append("            adapter.write(out, value);\n")
+                .append("        }\n")
+                .append("    }\n\n")
+                .append("    private static String readString(JsonReader in) throws IOException {\n")
+                .append("        JsonToken token = in.peek();\n")
+                .append("        if (JsonToken.NULL == token) {\n")
+                .append("            in.nextNull();\n")
+                .append("            return null;\n")
+                .append("        }\n")
+                .append("        // Gson reads booleans into String fields too\n")
+                .append("        return JsonToken.BOOLEAN == token ? Boolean.toString(in.nextBoolean()) : in.nextString();\n")
+                .append("    }\n");
+        index = 0;
+        for (TypeElement entity : entities.values()) {
+            adapter(source, "Adapter" + index++, entity, properties(entity));
+        }
+        source.append("}\n");
+
+        String generatedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(generatedName, service).openWriter()) {
+            writer.write(source.toString());
+        }
+    }
+
+    private void adapter(StringBuilder source, String name, TypeElement entity, List<Property> properties) {
+        String type = entity.getQualifiedName().toString();
+
+        source.append("\n    private static final class ").append(name).append(" extends TypeAdapter<").append(type).append("> {\n\n")
+                .append("        private final Gson gson;\n");
+        for (int i = 0; i < properties.size(); ++i) {
+            TypeMirror fieldType = properties.get(i).field.asType();
+            if (!isString(fieldType)) {
+                source.append("        private final TypeAdapter<").append(boxed(fieldType)).append("> adapter").append(i).append(";\n");
+            }
+        }
+        source.append("\n        ").append(name).append("(Gson gson) {\n")
+                .append("            this.gson = gson;\n");
+        for (int i = 0; i < properties.size(); ++i) {
+            TypeMirror fieldType = properties.get(i).field.asType();
+            if (isString(fieldType)) {
+                continue;
+            }
+            source.append("            adapter").append(i).append(" = gson.getAdapter(");
+            if (fieldType instanceof DeclaredType && !((DeclaredType) fieldType).getTypeArguments().isEmpty()) {
+                source.append("new TypeToken<").append(fieldType).append(">() {}");
+            } else {
+                source.append(erasure(fieldType)).append(".class");
+            }
+            source.append(");\n");
+        }
+        source.append("        }\n\n");
+
+        source.append("        @Override\n")
+                .append("        public void write(JsonWriter out, ").append(type).append(" value) throws IOException {\n")
+                .append("            if (null == value) {\n")
+                .append("                out.nullValue();\n")
+                .append("                return;\n")
+                .append("            }\n");
+        if (!entity.getModifiers().contains(Modifier.FINAL)) {
+            source.append("            if (").append(type).append(".class != value.getClass()) {\n")
+                    .append("                writeRuntime(gson, this, ").append(type).append(".class, out, value);\n")
+                    .append("                return;\n")
+                    .append("            }\n");
+        }
+        source.append("            out.beginObject();\n");
+        for (int i = 0; i < properties.size(); ++i) {
+            Property property = properties.get(i);
+            TypeMirror fieldType = property.field.asType();
+            String field = "value." + property.field.getSimpleName();
+            source.append("            out.name(").append(literal(property.name)).append(");\n");
+            if (isString(fieldType)) {
+                source.append("            out.value(").append(field).append(");\n");
+            } else if (isPolymorphic(fieldType)) {
+                source.append("            writeRuntime(gson, adapter").append(i).append(", ").append(fieldType).append(".class, out, ").append(field).append(");\n");
+            } else {
+                source.append("            adapter").append(i).append(".write(out, ").append(field).append(");\n");
+            }
+        }
+        source.append("            out.endObject();\n")
+                .append("        }\n\n");
+
+        source.append("        @Override\n")
+                .append("        public ").append(type).append(" read(JsonReader in) throws IOException {\n")
+                .append("            if (JsonToken.NULL == in.peek()) {\n")
+                .append("                in.nextNull();\n")
+                .append("                return null;\n")
+                .append("            }\n")
+                .append("            ").append(type).append(" value = new ").append(type).append("();\n")
+                .append("            try {\n")
+                .append("                in.beginObject();\n")
+                .append("                while (in.hasNext()) {\n")
+                .append("                    switch (in.nextName()) {\n");
+        for (int i = 0; i < properties.size(); ++i) {
+            Property property = properties.get(i);
+            TypeMirror fieldType = property.field.asType();
+            String field = "value." + property.field.getSimpleName();
+            source.append("                        case ").append(literal(property.name)).append(":\n");
+            for (String alternate : property.alternates) {
+                source.append("                        case ").append(literal(alternate)).append(":\n");
+            }
+            if (isString(fieldType)) {
+                source.append("                            ").append(field).append(" = readString(in);\n");
+            } else if (fieldType.getKind().isPrimitive()) {
+                // as with Gson, null leaves a primitive at its default
+                source.append("                            ").append(boxed(fieldType)).append(" value").append(i).append(" = adapter").append(i).append(".read(in);\n")
+                        .append("                            if (null != value").append(i).append(") {\n")
+                        .append("                                ").append(field).append(" = value").append(i).append(";\n")
+                        .append("                            }\n");
+            } else {
+                source.append("                            ").append(field).append(" = adapter").append(i).append(".read(in);\n");
+            }
+            source.append("                            break;\n");
+        }
+        source.append("                        default:\n")
+                .append("                            in.skipValue();\n")
+                .append("                    }\n")
+                .append("                }\n")
+                .append("                in.endObject();\n")
+                .append("            }\n")
+                .append("            catch (IllegalStateException e) {\n")
+                .append("                throw new JsonSyntaxException(e);\n")
+                .append("            }\n")
+                .append("            return value;\n")
+                .append("        }\n")
+                .append("    }\n");
+    }
+
+    private void collect(TypeMirror type, String packageName, Map<String, TypeElement> entities, Set<String> seen) {
+        if (type instanceof ArrayType) {
+            collect(((ArrayType) type).getComponentType(), packageName, entities, seen);
+            return;
+        }
+        if (type instanceof WildcardType) {
+            collect(((WildcardType) type).getExtendsBound(), packageName, entities, seen);
+            return;
+        }
+        if (!(type instanceof DeclaredType)) {
+            return;
+        }
+        for (TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+            collect(argument, packageName, entities, seen);
+        }
+        TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        String name = element.getQualifiedName().toString();
+        if (!seen.add(name) || isLibrary(name) || ElementKind.CLASS != element.getKind()) {
+            return;
+        }
+        List<Property> properties = properties(element);
+        if (null != properties && isGeneratable(element, packageName, properties)) {
+            entities.put(name, element);
+        }
+        // the fields of an entity left to Gson may still be entities of their own
+        for (TypeElement t = element; null != t && !isLibrary(t.getQualifiedName().toString()); t = superclass(t)) {
+            for (VariableElement field : ElementFilter.fieldsIn(t.getEnclosedElements())) {
+                if (!field.getModifiers().contains(Modifier.STATIC)) {
+                    collect(field.asType(), packageName, entities, seen);
+                }
+            }
+        }
+    }
+
+    // the fields Gson binds, subclass first as Gson orders them; null when Gson would refuse the class
+    private List<Property> properties(TypeElement entity) {
+        List<Property> properties = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (TypeElement t = entity; null != t && !isLibrary(t.getQualifiedName().toString()); t = superclass(t)) {
+            for (VariableElement field : ElementFilter.fieldsIn(t.getEnclosedElements())) {
+                if (field.getModifiers().contains(Modifier.STATIC) || field.getModifiers().contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+                String name = field.getSimpleName().toString();
+                List<String> alternates = new ArrayList<>();
+                AnnotationMirror serializedName = annotation(field, "com.google.gson.annotations.SerializedName");
+                if (null != serializedName) {
+                    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : serializedName.getElementValues().entrySet()) {
+                        if (entry.getKey().getSimpleName().contentEquals("value")) {
+                            name = (String) entry.getValue().getValue();
+                        } else if (entry.getKey().getSimpleName().contentEquals("alternate")) {
+                            for (Object alternate : (List<?>) entry.getValue().getValue()) {
+                                alternates.add((String) ((AnnotationValue) alternate).getValue());
+                            }
+                        }
+                    }
+                }
+                if (!names.add(name)) {
+                    return null;
+                }
+                for (String alternate : alternates) {
+                    if (!names.add(alternate)) {
+                        return null;
+                    }
+                }
+                properties.add(new Property(field, name, alternates));
+            }
+        }
+        return properties;
+    }
+
+    private boolean isGeneratable(TypeElement entity, String packageName, List<Property> properties) {
+        if (entity.getModifiers().contains(Modifier.ABSTRACT)
+                || !entity.getTypeParameters().isEmpty()
+                || NestingKind.MEMBER == entity.getNestingKind() && !entity.getModifiers().contains(Modifier.STATIC)
+                || !isAccessible(entity, packageName)
+                || null != annotation(entity, "com.google.gson.annotations.JsonAdapter")) {
+            return false;
+        }
+        // Gson has adapters of its own for collections and maps, and binds the fields of library superclasses
+        if (isSubtype(entity, "java.util.Collection") || isSubtype(entity, "java.util.Map")) {
+            return false;
+        }
+        for (TypeElement t = superclass(entity); null != t; t = superclass(t)) {
+            if (isLibrary(t.getQualifiedName().toString()) && !t.getQualifiedName().contentEquals("java.lang.Object")) {
+                return false;
+            }
+        }
+
+        boolean constructible = false;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(entity.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && isAccessible(constructor, entity, packageName)) {
+                constructible = true;
+            }
+        }
+        if (!constructible) {
+            return false;
+        }
+
+        for (Property property : properties) {
+            VariableElement field = property.field;
+            if (field.getModifiers().contains(Modifier.FINAL)
+                    || !isAccessible(field, (TypeElement) field.getEnclosingElement(), packageName)
+                    || null != annotation(field, "com.google.gson.annotations.JsonAdapter")
+                    || !isNameable(field.asType(), packageName)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isAccessible(TypeElement type, String packageName) {
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            NestingKind nesting = ((TypeElement) e).getNestingKind();
+            if (NestingKind.LOCAL == nesting || NestingKind.ANONYMOUS == nesting || e.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            if (!e.getModifiers().contains(Modifier.PUBLIC) && !isInPackage(e, packageName)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isAccessible(Element member, TypeElement owner, String packageName) {
+        if (member.getModifiers().contains(Modifier.PRIVATE)) {
+            return false;
+        }
+        // protected members of a superclass elsewhere are out of reach of the generated factory
+        return member.getModifiers().contains(Modifier.PUBLIC) && isAccessible(owner, packageName) || isInPackage(owner, packageName);
+    }
+
+    private boolean isNameable(TypeMirror type, String packageName) {
+        if (type.getKind().isPrimitive()) {
+            return true;
+        }
+        if (type instanceof ArrayType) {
+            return isNameable(((ArrayType) type).getComponentType(), packageName);
+        }
+        if (type instanceof WildcardType) {
+            TypeMirror extendsBound = ((WildcardType) type).getExtendsBound();
+            TypeMirror superBound = ((WildcardType) type).getSuperBound();
+            return (null == extendsBound || isNameable(extendsBound, packageName)) && (null == superBound || isNameable(superBound, packageName));
+        }
+        if (!(type instanceof DeclaredType) || !isAccessible((TypeElement) ((DeclaredType) type).asElement(), packageName)) {
+            return false;
+        }
+        for (TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+            if (!isNameable(argument, packageName)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isPolymorphic(TypeMirror type) {
+        // Gson picks the adapter of the runtime type for fields declared as a plain, non-final class
+        if (!(type instanceof DeclaredType) || !((DeclaredType) type).getTypeArguments().isEmpty()) {
+            return false;
+        }
+        Element element = ((DeclaredType) type).asElement();
+        return ElementKind.ENUM != element.getKind() && !element.getModifiers().contains(Modifier.FINAL);
+    }
+
+    private boolean isSubtype(TypeElement type, String supertype) {
+        return processingEnv.getTypeUtils().isAssignable(erasure(type.asType()), erasure(processingEnv.getElementUtils().getTypeElement(supertype).asType()));
+    }
+
+    private boolean isString(TypeMirror type) {
+        return Endpoints.isNamed(type, "java.lang.String");
+    }
+
+    private boolean isInPackage(Element element, String packageName) {
+        return processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().contentEquals(packageName);
+    }
+
+    private static boolean isLibrary(String name) {
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("com.google.gson.");
+    }
+
+    private TypeElement superclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        return TypeKind.DECLARED == superclass.getKind() ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+    }
+
+    private static AnnotationMirror annotation(Element element, String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(name)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private String boxed(TypeMirror type) {
+        return type.getKind().isPrimitive()
+                ? processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString()
+                : type.toString();
+    }
+
+    private TypeMirror erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type);
+    }
+
+    private static String literal(String s) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if ('"' == c || '\\' == c) {
+                literal.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                literal.append(String.format("\\u%04x", (int) c));
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.append('"').toString();
+    }
+}
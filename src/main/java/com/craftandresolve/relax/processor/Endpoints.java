@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax.processor;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+
+
+final class Endpoints {
+
+    static final String[] VERBS = {"GET", "POST", "PUT", "HEAD", "OPTIONS", "DELETE"};
+
+    private Endpoints() {
+    }
+
+    // the verb of the last verb annotation on the method, as through reflection, or null
+    static String verb(ExecutableElement method) {
+        String found = null;
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            String name = ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+            for (String verb : VERBS) {
+                if (name.equals("com.craftandresolve.relax.annotation.endpoint." + verb)) {
+                    found = verb;
+                }
+            }
+        }
+        return found;
+    }
+
+    static TypeMirror responseType(TypeMirror returnType) {
+        if (!(returnType instanceof DeclaredType) || ((DeclaredType) returnType).getTypeArguments().isEmpty()) {
+            // Completable carries no value
+            return null;
+        }
+        TypeMirror responseType = ((DeclaredType) returnType).getTypeArguments().get(0);
+        if (isNamed(responseType, "com.craftandresolve.relax.type.Response")
+                && !((DeclaredType) responseType).getTypeArguments().isEmpty()) {
+            // what gets serialized is the body a Response carries
+            responseType = ((DeclaredType) responseType).getTypeArguments().get(0);
+        }
+        return responseType;
+    }
+
+    static boolean isNamed(TypeMirror type, String name) {
+        return type instanceof DeclaredType && ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals(name);
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax.processor;
+
+import com.craftandresolve.relax.annotation.endpoint.DELETE;
+import com.craftandresolve.relax.annotation.endpoint.GET;
+import com.craftandresolve.relax.annotation.endpoint.HEAD;
+import com.craftandresolve.relax.annotation.endpoint.OPTIONS;
+import com.craftandresolve.relax.annotation.endpoint.POST;
+import com.craftandresolve.relax.annotation.endpoint.PUT;
+import com.craftandresolve.relax.annotation.entity.Format;
+import com.craftandresolve.relax.annotation.parameter.Body;
+import com.craftandresolve.relax.annotation.parameter.Header;
+import com.craftandresolve.relax.annotation.parameter.Path;
+import com.craftandresolve.relax.annotation.parameter.Query;
+import com.craftandresolve.relax.annotation.service.Service;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Generates a {@link com.craftandresolve.relax.RouteTable} for every public @Service class, so
+ * the servlet finds its endpoints without scanning every method and calls them without
+ * reflection. The table mirrors what RelaxServlet reads reflectively: public methods carrying a
+ * verb annotation (the last one wins), the binding of each parameter, and the directory
+ * entities of the @Body parameter and the result. Endpoint modifiers and the return kind are
+ * still read from the Method at initialization. It runs only when compiled with -Arelax.routes=true.
+ */
+@SupportedAnnotationTypes("com.craftandresolve.relax.annotation.service.Service")
+@SupportedOptions(RouteProcessor.OPTION)
+public class RouteProcessor extends AbstractProcessor {
+
+    static final String OPTION = "relax.routes";
+    static final String SUFFIX = "_RelaxRoutes";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (!"true".equals(processingEnv.getOptions().get(OPTION))) {
+            return false;
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(Service.class)) {
+            if (!(element instanceof TypeElement)) {
+                continue;
+            }
+            TypeElement service = (TypeElement) element;
+            if (!service.getModifiers().contains(Modifier.PUBLIC)) {
+                // the servlet could not instantiate it either
+                warning(service, "@Service class is not public; no route table generated");
+                continue;
+            }
+            try {
+                generate(service);
+            }
+            catch (IllegalArgumentException e) {
+                warning(service, e.getMessage() + "; no route table generated, endpoints will be read through reflection");
+            }
+            catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write route table: " + e, service);
+            }
+        }
+        return false;
+    }
+
+    private void generate(TypeElement service) throws IOException {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(service);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(service).toString();
+        String simpleName = binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1).replace('$', '_') + SUFFIX;
+        String serviceType = service.getQualifiedName().toString();
+
+        List<String> routes = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(service))) {
+            if (!method.getModifiers().contains(Modifier.PUBLIC)) {
+                continue;
+            }
+            String[] verb = verb(method);
+            if (null != verb) {
+                routes.add(route(serviceType, method, verb));
+            }
+        }
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import com.craftandresolve.relax.RouteTable;\n\n")
+                .append("import java.util.Arrays;\n")
+                .append("import java.util.List;\n\n\n")
+                .append("// Generated by ").append(RouteProcessor.class.getName()).append(" from ").append(serviceType).append("; do not edit.\n")
+                .append("public final class ").append(simpleName).append(" implements RouteTable {\n\n")
+                .append("    @Override\n")
+                .append("    // arguments are cast to the erased parameter types, as Method.invoke would\n")
+                .append("    @SuppressWarnings({\"unchecked\", \"rawtypes\"})\n")
+                .append("    public List<Route> routes() {\n")
+                .append("        return Arrays.<Route>asList(");
+        for (int i = 0; i < routes.size(); ++i) {
+            source.append(0 == i ? "\n" : ",\n").append(routes.get(i));
+        }
+        source.append(");\n    }\n}\n");
+
+        String generatedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(generatedName, service).openWriter()) {
+            writer.write(source.toString());
+        }
+    }
+
+    private String[] verb(ExecutableElement method) {
+        String verb = Endpoints.verb(method);
+        return null != verb ? verbAnnotation(method, verb) : null;
+    }
+
+    private String[] verbAnnotation(ExecutableElement method, String verb) {
+        switch (verb) {
+            case "GET":
+                return new String[] {verb, method.getAnnotation(GET.class).path(), method.getAnnotation(GET.class).description()};
+            case "POST":
+                return new String[] {verb, method.getAnnotation(POST.class).path(), method.getAnnotation(POST.class).description()};
+            case "PUT":
+                return new String[] {verb, method.getAnnotation(PUT.class).path(), method.getAnnotation(PUT.class).description()};
+            case "HEAD":
+                return new String[] {verb, method.getAnnotation(HEAD.class).path(), method.getAnnotation(HEAD.class).description()};
+            case "OPTIONS":
+                return new String[] {verb, method.getAnnotation(OPTIONS.class).path(), method.getAnnotation(OPTIONS.class).description()};
+            default:
+                return new String[] {verb, method.getAnnotation(DELETE.class).path(), method.getAnnotation(DELETE.class).description()};
+        }
+    }
+
+    private String route(String serviceType, ExecutableElement method, String[] verb) {
+        List<? extends VariableElement> parameters = method.getParameters();
+        StringBuilder types = new StringBuilder();
+        StringBuilder arguments = new StringBuilder();
+        StringBuilder call = new StringBuilder();
+        String request = "null";
+
+        for (int i = 0; i < parameters.size(); ++i) {
+            VariableElement parameter = parameters.get(i);
+            String type = sourceName(erasure(parameter.asType()), method);
+            String separator = 0 == i ? "" : ", ";
+            types.append(separator).append(type).append(".class");
+            call.append(separator).append('(').append(type).append(") arguments[").append(i).append(']');
+            arguments.append(separator).append(argument(parameter, type));
+            if (null != parameter.getAnnotation(Body.class) && !type.startsWith("javax.servlet.")) {
+                request = literal(entityJson(parameter.asType()));
+            }
+        }
+
+        String target = method.getModifiers().contains(Modifier.STATIC) ? serviceType : "((" + serviceType + ") service)";
+        String invocation = target + "." + method.getSimpleName() + "(" + call + ")";
+        String invoker = TypeKind.VOID == method.getReturnType().getKind()
+                ? "(service, arguments) -> {\n                        " + invocation + ";\n                        return null;\n                    }"
+                : "(service, arguments) -> " + invocation;
+
+        return "            new Route(" + literal(verb[0]) + ", " + literal(verb[1]) + ", " + literal(verb[2]) + ",\n"
+                + "                    " + literal(method.getSimpleName().toString()) + ",\n"
+                + "                    new Class<?>[] {" + types + "},\n"
+                + "                    new Argument[] {" + arguments + "},\n"
+                + "                    " + invoker + ",\n"
+                + "                    " + request + ",\n"
+                + "                    " + literal(entityJson(Endpoints.responseType(method.getReturnType()))) + ")";
+    }
+
+    private String argument(VariableElement parameter, String type) {
+        if ("javax.servlet.http.HttpServletRequest".equals(type)) {
+            return "new Argument(Argument.Kind.REQUEST, null, null)";
+        }
+        if ("javax.servlet.http.HttpServletResponse".equals(type)) {
+            return "new Argument(Argument.Kind.RESPONSE, null, null)";
+        }
+        if (null != parameter.getAnnotation(Body.class)) {
+            return "new Argument(Argument.Kind.BODY, null, null)";
+        }
+        Header header = parameter.getAnnotation(Header.class);
+        if (null != header) {
+            return "new Argument(Argument.Kind.HEADER, " + literal(header.key()) + ", " + literal(header.format()) + ")";
+        }
+        Path path = parameter.getAnnotation(Path.class);
+        if (null != path) {
+            return "new Argument(Argument.Kind.PATH, " + literal(path.key()) + ", " + literal(path.format()) + ")";
+        }
+        Query query = parameter.getAnnotation(Query.class);
+        if (null != query) {
+            return "new Argument(Argument.Kind.QUERY, " + literal(query.key()) + ", " + literal(query.format()) + ")";
+        }
+        // unbindable; the servlet refuses the endpoint at initialization, as it does through reflection
+        return "null";
+    }
+
+    private String sourceName(TypeMirror type, Element context) {
+        if (type.getKind().isPrimitive()) {
+            return type.toString();
+        }
+        if (type instanceof ArrayType) {
+            return sourceName(((ArrayType) type).getComponentType(), context) + "[]";
+        }
+        Element element = processingEnv.getTypeUtils().asElement(type);
+        for (Element e = element; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                throw new IllegalArgumentException("Method " + context.getSimpleName() + " uses private type " + type);
+            }
+        }
+        return ((TypeElement) element).getQualifiedName().toString();
+    }
+
+    private String entityJson(TypeMirror type) {
+        if (type instanceof DeclaredType) {
+            List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+            TypeMirror contained = arguments.isEmpty() ? null : plainClass(arguments.get(arguments.size() - 1));
+            StringBuilder json = new StringBuilder();
+            return entity(erasure(type), null, contained, new HashSet<>(), json) ? json.toString() : "null";
+        }
+        if (type instanceof ArrayType) {
+            StringBuilder json = new StringBuilder();
+            return entity(type, null, null, new HashSet<>(), json) ? json.toString() : "null";
+        }
+        return "null";
+    }
+
+    private boolean entity(TypeMirror type, String format, TypeMirror contained, Set<String> path, StringBuilder json) {
+        String name = canonicalName(type);
+        if ("java.lang.Void".equals(name)) {
+            return false;
+        }
+        json.append('{');
+        boolean first = true;
+        if (type.getKind().isPrimitive() || name.startsWith("java.lang.")) {
+            json.append("\"type\":").append(quote(name));
+            first = false;
+        }
+        else if ("java.util.List".equals(name) || "java.util.Map".equals(name)) {
+            json.append("\"type\":").append(quote(name));
+            first = false;
+            if (null != contained) {
+                StringBuilder ofType = new StringBuilder();
+                if (entity(contained, null, null, path, ofType)) {
+                    json.append(",\"ofType\":").append(ofType);
+                }
+            }
+        }
+        else if (type instanceof DeclaredType) {
+            if (!path.add(name)) {
+                // a recursive entity is described once, at its outermost occurrence
+                json.append("\"type\":").append(quote(name));
+                first = false;
+            }
+            else {
+                List<VariableElement> fields = ElementFilter.fieldsIn(((DeclaredType) type).asElement().getEnclosedElements());
+                if (!fields.isEmpty()) {
+                    json.append("\"properties\":{");
+                    for (int i = 0; i < fields.size(); ++i) {
+                        VariableElement field = fields.get(i);
+                        Format fieldFormat = field.getAnnotation(Format.class);
+                        TypeMirror fieldType = field.asType();
+                        TypeMirror ofType = null;
+                        if (fieldType instanceof DeclaredType) {
+                            List<? extends TypeMirror> fieldArguments = ((DeclaredType) fieldType).getTypeArguments();
+                            if (Endpoints.isNamed(fieldType, "java.util.Map") && 2 == fieldArguments.size()) {
+                                ofType = plainClass(fieldArguments.get(1));
+                            } else if (Endpoints.isNamed(fieldType, "java.util.List") && 1 == fieldArguments.size()) {
+                                ofType = plainClass(fieldArguments.get(0));
+                            }
+                        }
+                        StringBuilder property = new StringBuilder();
+                        json.append(0 == i ? "" : ",").append(quote(field.getSimpleName().toString())).append(':');
+                        json.append(entity(erasure(fieldType), null != fieldFormat ? fieldFormat.value() : null, ofType, path, property) ? property : "null");
+                    }
+                    json.append('}');
+                    first = false;
+                }
+                path.remove(name);
+            }
+        }
+        if (null != format) {
+            json.append(first ? "" : ",").append("\"format\":").append(quote(format));
+        }
+        json.append('}');
+        return true;
+    }
+
+    private TypeMirror plainClass(TypeMirror type) {
+        // only a plain class names the contained type, as with Class-valued type arguments through reflection
+        return type instanceof DeclaredType && ((DeclaredType) type).getTypeArguments().isEmpty() ? type : null;
+    }
+
+    private String canonicalName(TypeMirror type) {
+        if (type instanceof ArrayType) {
+            return canonicalName(((ArrayType) type).getComponentType()) + "[]";
+        }
+        if (type instanceof DeclaredType) {
+            return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+        }
+        return type.toString();
+    }
+
+    private TypeMirror erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type);
+    }
+
+    private void warning(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, element);
+    }
+
+    private static String quote(String s) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if ('"' == c || '\\' == c) {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static String literal(String s) {
+        if (null == s) {
+            return "null";
+        }
+        StringBuilder literal = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if ('"' == c || '\\' == c) {
+                literal.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                literal.append(String.format("\\u%04x", (int) c));
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.append('"').toString();
+    }
+}
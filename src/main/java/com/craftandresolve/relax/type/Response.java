@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax.type;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * An endpoint result with its own status and headers, for success responses other than a plain 200,
+ * such as 201 with the created entity, without going through an exception.
+ */
+public final class Response<T> {
+
+    private final int status;
+    private final T body;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+
+    public Response(int status, T body) {
+        this.status = status;
+        this.body = body;
+    }
+
+    public static <T> Response<T> ok(T body) {
+        return new Response<>(200, body);
+    }
+
+    public static <T> Response<T> created(String location, T body) {
+        Response<T> response = new Response<>(201, body);
+        return null != location ? response.header("Location", location) : response;
+    }
+
+    public static <T> Response<T> accepted(T body) {
+        return new Response<>(202, body);
+    }
+
+    public static <T> Response<T> noContent() {
+        return new Response<>(204, null);
+    }
+
+    public Response<T> header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public T getBody() {
+        return body;
+    }
+
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+}
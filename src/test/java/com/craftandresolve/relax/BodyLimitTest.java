@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.POST;
+import com.craftandresolve.relax.annotation.parameter.Body;
+import com.craftandresolve.relax.annotation.service.Service;
+import io.reactivex.Single;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+
+@RunWith(Parameterized.class)
+public class BodyLimitTest {
+
+    public static class Note {
+        public String text;
+    }
+
+    @Service(root = "/test", version = "v1")
+    public static class NoteService {
+
+        @POST(path = "/note", description = "Echo a note")
+        public Single<Note> post(@Body Note note) {
+            return Single.just(note);
+        }
+    }
+
+    @Parameterized.Parameters(name = "nonblocking={0}")
+    public static Collection<Object[]> modes() {
+        return Arrays.asList(new Object[][] {{"false"}, {"true"}});
+    }
+
+    @Parameterized.Parameter
+    public String nonBlocking;
+
+    private RelaxServlet servlet;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("services", NoteService.class.getName());
+        parameters.put("nonblocking", nonBlocking);
+        parameters.put("maxbody", "32");
+        servlet = new RelaxServlet();
+        servlet.init(Stubs.config(parameters));
+    }
+
+    @After
+    public void tearDown() {
+        servlet.destroy();
+    }
+
+    @Test
+    public void bodyWithinTheLimitIsRead() throws Exception {
+        Stubs.Response response = call("{\"text\":\"short\"}", false);
+        assertEquals(200, response.status);
+        assertEquals("{\"text\":\"short\"}", response.body.toString("UTF-8"));
+    }
+
+    @Test
+    public void declaredLengthOverTheLimitIsRefused() throws Exception {
+        assertEquals(413, call("{\"text\":\"far too long to be accepted here\"}", false).status);
+    }
+
+    @Test
+    public void chunkedBodyOverTheLimitIsRefused() throws Exception {
+        assertEquals(413, call("{\"text\":\"far too long to be accepted here\"}", true).status);
+    }
+
+    private Stubs.Response call(String body, boolean chunked) throws Exception {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        if (chunked) {
+            headers.put("Transfer-Encoding", "chunked");
+        }
+        return RelaxServletTest.call(servlet, "POST", "/test/v1/note", headers, body);
+    }
+}
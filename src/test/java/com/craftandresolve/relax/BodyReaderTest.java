@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.exception.InternalErrorException;
+import com.craftandresolve.relax.exception.PayloadTooLargeException;
+import io.reactivex.observers.TestObserver;
+import org.junit.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Queue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+
+public class BodyReaderTest {
+
+    // hands out one piece per onDataAvailable, as a container does while an upload trickles in
+    private static final class TricklingInput extends ServletInputStream {
+        private final Queue<byte[]> pieces = new ArrayDeque<>();
+        private ByteArrayInputStream current = new ByteArrayInputStream(new byte[0]);
+        ReadListener listener;
+
+        @Override
+        public int read() {
+            return current.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return current.read(b, off, len);
+        }
+
+        @Override
+        public boolean isReady() {
+            return 0 < current.available();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return pieces.isEmpty() && 0 == current.available();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            listener = readListener;
+        }
+
+        void arrive(String piece) throws IOException {
+            current = new ByteArrayInputStream(piece.getBytes(StandardCharsets.UTF_8));
+            listener.onDataAvailable();
+        }
+    }
+
+    @Test
+    public void bodyArrivingInPiecesIsReadWhole() throws Exception {
+        TricklingInput input = new TricklingInput();
+        TestObserver<byte[]> body = BodyReader.read(exchange(input, 6), 0).test();
+        input.arrive("{\"a\"");
+        input.arrive(":");
+        body.assertNoValues();
+        input.arrive("1}");
+        input.listener.onAllDataRead();
+        body.assertComplete();
+        assertEquals("{\"a\":1}", new String(body.values().get(0), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void bodyGrowingPastTheLimitFails() throws Exception {
+        TricklingInput input = new TricklingInput();
+        // the client claimed less than it sends
+        TestObserver<byte[]> body = BodyReader.read(exchange(input, 2), 4).test();
+        input.arrive("abc");
+        body.assertNotTerminated();
+        input.arrive("de");
+        body.assertError(PayloadTooLargeException.class);
+        input.listener.onAllDataRead();
+        body.assertValueCount(0);
+    }
+
+    @Test
+    public void readErrorsAreInternalErrors() throws Exception {
+        TricklingInput input = new TricklingInput();
+        TestObserver<byte[]> body = BodyReader.read(exchange(input, -1), 0).test();
+        input.listener.onError(new IOException("Connection reset"));
+        body.assertError(InternalErrorException.class);
+    }
+
+    @Test
+    public void blockingReadEnforcesTheLimitWhateverTheContentLength() throws Exception {
+        byte[] data = "0123456789".getBytes(StandardCharsets.UTF_8);
+        try {
+            BodyReader.readFully(new ByteArrayInputStream(data), 2, 5);
+            fail("a body larger than the limit was read");
+        }
+        catch (BodyReader.TooLargeException e) {
+            // IGNORED
+        }
+        // a huge claim does not decide the buffer size
+        assertArrayEquals(data, BodyReader.readFully(new ByteArrayInputStream(data), Long.MAX_VALUE, 0));
+        assertArrayEquals(data, BodyReader.readFully(new ByteArrayInputStream(data), -1, 10));
+    }
+
+    private static Exchange exchange(ServletInputStream input, long contentLength) {
+        HttpServletRequest request = new HttpServletRequestWrapper((HttpServletRequest) Stubs.exchange("POST", "/",
+                Collections.<String, String>emptyMap(), Collections.<String, String>emptyMap(), null).getRequest()) {
+            @Override
+            public ServletInputStream getInputStream() {
+                return input;
+            }
+
+            @Override
+            public long getContentLengthLong() {
+                return contentLength;
+            }
+        };
+        AsyncContext context = (AsyncContext) Proxy.newProxyInstance(BodyReaderTest.class.getClassLoader(), new Class<?>[] {AsyncContext.class},
+                (proxy, method, arguments) -> {
+                    if ("getRequest".equals(method.getName())) {
+                        return request;
+                    }
+                    if ("getResponse".equals(method.getName())) {
+                        return new Stubs.Response();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        return new Exchange(context, null);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.Deadline;
+import com.craftandresolve.relax.annotation.endpoint.GET;
+import com.craftandresolve.relax.annotation.service.Bulkhead;
+import com.craftandresolve.relax.annotation.service.Service;
+import io.reactivex.Single;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class BulkheadTest {
+
+    public static class Message {
+        public String text = "done";
+    }
+
+    public static class First {
+        @Service(root = "/first", version = "v1")
+        @Bulkhead(threads = 1, queue = 0)
+        public static class Twin {
+            @GET(path = "/ping", description = "Answers at once")
+            public Single<Message> ping() {
+                return Single.just(new Message());
+            }
+        }
+    }
+
+    public static class Second {
+        @Service(root = "/second", version = "v1")
+        @Bulkhead(threads = 1, queue = 0)
+        public static class Twin {
+            @GET(path = "/ping", description = "Answers at once")
+            public Single<Message> ping() {
+                return Single.just(new Message());
+            }
+        }
+    }
+
+    @Service(root = "/test", version = "v1")
+    @Bulkhead(threads = 1, queue = 0)
+    public static class HeldService {
+
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+
+        @GET(path = "/blocking", description = "Blocks its thread past the deadline")
+        @Deadline(50)
+        public Single<Message> blocking() throws InterruptedException {
+            entered.countDown();
+            gate.await();
+            return Single.just(new Message());
+        }
+
+        @GET(path = "/never", description = "Never answers, without holding a thread")
+        @Deadline(50)
+        public Single<Message> never() {
+            return Single.never();
+        }
+
+        @GET(path = "/quick", description = "Answers at once")
+        public Single<Message> quick() {
+            return Single.just(new Message());
+        }
+    }
+
+    @Test
+    public void servicesWithTheSameSimpleNameKeepTheirOwnPoolsAndLimits() throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("services", First.Twin.class.getName() + "," + Second.Twin.class.getName());
+        parameters.put("concurrencylimit", "aimd");
+        RelaxServlet servlet = new RelaxServlet();
+        servlet.init(Stubs.config(parameters));
+        try {
+            assertEquals(2, servlet.getQueueDepths().size());
+            assertTrue(servlet.getQueueDepths().containsKey(First.Twin.class.getName()));
+            assertTrue(servlet.getQueueDepths().containsKey(Second.Twin.class.getName()));
+            assertTrue(servlet.getConcurrencyLimits().containsKey(First.Twin.class.getName()));
+            assertTrue(servlet.getConcurrencyLimits().containsKey(Second.Twin.class.getName()));
+        }
+        finally {
+            servlet.destroy();
+        }
+    }
+
+    @Test
+    public void expiredRequestKeepsItsPermitWhileTheWorkRuns() throws Exception {
+        HeldService service = new HeldService();
+        RelaxServlet servlet = servlet(service);
+        try {
+            assertEquals(504, get(servlet, "/test/v1/blocking").status);
+            assertTrue(service.entered.await(5, TimeUnit.SECONDS));
+            // the only thread is still inside the endpoint, so there is no capacity for another request
+            assertEquals(503, get(servlet, "/test/v1/quick").status);
+
+            service.gate.countDown();
+            long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            int status;
+            do {
+                Thread.sleep(5);
+                status = get(servlet, "/test/v1/quick").status;
+            } while (200 != status && System.nanoTime() < until);
+            assertEquals(200, status);
+        }
+        finally {
+            servlet.destroy();
+        }
+    }
+
+    @Test
+    public void expiredRequestReleasesItsPermitOnceTheResultIsDisposed() throws Exception {
+        RelaxServlet servlet = servlet(new HeldService());
+        try {
+            assertEquals(504, get(servlet, "/test/v1/never").status);
+            assertEquals(200, get(servlet, "/test/v1/quick").status);
+            assertEquals(504, get(servlet, "/test/v1/never").status);
+            assertEquals(200, get(servlet, "/test/v1/quick").status);
+        }
+        finally {
+            servlet.destroy();
+        }
+    }
+
+    private static RelaxServlet servlet(HeldService service) throws Exception {
+        RelaxServlet servlet = new RelaxServlet() {
+            @Override
+            protected Object createService(Class<?> serviceClass) {
+                return service;
+            }
+        };
+        servlet.initialize(null, Collections.<Class<?>>singletonList(HeldService.class), null, null, false);
+        return servlet;
+    }
+
+    private static Stubs.Response get(RelaxServlet servlet, String path) throws Exception {
+        return RelaxServletTest.call(servlet, "GET", path, Collections.<String, String>emptyMap(), null);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.codec.CborCodec;
+import com.google.gson.Gson;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class CodecNegotiationTest {
+
+    private final CborCodec cbor = new CborCodec(new Gson());
+    private RelaxServlet servlet;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("services", RelaxServletTest.PersonService.class.getName());
+        parameters.put("codecs", "cbor");
+        servlet = new RelaxServlet();
+        servlet.init(Stubs.config(parameters));
+    }
+
+    @After
+    public void tearDown() {
+        servlet.destroy();
+    }
+
+    @Test
+    public void cborBodyIsAnsweredInCbor() throws Exception {
+        Stubs.Response response = post(CborCodec.MEDIA_TYPE, CborCodec.MEDIA_TYPE);
+        assertEquals(200, response.status);
+        assertEquals(CborCodec.MEDIA_TYPE, response.headers.get("Content-Type"));
+        RelaxServletTest.Person person = (RelaxServletTest.Person) cbor.decode(
+                new ByteArrayInputStream(response.body.toByteArray()), RelaxServletTest.Person.class);
+        assertEquals("Ada", person.name);
+    }
+
+    @Test
+    public void cborBodyIsAnsweredInJsonByDefault() throws Exception {
+        Stubs.Response response = post(CborCodec.MEDIA_TYPE, null);
+        assertEquals(200, response.status);
+        assertTrue(response.headers.get("Content-Type").startsWith("application/json"));
+        assertEquals("{\"name\":\"Ada\"}", response.body.toString("UTF-8"));
+    }
+
+    @Test
+    public void higherQualityWins() throws Exception {
+        assertAnswers("application/json", "application/cbor;q=0.1, application/json");
+        assertAnswers(CborCodec.MEDIA_TYPE, "application/json;q=0.5, application/cbor");
+        assertAnswers(CborCodec.MEDIA_TYPE, "*/*;q=0.2, application/cbor;q=0.9");
+    }
+
+    @Test
+    public void earliestListedWinsATie() throws Exception {
+        assertAnswers(CborCodec.MEDIA_TYPE, "application/cbor, application/json");
+        assertAnswers("application/json", "application/json, application/cbor");
+    }
+
+    @Test
+    public void zeroQualityIsNotAcceptable() throws Exception {
+        assertAnswers("application/json", "application/cbor;q=0");
+        assertAnswers("application/json", "application/cbor;q=0, */*");
+        assertAnswers(CborCodec.MEDIA_TYPE, "application/json;q=0, */*");
+        assertAnswers(CborCodec.MEDIA_TYPE, "application/json;q=0, application/*;q=0.3");
+    }
+
+    private void assertAnswers(String mediaType, String accept) throws Exception {
+        Stubs.Response response = post(CborCodec.MEDIA_TYPE, accept);
+        assertEquals(200, response.status);
+        assertTrue(accept + " answered " + response.headers.get("Content-Type"), response.headers.get("Content-Type").startsWith(mediaType));
+    }
+
+    private Stubs.Response post(String contentType, String accept) throws Exception {
+        RelaxServletTest.Person person = new RelaxServletTest.Person();
+        person.name = "Ada";
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", contentType);
+        if (null != accept) {
+            headers.put("Accept", accept);
+        }
+        Stubs.Context context = Stubs.exchange("POST", "/test/v1/person", headers, Collections.<String, String>emptyMap(),
+                cbor.encode(person, RelaxServletTest.Person.class));
+        servlet.service(context.getRequest(), context.getResponse());
+        assertTrue(context.await(5, TimeUnit.SECONDS));
+        return (Stubs.Response) context.getResponse();
+    }
+}
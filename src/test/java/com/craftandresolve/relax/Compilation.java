@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import javax.annotation.processing.Processor;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Compiles test sources in memory with a chosen set of annotation processors, for comparing what
+ * the processors generate with what the servlet reads through reflection.
+ */
+final class Compilation {
+
+    private Compilation() {
+    }
+
+    /**
+     * Compiles one source file into a fresh directory and returns a class loader for the result.
+     * Any error or warning fails the compilation, generated sources included.
+     */
+    static ClassLoader compile(String className, String source, List<? extends Processor> processors, String... options) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        File output = Files.createTempDirectory("relax-compilation").toFile();
+        output.deleteOnExit();
+
+        List<String> arguments = new ArrayList<>(Arrays.asList(
+                "-d", output.getPath(),
+                "-classpath", System.getProperty("java.class.path"),
+                "-Xlint:all", "-Xlint:-options", "-Xlint:-processing"));
+        if (processors.isEmpty()) {
+            arguments.add("-proc:none");
+        }
+        arguments.addAll(Arrays.asList(options));
+
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics, arguments, null, Collections.singletonList(file));
+        task.setProcessors(processors);
+        boolean compiled = task.call();
+
+        StringBuilder messages = new StringBuilder();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (Diagnostic.Kind.NOTE != diagnostic.getKind()) {
+                messages.append(diagnostic).append('\n');
+            }
+        }
+        if (!compiled || 0 < messages.length()) {
+            throw new AssertionError("compilation of " + className + " was not clean:\n" + messages);
+        }
+        return new URLClassLoader(new URL[] {output.toURI().toURL()}, Compilation.class.getClassLoader());
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class CompressionTest {
+
+    @Test
+    public void noHeaderMeansNoEncoding() {
+        assertNull(Compression.negotiate(null));
+        assertNull(Compression.negotiate(""));
+        assertNull(Compression.negotiate("identity"));
+    }
+
+    @Test
+    public void tiesGoToGzip() {
+        assertEquals(Compression.GZIP, Compression.negotiate("deflate, gzip"));
+        assertEquals(Compression.GZIP, Compression.negotiate("*"));
+        assertEquals(Compression.GZIP, Compression.negotiate("x-gzip"));
+    }
+
+    @Test
+    public void highestQualityWins() {
+        assertEquals(Compression.DEFLATE, Compression.negotiate("gzip;q=0.5, deflate"));
+        assertEquals(Compression.GZIP, Compression.negotiate("gzip;q=0.8, deflate;q=0.2"));
+        assertEquals(Compression.DEFLATE, Compression.negotiate("deflate;q=0.9, *;q=0.1"));
+    }
+
+    @Test
+    public void wildcardDoesNotOverrideARefusal() {
+        assertEquals(Compression.DEFLATE, Compression.negotiate("gzip;q=0, *"));
+        assertEquals(Compression.GZIP, Compression.negotiate("deflate;q=0, *"));
+        assertNull(Compression.negotiate("gzip;q=0, deflate;q=0, *"));
+        assertNull(Compression.negotiate("*;q=0"));
+    }
+
+    @Test
+    public void preferredIdentityIsNotCompressed() {
+        assertNull(Compression.negotiate("gzip;q=0.5, identity"));
+        assertEquals(Compression.GZIP, Compression.negotiate("gzip, identity;q=0.5"));
+    }
+
+    @Test
+    public void malformedQualityCountsAsAccepted() {
+        assertEquals(Compression.GZIP, Compression.negotiate("gzip;q=abc"));
+    }
+
+    @Test
+    public void compressedBodiesDecodeToTheOriginal() throws IOException {
+        byte[] body = "{\"text\":\"a body long enough to be worth compressing, a body long enough\"}".getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(body, read(new GZIPInputStream(new ByteArrayInputStream(Compression.compress(body, Compression.GZIP)))));
+        assertArrayEquals(body, read(new InflaterInputStream(new ByteArrayInputStream(Compression.compress(body, Compression.DEFLATE)))));
+    }
+
+    @Test
+    public void closingTheWrapperLeavesTheOutputOpen() throws IOException {
+        boolean[] closed = new boolean[1];
+        ByteArrayOutputStream target = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        try (OutputStream output = Compression.wrap(target, Compression.GZIP, true)) {
+            output.write(1);
+        }
+        assertFalse(closed[0]);
+        assertArrayEquals(new byte[] {1}, read(new GZIPInputStream(new ByteArrayInputStream(target.toByteArray()))));
+    }
+
+    @Test
+    public void directoryIsCompressedOnlyWithCompressionEnabled() throws Exception {
+        Stubs.Response plain = directory("false");
+        assertNull(plain.headers.get("Content-Encoding"));
+        assertNull(plain.headers.get("Vary"));
+        assertTrue(plain.text().startsWith("{"));
+
+        Stubs.Response encoded = directory("true");
+        assertEquals(Compression.GZIP, encoded.headers.get("Content-Encoding"));
+        assertEquals("Accept-Encoding", encoded.headers.get("Vary"));
+        assertArrayEquals(plain.body.toByteArray(), read(new GZIPInputStream(new ByteArrayInputStream(encoded.body.toByteArray()))));
+    }
+
+    private static Stubs.Response directory(String compression) throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("services", RelaxServletTest.PersonService.class.getName());
+        parameters.put("directory", "/directory");
+        parameters.put("compression", compression);
+        RelaxServlet servlet = new RelaxServlet();
+        servlet.init(Stubs.config(parameters));
+        try {
+            return RelaxServletTest.call(servlet, "GET", "/directory", Collections.singletonMap("Accept-Encoding", "gzip"), null);
+        }
+        finally {
+            servlet.destroy();
+        }
+    }
+
+    private static byte[] read(InputStream input) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[256];
+        for (int count; (count = input.read(chunk)) != -1; ) {
+            bytes.write(chunk, 0, count);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.GET;
+import com.craftandresolve.relax.annotation.service.Service;
+import io.reactivex.Single;
+import io.reactivex.subjects.SingleSubject;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class ConcurrencyLimitTest {
+
+    public static class Answer {
+        public String text = "done";
+    }
+
+    @Service(root = "/test", version = "v1")
+    public static class HeldService {
+
+        final SingleSubject<Answer> pending = SingleSubject.create();
+
+        @GET(path = "/held", description = "Answers when the test says so")
+        public Single<Answer> held() {
+            return pending;
+        }
+    }
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(2);
+
+    @Test
+    public void admitsUpToTheLimit() {
+        ConcurrencyLimit limit = aimd(1000);
+        for (int i = 0; i < limit.limit(); ++i) {
+            assertTrue(limit.tryAcquire());
+        }
+        assertFalse(limit.tryAcquire());
+        assertEquals(1, limit.rejected.sum());
+
+        limit.cancel();
+        assertEquals(limit.limit() - 1, limit.inFlight());
+        assertTrue(limit.tryAcquire());
+    }
+
+    @Test
+    public void startsNoHigherThanTheMaximum() {
+        assertEquals(5, aimd(5).limit());
+    }
+
+    @Test
+    public void aimdGrowsWhileSaturatedAndFast() {
+        ConcurrencyLimit limit = aimd(1000);
+        int initial = limit.limit();
+        saturate(limit);
+        for (int i = 0; i < 5 * initial; ++i) {
+            limit.release(FAST, false);
+            saturate(limit);
+        }
+        assertTrue(limit.limit() > initial);
+    }
+
+    @Test
+    public void aimdDoesNotGrowWhenIdle() {
+        ConcurrencyLimit limit = aimd(1000);
+        int initial = limit.limit();
+        for (int i = 0; i < 100; ++i) {
+            assertTrue(limit.tryAcquire());
+            limit.release(FAST, false);
+        }
+        assertEquals(initial, limit.limit());
+    }
+
+    @Test
+    public void aimdBacksOffOnFailureAndSlowAnswers() {
+        ConcurrencyLimit limit = aimd(1000);
+        int initial = limit.limit();
+        limit.tryAcquire();
+        assertEquals((int) (initial * 0.9), limit.release(FAST, true));
+
+        limit.tryAcquire();
+        assertTrue(limit.release(SLOW, false) < (int) (initial * 0.9));
+    }
+
+    @Test
+    public void neverDropsBelowOne() {
+        ConcurrencyLimit limit = aimd(1000);
+        for (int i = 0; i < 200; ++i) {
+            limit.tryAcquire();
+            limit.release(FAST, true);
+        }
+        assertEquals(1, limit.limit());
+        assertTrue(limit.tryAcquire());
+    }
+
+    @Test
+    public void neverExceedsTheMaximum() {
+        ConcurrencyLimit limit = new ConcurrencyLimit("test", ConcurrencyLimit.Algorithm.GRADIENT, 25, SLOW);
+        saturate(limit);
+        for (int i = 0; i < 1000; ++i) {
+            limit.release(FAST, false);
+            saturate(limit);
+        }
+        assertEquals(25, limit.limit());
+    }
+
+    @Test
+    public void gradientGrowsAtSteadyLatencyAndShrinksWhenItRises() {
+        ConcurrencyLimit limit = new ConcurrencyLimit("test", ConcurrencyLimit.Algorithm.GRADIENT, 1000, SLOW);
+        int initial = limit.limit();
+        saturate(limit);
+        for (int i = 0; i < 200; ++i) {
+            limit.release(FAST, false);
+            saturate(limit);
+        }
+        int grown = limit.limit();
+        assertTrue(grown > initial);
+
+        // requests queueing behind the endpoint show up as a rising round-trip time
+        for (int i = 0; i < 200; ++i) {
+            limit.release(FAST * 10, false);
+            saturate(limit);
+        }
+        assertTrue(limit.limit() < grown);
+    }
+
+    @Test
+    public void servletRejectsPastTheLimitWithRetryAfter() throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("services", HeldService.class.getName());
+        parameters.put("concurrencylimit", "aimd");
+        parameters.put("concurrencylimitmax", "1");
+        parameters.put("retryafter", "3");
+        HeldService service = new HeldService();
+        RelaxServlet servlet = new RelaxServlet() {
+            @Override
+            protected Object createService(Class<?> serviceClass) {
+                return service;
+            }
+        };
+        servlet.init(Stubs.config(parameters));
+        try {
+            Stubs.Context held = Stubs.exchange("GET", "/test/v1/held", Collections.<String, String>emptyMap(),
+                    Collections.<String, String>emptyMap(), null);
+            servlet.service(held.getRequest(), held.getResponse());
+
+            Stubs.Response rejected = RelaxServletTest.call(servlet, "GET", "/test/v1/held", Collections.<String, String>emptyMap(), null);
+            assertEquals(503, rejected.status);
+            assertEquals("3", rejected.headers.get("Retry-After"));
+
+            service.pending.onSuccess(new Answer());
+            assertTrue(held.await(5, TimeUnit.SECONDS));
+            assertEquals(200, ((Stubs.Response) held.getResponse()).status);
+            // the permit came back with the answer
+            assertEquals(200, RelaxServletTest.call(servlet, "GET", "/test/v1/held", Collections.<String, String>emptyMap(), null).status);
+        }
+        finally {
+            servlet.destroy();
+        }
+    }
+
+    private static ConcurrencyLimit aimd(int max) {
+        return new ConcurrencyLimit("test", ConcurrencyLimit.Algorithm.AIMD, max, SLOW / 2);
+    }
+
+    private static void saturate(ConcurrencyLimit limit) {
+        while (limit.tryAcquire()) {
+            // fill every permit
+        }
+    }
+}
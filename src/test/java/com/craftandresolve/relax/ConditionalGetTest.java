@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.GET;
+import com.craftandresolve.relax.annotation.service.Service;
+import com.craftandresolve.relax.type.Versioned;
+import io.reactivex.Single;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class ConditionalGetTest {
+
+    public static class Item {
+        public String text = "an item";
+    }
+
+    public static class Document implements Versioned {
+        public String text = "a document";
+
+        @Override
+        public String getVersion() {
+            return "v7";
+        }
+    }
+
+    @Service(root = "/test", version = "v1")
+    public static class ItemService {
+
+        @GET(path = "/item", description = "Get the item")
+        public Single<Item> get() {
+            return Single.just(new Item());
+        }
+
+        @GET(path = "/document", description = "Get the versioned document")
+        public Single<Document> document() {
+            return Single.just(new Document());
+        }
+    }
+
+    private RelaxServlet servlet;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("services", ItemService.class.getName());
+        parameters.put("directory", "/directory");
+        parameters.put("etags", "true");
+        parameters.put("compression", "true");
+        parameters.put("compressionthreshold", "0");
+        servlet = new RelaxServlet();
+        servlet.init(Stubs.config(parameters));
+    }
+
+    @After
+    public void tearDown() {
+        servlet.destroy();
+    }
+
+    @Test
+    public void eachEncodingIsValidatedByItsOwnTag() throws Exception {
+        assertOwnTags("/test/v1/item");
+    }
+
+    @Test
+    public void directoryIsValidatedByItsOwnTag() throws Exception {
+        assertOwnTags("/directory");
+    }
+
+    @Test
+    public void versionedResultsCarryTheirVersion() throws Exception {
+        Stubs.Response plain = get("/test/v1/document", null, null);
+        assertEquals("\"v7\"", plain.headers.get("ETag"));
+        assertEquals(304, get("/test/v1/document", null, "\"v7\"").status);
+        assertEquals(304, get("/test/v1/document", null, "W/\"v7\"").status);
+        assertEquals(200, get("/test/v1/document", null, "\"v6\"").status);
+        assertOwnTags("/test/v1/document");
+    }
+
+    @Test
+    public void unrelatedTagsAreServedInFull() throws Exception {
+        Stubs.Response response = get("/test/v1/item", null, "\"other\", \"tags\"");
+        assertEquals(200, response.status);
+        assertEquals(304, get("/test/v1/item", null, "*").status);
+    }
+
+    private void assertOwnTags(String path) throws Exception {
+        Stubs.Response plain = get(path, null, null);
+        Stubs.Response gzip = get(path, "gzip", null);
+        String plainTag = plain.headers.get("ETag");
+        String gzipTag = gzip.headers.get("ETag");
+        assertNull(plain.headers.get("Content-Encoding"));
+        assertEquals("gzip", gzip.headers.get("Content-Encoding"));
+        assertEquals(ETags.encoded(plainTag, Compression.GZIP), gzipTag);
+
+        // a 304 confirms the representation the client holds and names it
+        Stubs.Response revalidated = get(path, "gzip", gzipTag);
+        assertEquals(304, revalidated.status);
+        assertEquals(gzipTag, revalidated.headers.get("ETag"));
+        assertEquals(0, revalidated.body.size());
+
+        // the plain body's tag says nothing about the gzip one
+        Stubs.Response other = get(path, "gzip", plainTag);
+        assertEquals(200, other.status);
+        assertTrue(0 < other.body.size());
+
+        assertEquals(304, get(path, null, plainTag).status);
+        assertEquals(200, get(path, null, gzipTag).status);
+    }
+
+    private Stubs.Response get(String path, String acceptEncoding, String ifNoneMatch) throws Exception {
+        Map<String, String> headers = new HashMap<>();
+        if (null != acceptEncoding) {
+            headers.put("Accept-Encoding", acceptEncoding);
+        }
+        if (null != ifNoneMatch) {
+            headers.put("If-None-Match", ifNoneMatch);
+        }
+        return RelaxServletTest.call(servlet, "GET", path, headers, null);
+    }
+}
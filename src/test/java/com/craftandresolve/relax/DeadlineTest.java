@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.Deadline;
+import com.craftandresolve.relax.annotation.endpoint.GET;
+import com.craftandresolve.relax.annotation.service.Service;
+import io.reactivex.Single;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class DeadlineTest {
+
+    public static class Message {
+        public String text;
+    }
+
+    @Service(root = "/test", version = "v1")
+    public static class SlowService {
+
+        @GET(path = "/slow", description = "Never answers")
+        @Deadline(100)
+        public Single<Message> slow() {
+            return Single.never();
+        }
+
+        final CompletableFuture<Message> pending = new CompletableFuture<>();
+
+        @GET(path = "/future", description = "Never completes")
+        @Deadline(100)
+        public CompletionStage<Message> future() {
+            return pending;
+        }
+
+        final CompletableFuture<Message> held = new CompletableFuture<>();
+        final CountDownLatch invoked = new CountDownLatch(1);
+
+        @GET(path = "/held", description = "Completes only when cancelled")
+        public CompletionStage<Message> held() {
+            invoked.countDown();
+            return held;
+        }
+
+        @GET(path = "/open", description = "Answers without a deadline")
+        public Single<Message> open() {
+            Message message = new Message();
+            message.text = "done";
+            return Single.just(message);
+        }
+    }
+
+    private final SlowService service = new SlowService();
+    private RelaxServlet servlet;
+
+    @Before
+    public void setUp() throws Exception {
+        servlet = new RelaxServlet() {
+            @Override
+            protected Object createService(Class<?> serviceClass) {
+                return service;
+            }
+        };
+        servlet.initialize(null, Collections.<Class<?>>singletonList(SlowService.class), null, null, false);
+    }
+
+    @After
+    public void tearDown() {
+        servlet.destroy();
+    }
+
+    @Test
+    public void expiredRequestIsAnsweredWith504() throws Exception {
+        Stubs.Context context = call("/test/v1/slow", Collections.<String, String>emptyMap());
+        assertEquals(504, ((Stubs.Response) context.getResponse()).status);
+        assertEquals(1100, context.getTimeout());
+    }
+
+    @Test
+    public void callerCanShortenTheDeadline() throws Exception {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-Request-Timeout", "20");
+        Stubs.Context context = call("/test/v1/slow", headers);
+        assertEquals(504, ((Stubs.Response) context.getResponse()).status);
+        assertEquals(1020, context.getTimeout());
+    }
+
+    @Test
+    public void callerCannotExtendTheDeadline() throws Exception {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-Request-Timeout", "60000");
+        Stubs.Context context = call("/test/v1/slow", headers);
+        assertEquals(1100, context.getTimeout());
+    }
+
+    @Test
+    public void expiredRequestCancelsItsFuture() throws Exception {
+        Stubs.Context context = call("/test/v1/future", Collections.<String, String>emptyMap());
+        assertEquals(504, ((Stubs.Response) context.getResponse()).status);
+        assertTrue(service.pending.isCancelled());
+    }
+
+    @Test
+    public void disconnectCancelsTheRequest() throws Exception {
+        Stubs.Context context = Stubs.exchange("GET", "/test/v1/held", Collections.<String, String>emptyMap(),
+                Collections.<String, String>emptyMap(), null);
+        servlet.service(context.getRequest(), context.getResponse());
+        assertTrue(service.invoked.await(5, TimeUnit.SECONDS));
+
+        context.disconnect();
+        assertTrue(context.await(5, TimeUnit.SECONDS));
+        // a result still being handed over is cancelled as soon as the servlet subscribes to it
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!service.held.isCancelled() && System.nanoTime() < until) {
+            Thread.sleep(1);
+        }
+        assertTrue(service.held.isCancelled());
+        // nobody is left to answer
+        assertEquals(0, ((Stubs.Response) context.getResponse()).body.size());
+    }
+
+    @Test
+    public void requestWithoutDeadlineKeepsTheContainerTimeout() throws Exception {
+        Stubs.Context context = call("/test/v1/open", Collections.<String, String>emptyMap());
+        assertEquals(200, ((Stubs.Response) context.getResponse()).status);
+        // another endpoint's deadline must not leak into this one
+        assertEquals(0, context.getTimeout());
+    }
+
+    private Stubs.Context call(String path, Map<String, String> headers) throws Exception {
+        Stubs.Context context = Stubs.exchange("GET", path, headers, Collections.<String, String>emptyMap(), null);
+        servlet.service(context.getRequest(), context.getResponse());
+        assertTrue("request did not complete: " + path, context.await(5, TimeUnit.SECONDS));
+        return context;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.Deadline;
+import com.craftandresolve.relax.annotation.endpoint.GET;
+import com.craftandresolve.relax.annotation.service.Service;
+import io.reactivex.Single;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class DispatchTest {
+
+    public static class Message {
+        public String text = "done";
+    }
+
+    @Service(root = "/test", version = "v1")
+    public static class CountingService {
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        @GET(path = "/count", description = "Counts its calls")
+        @Deadline(5000)
+        public Single<Message> count() {
+            calls.incrementAndGet();
+            return Single.just(new Message());
+        }
+    }
+
+    // runs nothing until the test says so
+    private static final class ManualExecutor extends AbstractExecutorService {
+        final List<Runnable> tasks = new ArrayList<>();
+        volatile boolean shutdown;
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return shutdown;
+        }
+    }
+
+    @Test
+    public void containerThreadOnlyRoutesTheRequest() throws Exception {
+        CountingService service = new CountingService();
+        ManualExecutor executor = new ManualExecutor();
+        RelaxServlet servlet = servlet(service, "2", executor);
+        try {
+            Stubs.Context context = Stubs.exchange("GET", "/test/v1/count", Collections.<String, String>emptyMap(),
+                    Collections.<String, String>emptyMap(), null);
+            servlet.service(context.getRequest(), context.getResponse());
+
+            // the route was matched and its deadline handed to the container, but nothing else happened yet
+            assertEquals(5000 + 1000, context.getTimeout());
+            assertEquals(1, executor.tasks.size());
+            assertEquals(0, service.calls.get());
+
+            executor.tasks.get(0).run();
+            assertTrue(context.await(5, TimeUnit.SECONDS));
+            assertEquals(200, ((Stubs.Response) context.getResponse()).status);
+            assertEquals(1, service.calls.get());
+        }
+        finally {
+            servlet.destroy();
+        }
+        assertTrue(executor.shutdown);
+    }
+
+    @Test
+    public void defaultPoolHasTheRequestedThreads() throws Exception {
+        ExecutorService[] created = new ExecutorService[1];
+        int[] threads = new int[1];
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("services", CountingService.class.getName());
+        parameters.put("dispatchthreads", "3");
+        RelaxServlet servlet = new RelaxServlet() {
+            @Override
+            protected ExecutorService createDispatchExecutor(int count) {
+                threads[0] = count;
+                created[0] = super.createDispatchExecutor(count);
+                return created[0];
+            }
+        };
+        servlet.init(Stubs.config(parameters));
+        try {
+            assertEquals(3, threads[0]);
+            Stubs.Response response = RelaxServletTest.call(servlet, "GET", "/test/v1/count", Collections.<String, String>emptyMap(), null);
+            assertEquals(200, response.status);
+        }
+        finally {
+            servlet.destroy();
+        }
+        assertTrue(created[0].isShutdown());
+    }
+
+    @Test
+    public void withoutDispatchThreadsTheContainerThreadDispatches() throws Exception {
+        CountingService service = new CountingService();
+        ManualExecutor executor = new ManualExecutor();
+        RelaxServlet servlet = servlet(service, null, executor);
+        try {
+            Stubs.Context context = Stubs.exchange("GET", "/test/v1/count", Collections.<String, String>emptyMap(),
+                    Collections.<String, String>emptyMap(), null);
+            servlet.service(context.getRequest(), context.getResponse());
+            assertTrue(context.await(5, TimeUnit.SECONDS));
+            assertEquals(200, ((Stubs.Response) context.getResponse()).status);
+            assertTrue(executor.tasks.isEmpty());
+        }
+        finally {
+            servlet.destroy();
+        }
+        assertFalse(executor.shutdown);
+    }
+
+    private static RelaxServlet servlet(CountingService service, String dispatchThreads, ExecutorService executor) throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("services", CountingService.class.getName());
+        if (null != dispatchThreads) {
+            parameters.put("dispatchthreads", dispatchThreads);
+        }
+        RelaxServlet servlet = new RelaxServlet() {
+            @Override
+            protected Object createService(Class<?> serviceClass) {
+                return service;
+            }
+
+            @Override
+            protected ExecutorService createDispatchExecutor(int threads) {
+                return executor;
+            }
+        };
+        servlet.init(Stubs.config(parameters));
+        return servlet;
+    }
+}
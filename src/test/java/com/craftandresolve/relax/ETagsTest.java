@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class ETagsTest {
+
+    @Test
+    public void tagsHashTheBody() {
+        String tag = ETags.of("{\"a\":1}".getBytes(StandardCharsets.UTF_8));
+        assertEquals(tag, ETags.of("{\"a\":1}".getBytes(StandardCharsets.UTF_8)));
+        assertNotEquals(tag, ETags.of("{\"a\":2}".getBytes(StandardCharsets.UTF_8)));
+        assertTrue(tag.startsWith("\"") && tag.endsWith("\""));
+    }
+
+    @Test
+    public void encodedTagsAreDistinct() {
+        assertEquals("\"abc-gzip\"", ETags.encoded("\"abc\"", Compression.GZIP));
+        assertEquals("\"abc-cbor\"", ETags.negotiated("\"abc\"", "application/cbor"));
+    }
+
+    @Test
+    public void matchesListedAndWildcardTags() {
+        assertTrue(ETags.matches("\"abc\"", "\"abc\""));
+        assertTrue(ETags.matches("\"x\", \"abc\"", "\"abc\""));
+        assertTrue(ETags.matches("*", "\"abc\""));
+        assertFalse(ETags.matches("\"x\"", "\"abc\""));
+        assertFalse(ETags.matches(null, "\"abc\""));
+        assertFalse(ETags.matches("\"abc\"", null));
+    }
+
+    @Test
+    public void weakComparisonIgnoresThePrefix() {
+        assertTrue(ETags.matches("W/\"abc\"", "\"abc\""));
+        assertTrue(ETags.matches("\"abc\"", "W/\"abc\""));
+    }
+
+    @Test
+    public void representationsDoNotMatchEachOther() {
+        String plain = "\"abc\"";
+        String gzip = ETags.encoded(plain, Compression.GZIP);
+        String deflate = ETags.encoded(plain, Compression.DEFLATE);
+        assertFalse(ETags.matches(plain, gzip));
+        assertFalse(ETags.matches(gzip, plain));
+        assertFalse(ETags.matches(deflate, gzip));
+        assertTrue(ETags.matches(gzip, gzip));
+    }
+}
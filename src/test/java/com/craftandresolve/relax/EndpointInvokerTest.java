@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+
+public class EndpointInvokerTest {
+
+    public static class Target {
+        public String join(String text, int count, Long optional) {
+            StringBuilder joined = new StringBuilder();
+            for (int i = 0; i < count; ++i) {
+                joined.append(text);
+            }
+            return joined + "/" + optional;
+        }
+
+        public String fail() throws IOException {
+            throw new IOException("unreadable");
+        }
+
+        public void nothing() {
+        }
+    }
+
+    static class Hidden {
+        public String name() {
+            return "hidden";
+        }
+    }
+
+    private final Target target = new Target();
+
+    @Test
+    public void everyStrategyPassesArgumentsAndReturnsTheResult() throws Exception {
+        Method join = Target.class.getMethod("join", String.class, int.class, Long.class);
+        for (EndpointInvoker invoker : new EndpointInvoker[] {
+                EndpointInvoker.reflective(target, join),
+                EndpointInvoker.methodHandle(target, join),
+                EndpointInvoker.generated(target, (container, arguments) -> ((Target) container).join((String) arguments[0], (Integer) arguments[1], (Long) arguments[2]))}) {
+            assertEquals("abab/null", invoker.invoke(new Object[] {"ab", 2, null}));
+            assertEquals("/7", invoker.invoke(new Object[] {"x", 0, 7L}));
+        }
+    }
+
+    @Test
+    public void voidMethodsReturnNull() throws Exception {
+        Method nothing = Target.class.getMethod("nothing");
+        assertNull(EndpointInvoker.methodHandle(target, nothing).invoke(new Object[0]));
+        assertNull(EndpointInvoker.reflective(target, nothing).invoke(new Object[0]));
+    }
+
+    @Test
+    public void endpointFailuresArriveAsInvocationTargetExceptions() throws Exception {
+        Method fail = Target.class.getMethod("fail");
+        for (EndpointInvoker invoker : new EndpointInvoker[] {
+                EndpointInvoker.reflective(target, fail),
+                EndpointInvoker.methodHandle(target, fail),
+                EndpointInvoker.generated(target, (container, arguments) -> ((Target) container).fail())}) {
+            try {
+                invoker.invoke(new Object[0]);
+                fail("the endpoint's exception was swallowed");
+            }
+            catch (InvocationTargetException e) {
+                assertSame(IOException.class, e.getCause().getClass());
+                assertEquals("unreadable", e.getCause().getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void strategyFollowsTheInitParam() throws Exception {
+        Method join = Target.class.getMethod("join", String.class, int.class, Long.class);
+        RouteTable.Invoker table = (container, arguments) -> "generated";
+        assertEquals("generated", EndpointInvoker.create(null, target, join, table).invoke(new Object[] {"a", 1, null}));
+        assertEquals("generated", EndpointInvoker.create("generated", target, join, table).invoke(new Object[] {"a", 1, null}));
+        // naming a strategy overrides the generated table
+        assertEquals("a/null", EndpointInvoker.create("methodhandle", target, join, table).invoke(new Object[] {"a", 1, null}));
+        assertEquals("a/null", EndpointInvoker.create("reflection", target, join, table).invoke(new Object[] {"a", 1, null}));
+        assertEquals("a/null", EndpointInvoker.create(null, target, join, null).invoke(new Object[] {"a", 1, null}));
+    }
+
+    @Test
+    public void inaccessibleClassesFallBackToReflection() throws Exception {
+        Method name = Hidden.class.getMethod("name");
+        try {
+            EndpointInvoker.methodHandle(new Hidden(), name);
+            fail("a public lookup reached a package-private class");
+        }
+        catch (IllegalAccessException e) {
+            // IGNORED
+        }
+        assertEquals("hidden", EndpointInvoker.create("methodhandle", new Hidden(), name, null).invoke(new Object[0]));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.processor.AdapterProcessor;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapterFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class GeneratedAdaptersTest {
+
+    private static final String SERVICE = "sample.ShelterService";
+
+    private static final String SOURCE = String.join("\n",
+            "package sample;",
+            "",
+            "import com.craftandresolve.relax.annotation.endpoint.GET;",
+            "import com.craftandresolve.relax.annotation.endpoint.POST;",
+            "import com.craftandresolve.relax.annotation.parameter.Body;",
+            "import com.craftandresolve.relax.annotation.service.Service;",
+            "import com.google.gson.annotations.SerializedName;",
+            "import io.reactivex.Single;",
+            "",
+            "import java.util.List;",
+            "import java.util.Map;",
+            "",
+            "@Service(root = \"/shelter\", version = \"v1\")",
+            "public class ShelterService {",
+            "",
+            "    public static class Animal {",
+            "        public String name;",
+            "    }",
+            "",
+            "    public static class Dog extends Animal {",
+            "        public boolean good;",
+            "    }",
+            "",
+            "    public static class Tag {",
+            "        @SerializedName(value = \"tag_name\", alternate = {\"tagName\"})",
+            "        public String name;",
+            "        public int weight;",
+            "        public Double score;",
+            "    }",
+            "",
+            "    public static class Shelter {",
+            "        public String city;",
+            "        public Animal resident;",
+            "        public List<Tag> tags;",
+            "        public Map<String, Tag> byName;",
+            "        public Tag[] pinned;",
+            "        public Shelter annex;",
+            "        public transient String scratch;",
+            "    }",
+            "",
+            "    @GET(path = \"/shelter\", description = \"The shelter\")",
+            "    public Single<Shelter> shelter() {",
+            "        return Single.just(new Shelter());",
+            "    }",
+            "",
+            "    @POST(path = \"/shelter\", description = \"Store a shelter\")",
+            "    public Single<Shelter> store(@Body Shelter shelter) {",
+            "        return Single.just(shelter);",
+            "    }",
+            "}",
+            "");
+
+    private static final String JSON = "{\"city\":\"Lyon\",\"resident\":{\"name\":\"Rex\"},"
+            + "\"tags\":[{\"tag_name\":\"calm\",\"weight\":2,\"score\":0.5},{\"tagName\":\"old\",\"weight\":1},null],"
+            + "\"byName\":{\"calm\":{\"tag_name\":\"calm\",\"weight\":2}},"
+            + "\"pinned\":[{\"tag_name\":\"first\",\"weight\":0}],"
+            + "\"annex\":{\"city\":\"Bron\"},\"scratch\":\"ignored\"}";
+
+    private ClassLoader loader;
+    private Class<?> shelter;
+    private Gson reflective;
+    private Gson generated;
+
+    @Before
+    public void setUp() throws Exception {
+        loader = Compilation.compile(SERVICE, SOURCE, Collections.singletonList(new AdapterProcessor()), "-Arelax.adapters=true");
+        shelter = loader.loadClass(SERVICE + "$Shelter");
+        TypeAdapterFactory factory = (TypeAdapterFactory) loader.loadClass(SERVICE + "_RelaxAdapters").getConstructor().newInstance();
+        reflective = new Gson();
+        generated = new GsonBuilder().registerTypeAdapterFactory(factory).create();
+    }
+
+    @Test
+    public void entitiesGetGeneratedAdapters() throws Exception {
+        for (String entity : new String[] {"$Shelter", "$Tag", "$Animal"}) {
+            String adapter = generated.getAdapter(loader.loadClass(SERVICE + entity)).getClass().getName();
+            assertTrue(entity + " has " + adapter, adapter.startsWith(SERVICE + "_RelaxAdapters$"));
+        }
+        // no declared type reaches the subclass, so Gson keeps it
+        assertFalse(generated.getAdapter(loader.loadClass(SERVICE + "$Dog")).getClass().getName().startsWith(SERVICE));
+    }
+
+    @Test
+    public void writesWhatGsonWrites() throws Exception {
+        Object value = reflective.fromJson(JSON, shelter);
+        assertEquals(reflective.toJson(value), generated.toJson(value));
+    }
+
+    @Test
+    public void writesNullsWhatGsonWrites() throws Exception {
+        Object value = reflective.fromJson(JSON, shelter);
+        assertEquals(reflective.newBuilder().serializeNulls().create().toJson(value),
+                generated.newBuilder().serializeNulls().create().toJson(value));
+    }
+
+    @Test
+    public void readsWhatGsonReads() throws Exception {
+        // names, alternates, nulls, nesting and collections all land in the same fields
+        assertEquals(reflective.toJson(reflective.fromJson(JSON, shelter)), reflective.toJson(generated.fromJson(JSON, shelter)));
+        assertEquals("null", generated.toJson(generated.fromJson("null", shelter)));
+    }
+
+    @Test
+    public void fieldDeclaredAsSupertypeIsWrittenByItsRuntimeType() throws Exception {
+        Object value = reflective.fromJson(JSON, shelter);
+        Object dog = reflective.fromJson("{\"name\":\"Rex\",\"good\":true}", loader.loadClass(SERVICE + "$Dog"));
+        shelter.getField("resident").set(value, dog);
+        String json = generated.toJson(value);
+        assertEquals(reflective.toJson(value), json);
+        assertTrue(json, json.contains("\"resident\":{\"good\":true,\"name\":\"Rex\"}"));
+    }
+}
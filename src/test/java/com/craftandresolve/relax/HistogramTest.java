@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class HistogramTest {
+
+    @Test
+    public void everyValueFallsInsideItsBucket() {
+        for (long value = 0; value < (1L << 32); value = value < 64 ? value + 1 : value + value / 7) {
+            int index = Histogram.index(value);
+            assertTrue(index < Histogram.BUCKETS);
+            assertTrue(value + " above its bucket", value < Histogram.upperBound(index));
+            assertTrue(value + " below its bucket", 0 == index || value >= Histogram.upperBound(index - 1));
+        }
+    }
+
+    @Test
+    public void bucketsStayWithinOneSixteenth() {
+        for (int index = 32; index < Histogram.BUCKETS; ++index) {
+            long lower = Histogram.upperBound(index - 1);
+            long width = Histogram.upperBound(index) - lower;
+            assertTrue("bucket " + index, width * 16 <= lower);
+        }
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 10; ++i) {
+            histogram.record(i);
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10, snapshot.count);
+        assertEquals(55, snapshot.sum);
+        assertEquals(5.5, snapshot.mean(), 0);
+        assertEquals(5, snapshot.quantile(0.5));
+        assertEquals(10, snapshot.quantile(1));
+        assertEquals(10, snapshot.max());
+        assertEquals(4, snapshot.countAtOrBelow(4));
+    }
+
+    @Test
+    public void largeValuesAreApproximatedFromAbove() {
+        Histogram histogram = new Histogram();
+        histogram.record(1000000);
+        long max = histogram.snapshot().max();
+        assertTrue(max >= 1000000 && max <= 1000000 + 1000000 / 16);
+    }
+
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.count);
+        assertEquals(0, snapshot.quantile(0.5));
+        assertEquals((1L << 32) - 1, snapshot.max());
+    }
+
+    @Test
+    public void emptySnapshotIsZero() {
+        Histogram.Snapshot snapshot = new Histogram().snapshot();
+        assertEquals(0, snapshot.count);
+        assertEquals(0, snapshot.quantile(0.99));
+        assertEquals(0, snapshot.max());
+        assertEquals(0, snapshot.mean(), 0);
+    }
+
+    @Test
+    public void concurrentRecordsAreAllCounted() throws Exception {
+        Histogram histogram = new Histogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; ++t) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10000; ++i) {
+                    histogram.recordNanos(3000);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(80000, snapshot.count);
+        assertEquals(240000, snapshot.sum);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.GET;
+import com.craftandresolve.relax.annotation.service.Service;
+import com.craftandresolve.relax.exception.NotFoundException;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.reactivex.Single;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class MetricsTest {
+
+    public static class Answer {
+        public String text = "done";
+    }
+
+    @Service(root = "/test", version = "v1")
+    public static class MeteredService {
+
+        @GET(path = "/ok", description = "Answers at once")
+        public Single<Answer> ok() {
+            return Single.just(new Answer());
+        }
+
+        @GET(path = "/missing", description = "Never finds anything")
+        public Single<Answer> missing() {
+            return Single.error(new NotFoundException("answer-not-found", "No answer"));
+        }
+    }
+
+    private RelaxServlet servlet;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("services", MeteredService.class.getName());
+        parameters.put("metrics", "/metrics");
+        servlet = new RelaxServlet();
+        servlet.init(Stubs.config(parameters));
+        get("/test/v1/ok", Collections.<String, String>emptyMap());
+        get("/test/v1/ok", Collections.<String, String>emptyMap());
+        get("/test/v1/missing", Collections.<String, String>emptyMap());
+        get("/test/v1/nowhere", Collections.<String, String>emptyMap());
+    }
+
+    @After
+    public void tearDown() {
+        servlet.destroy();
+    }
+
+    @Test
+    public void prometheusTextCountsEveryRoute() throws Exception {
+        Stubs.Response response = get("/metrics", Collections.<String, String>emptyMap());
+        assertEquals("text/plain; version=0.0.4; charset=utf-8", response.headers.get("Content-Type"));
+        String text = response.text();
+        assertTrue(text.contains("relax_requests_total{route=\"GET /test/v1/ok\",status=\"200\"} 2\n"));
+        assertTrue(text.contains("relax_requests_total{route=\"GET /test/v1/missing\",status=\"404\"} 1\n"));
+        assertTrue(text.contains("relax_requests_total{route=\"unmatched\",status=\"404\"} 1\n"));
+        assertTrue(text.contains("relax_requests_in_flight{route=\"GET /test/v1/ok\"} 0\n"));
+        assertTrue(text.contains("relax_request_duration_seconds_count{route=\"GET /test/v1/ok\",phase=\"total\"} 2\n"));
+        // an unmatched request is never invoked, so it has no queue or execute phase
+        assertFalse(text.contains("route=\"unmatched\",phase=\"queue\""));
+
+        String prefix = "relax_request_duration_seconds_bucket{route=\"GET /test/v1/ok\",phase=\"total\",le=\"";
+        long previous = 0;
+        int buckets = 0;
+        for (String line : text.split("\n")) {
+            if (line.startsWith(prefix)) {
+                long count = Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+                assertTrue(line, count >= previous);
+                previous = count;
+                ++buckets;
+            }
+        }
+        assertEquals(15, buckets);
+        assertTrue(text.contains(prefix + "0.0005\"} "));
+        assertTrue(text.contains(prefix + "10\"} "));
+        assertTrue(text.contains(prefix + "+Inf\"} 2\n"));
+    }
+
+    @Test
+    public void jsonReportsStatusesAndPhases() throws Exception {
+        for (Stubs.Response response : Arrays.asList(
+                get("/metrics", Collections.singletonMap("Accept", "application/json")),
+                getJson("/metrics"))) {
+            assertEquals("application/json", response.headers.get("Content-Type"));
+            JsonObject report = new JsonParser().parse(response.text()).getAsJsonObject();
+            JsonObject routes = report.getAsJsonObject("routes");
+            JsonObject ok = routes.getAsJsonObject("GET /test/v1/ok");
+            assertEquals(2, ok.getAsJsonObject("statuses").get("200").getAsInt());
+            assertEquals(0, ok.get("inFlight").getAsInt());
+            JsonObject total = ok.getAsJsonObject("phases").getAsJsonObject("total");
+            assertEquals(2, total.get("count").getAsInt());
+            assertTrue(total.get("p50").getAsLong() <= total.get("max").getAsLong());
+            assertEquals(1, routes.getAsJsonObject("unmatched").getAsJsonObject("statuses").get("404").getAsInt());
+            for (String family : new String[] {"queueDepths", "cache", "coalescing", "concurrency"}) {
+                assertTrue(family, report.has(family));
+            }
+        }
+    }
+
+    @Test
+    public void statisticsBecomeCountersAndGauges() {
+        RouteMetrics route = new RouteMetrics("GET /say/\"hi\"");
+        Map<String, Long> values = new LinkedHashMap<>();
+        values.put("hits", 3L);
+        values.put("entries", 2L);
+        Map<String, Map<String, Long>> cache = new LinkedHashMap<>();
+        cache.put("GET|/x", values);
+        MetricsReport report = new MetricsReport(Collections.singletonList(route), Collections.singletonMap("pool", 4))
+                .add("cache", cache);
+
+        String text = report.prometheus();
+        assertTrue(text.contains("relax_requests_in_flight{route=\"GET /say/\\\"hi\\\"\"} 0\n"));
+        assertTrue(text.contains("relax_pool_queue_depth{pool=\"pool\"} 4\n"));
+        assertTrue(text.contains("# TYPE relax_cache_hits_total counter\nrelax_cache_hits_total{route=\"GET /x\"} 3\n"));
+        assertTrue(text.contains("# TYPE relax_cache_entries gauge\nrelax_cache_entries{route=\"GET /x\"} 2\n"));
+
+        JsonObject json = new JsonParser().parse(report.json(new Gson())).getAsJsonObject();
+        assertEquals(3, json.getAsJsonObject("cache").getAsJsonObject("GET|/x").get("hits").getAsInt());
+        assertEquals(4, json.getAsJsonObject("queueDepths").get("pool").getAsInt());
+    }
+
+    private Stubs.Response getJson(String path) throws Exception {
+        Stubs.Context context = Stubs.exchange("GET", path, Collections.<String, String>emptyMap(),
+                Collections.singletonMap("format", "json"), null);
+        servlet.service(context.getRequest(), context.getResponse());
+        context.getResponse().flushBuffer();
+        return (Stubs.Response) context.getResponse();
+    }
+
+    private Stubs.Response get(String path, Map<String, String> headers) throws Exception {
+        return RelaxServletTest.call(servlet, "GET", path, headers, null);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.GET;
+import com.craftandresolve.relax.annotation.endpoint.POST;
+import com.craftandresolve.relax.annotation.parameter.Body;
+import com.craftandresolve.relax.annotation.service.Bulkhead;
+import com.craftandresolve.relax.annotation.service.Service;
+import com.craftandresolve.relax.exception.NotFoundException;
+import io.reactivex.Single;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class RelaxServletTest {
+
+    public static class Person {
+        public String name;
+    }
+
+    @Service(root = "/test", version = "v1")
+    @Bulkhead(threads = 1, queue = 0)
+    public static class PersonService {
+
+        @POST(path = "/person", description = "Echo a person")
+        public Single<Person> post(@Body Person person) {
+            return Single.just(person);
+        }
+
+        @GET(path = "/missing", description = "Fails with 404")
+        public Single<Person> missing() {
+            return Single.error(new NotFoundException("person-not-found", "No such person."));
+        }
+
+        @GET(path = "/broken", description = "Throws before returning")
+        public Single<Person> broken() {
+            throw new IllegalStateException("broken");
+        }
+    }
+
+    private RelaxServlet servlet;
+
+    @Before
+    public void setUp() throws Exception {
+        servlet = new RelaxServlet();
+        servlet.initialize(null, Collections.<Class<?>>singletonList(PersonService.class), null, null, false);
+    }
+
+    @After
+    public void tearDown() {
+        servlet.destroy();
+    }
+
+    @Test
+    public void malformedBodyIsAnsweredWith400AndReleasesThePool() throws Exception {
+        Stubs.Response malformed = call("POST", "/test/v1/person", "{not json");
+        assertEquals(400, malformed.status);
+
+        // the bulkhead admits one request at a time; a leaked permit would turn this into a 503
+        Stubs.Response valid = call("POST", "/test/v1/person", "{\"name\":\"Ada\"}");
+        assertEquals(200, valid.status);
+        assertEquals("{\"name\":\"Ada\"}", valid.body.toString("UTF-8"));
+    }
+
+    @Test
+    public void httpErrorsKeepTheirCode() throws Exception {
+        Stubs.Response missing = call("GET", "/test/v1/missing", null);
+        assertEquals(404, missing.status);
+        assertTrue(missing.body.toString("UTF-8").contains("person-not-found"));
+        assertEquals(200, call("POST", "/test/v1/person", "{}").status);
+    }
+
+    @Test
+    public void thrownExceptionsAreAnsweredWith500AndReleaseThePool() throws Exception {
+        assertEquals(500, call("GET", "/test/v1/broken", null).status);
+        assertEquals(500, call("GET", "/test/v1/broken", null).status);
+        assertEquals(200, call("POST", "/test/v1/person", "{}").status);
+    }
+
+    @Test
+    public void unknownPathsAreAnsweredWith404() throws Exception {
+        assertEquals(404, call("GET", "/test/v1/nowhere", null).status);
+    }
+
+    static Stubs.Response call(RelaxServlet servlet, String method, String path, Map<String, String> headers, String body) throws Exception {
+        Stubs.Context context = Stubs.exchange(method, path, headers, Collections.<String, String>emptyMap(),
+                null != body ? body.getBytes(StandardCharsets.UTF_8) : null);
+        servlet.service(context.getRequest(), context.getResponse());
+        if (!context.getRequest().isAsyncStarted()) {
+            // the directory and metrics are answered synchronously; the container flushes them on return
+            context.getResponse().flushBuffer();
+        }
+        assertTrue("request did not complete: " + method + " " + path,
+                !context.getRequest().isAsyncStarted() || context.await(5, TimeUnit.SECONDS));
+        return (Stubs.Response) context.getResponse();
+    }
+
+    private Stubs.Response call(String method, String path, String body) throws Exception {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        return call(servlet, method, path, headers, body);
+    }
+}
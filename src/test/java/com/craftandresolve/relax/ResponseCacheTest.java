@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.Cached;
+import com.craftandresolve.relax.annotation.endpoint.GET;
+import com.craftandresolve.relax.annotation.parameter.Query;
+import com.craftandresolve.relax.annotation.service.Service;
+import com.craftandresolve.relax.type.Response;
+import io.reactivex.Single;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class ResponseCacheTest {
+
+    public static class Count {
+        public int value;
+    }
+
+    @Service(root = "/test", version = "v1")
+    public static class CountService {
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        @GET(path = "/fresh", description = "Cached for a minute")
+        @Cached(ttl = 60, maxEntries = 2, maxBytes = 16, query = {"q"})
+        public Single<Count> fresh(@Query(key = "q") String q) {
+            return count();
+        }
+
+        @GET(path = "/stale", description = "Always stale, revalidated in the background")
+        @Cached(ttl = 0, staleWhileRevalidate = 60)
+        public Single<Count> stale() {
+            return count();
+        }
+
+        @GET(path = "/expired", description = "Never served from the cache")
+        @Cached(ttl = 0)
+        public Single<Count> expired() {
+            return count();
+        }
+
+        volatile int typedStatus;
+
+        @GET(path = "/typed", description = "Turns into a typed response once cached")
+        @Cached(ttl = 0, staleWhileRevalidate = 60)
+        public Single<Object> typed() {
+            Single<Count> count = count();
+            if (0 == typedStatus) {
+                return count.cast(Object.class);
+            }
+            return count.map(value -> (Object) new Response<>(typedStatus, value));
+        }
+
+        private Single<Count> count() {
+            Count count = new Count();
+            count.value = calls.incrementAndGet();
+            return Single.just(count);
+        }
+    }
+
+    @Test
+    public void freshEntriesAreHits() throws Exception {
+        ResponseCache cache = cache("fresh");
+        cache.put("a", new byte[] {1}, "\"1\"");
+        ResponseCache.Entry entry = cache.get("a", new boolean[1]);
+        assertNotNull(entry);
+        assertEquals("\"1\"", entry.etag);
+        assertNull(cache.get("b", new boolean[1]));
+        assertEquals(1, cache.hits.sum());
+        assertEquals(1, cache.misses.sum());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvictedPastEitherBound() throws Exception {
+        ResponseCache cache = cache("fresh");
+        cache.put("a", new byte[4], null);
+        cache.put("b", new byte[4], null);
+        cache.get("a", new boolean[1]);
+        cache.put("c", new byte[4], null);
+        // two entries at most: b was used least recently
+        assertNull(cache.get("b", new boolean[1]));
+        assertNotNull(cache.get("a", new boolean[1]));
+
+        cache.put("d", new byte[12], null);
+        assertEquals(2, cache.size());
+        assertEquals(16, cache.bytes());
+
+        cache.put("e", new byte[14], null);
+        // sixteen bytes at most
+        assertEquals(1, cache.size());
+        assertEquals(14, cache.bytes());
+
+        cache.put("f", new byte[17], null);
+        assertNull(cache.get("f", new boolean[1]));
+        assertEquals(14, cache.bytes());
+    }
+
+    @Test
+    public void staleEntryIsRevalidatedByOneCaller() throws Exception {
+        ResponseCache cache = cache("stale");
+        cache.put("a", new byte[] {1}, null);
+        boolean[] first = new boolean[1];
+        boolean[] second = new boolean[1];
+        assertNotNull(cache.get("a", first));
+        assertNotNull(cache.get("a", second));
+        assertTrue(first[0]);
+        assertFalse(second[0]);
+        assertEquals(2, cache.staleHits.sum());
+
+        cache.refreshFailed("a");
+        boolean[] retry = new boolean[1];
+        cache.get("a", retry);
+        assertTrue(retry[0]);
+    }
+
+    @Test
+    public void expiredEntryIsDropped() throws Exception {
+        ResponseCache cache = cache("expired");
+        cache.put("a", new byte[] {1}, null);
+        Thread.sleep(1);
+        assertNull(cache.get("a", new boolean[1]));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void encodedBodiesAreKept() throws Exception {
+        ResponseCache cache = cache("fresh");
+        cache.put("a", new byte[] {1, 2}, null);
+        ResponseCache.Entry entry = cache.get("a", new boolean[1]);
+        assertSame(entry.encoded(Compression.GZIP), entry.encoded(Compression.GZIP));
+        assertNotEquals(entry.encoded(Compression.GZIP).length, entry.encoded(Compression.DEFLATE).length);
+    }
+
+    @Test
+    public void missingValueDoesNotShareAKeyWithAnyValue() {
+        String[] query = {"a", "b"};
+        String[] headers = {"X-Tenant"};
+        String absent = key(null, null, null);
+        assertNotEquals(absent, key("null", null, null));
+        assertNotEquals(absent, key("", null, null));
+        assertNotEquals(absent, key(null, null, "null"));
+        // a value cannot spill over into the next part
+        assertNotEquals(key("x\u0000", "y", null), key("x", "\u0000y", null));
+        assertNotEquals(key("1:x", null, null), key(null, "x", null));
+        assertEquals(key("x", "y", "t"), key("x", "y", "t"));
+        assertNotEquals(ResponseCache.key(request("/p", null, null, null), query, headers),
+                ResponseCache.key(request("/p", null, null, null), query, new String[0]));
+    }
+
+    private static String key(String a, String b, String tenant) {
+        return ResponseCache.key(request("/p", a, b, tenant), new String[] {"a", "b"}, new String[] {"X-Tenant"});
+    }
+
+    private static Stubs.Request request(String path, String a, String b, String tenant) {
+        Map<String, String> parameters = new HashMap<>();
+        if (null != a) {
+            parameters.put("a", a);
+        }
+        if (null != b) {
+            parameters.put("b", b);
+        }
+        Map<String, String> headers = null != tenant ? Collections.singletonMap("X-Tenant", tenant) : Collections.<String, String>emptyMap();
+        return new Stubs.Request("GET", path, headers, parameters, null);
+    }
+
+    @Test
+    public void servletAnswersFromTheCacheAndRevalidatesStaleEntries() throws Exception {
+        CountService service = new CountService();
+        RelaxServlet servlet = new RelaxServlet() {
+            @Override
+            protected Object createService(Class<?> serviceClass) {
+                return service;
+            }
+        };
+        servlet.initialize(null, Collections.<Class<?>>singletonList(CountService.class), null, null, false);
+        try {
+            assertEquals("{\"value\":1}", get(servlet, "/test/v1/fresh?q=x").body.toString("UTF-8"));
+            assertEquals("{\"value\":1}", get(servlet, "/test/v1/fresh?q=x").body.toString("UTF-8"));
+            assertEquals(1, service.calls.get());
+
+            assertEquals("{\"value\":2}", get(servlet, "/test/v1/stale").body.toString("UTF-8"));
+            // the stale copy is answered at once while the endpoint runs again behind it
+            assertEquals("{\"value\":2}", get(servlet, "/test/v1/stale").body.toString("UTF-8"));
+            long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            String body;
+            do {
+                Thread.sleep(5);
+                body = get(servlet, "/test/v1/stale").body.toString("UTF-8");
+            } while ("{\"value\":2}".equals(body) && System.nanoTime() < until);
+            // the refreshed copy replaces the stale one
+            assertNotEquals("{\"value\":2}", body);
+            assertTrue(service.calls.get() >= 3);
+        }
+        finally {
+            servlet.destroy();
+        }
+    }
+
+    @Test
+    public void typedRefreshReplacesOnlyWithAPlain200Body() throws Exception {
+        CountService service = new CountService();
+        RelaxServlet servlet = new RelaxServlet() {
+            @Override
+            protected Object createService(Class<?> serviceClass) {
+                return service;
+            }
+        };
+        servlet.initialize(null, Collections.<Class<?>>singletonList(CountService.class), null, null, false);
+        try {
+            assertEquals("{\"value\":1}", get(servlet, "/test/v1/typed").body.toString("UTF-8"));
+
+            // a typed 200 refreshes the entry with its body alone
+            service.typedStatus = 200;
+            Stubs.Response response = awaitRefresh(servlet, "{\"value\":1}");
+            assertEquals(200, response.status);
+            assertTrue(response.body.toString("UTF-8").matches("\\{\"value\":\\d+}"));
+
+            // anything else drops the entry instead of caching the wrapper as a 200
+            service.typedStatus = 202;
+            long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            do {
+                Thread.sleep(5);
+                response = get(servlet, "/test/v1/typed");
+            } while (200 == response.status && System.nanoTime() < until);
+            assertEquals(202, response.status);
+            assertTrue(response.body.toString("UTF-8").matches("\\{\"value\":\\d+}"));
+        }
+        finally {
+            servlet.destroy();
+        }
+    }
+
+    private static Stubs.Response awaitRefresh(RelaxServlet servlet, String stale) throws Exception {
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        Stubs.Response response;
+        do {
+            Thread.sleep(5);
+            response = get(servlet, "/test/v1/typed");
+        } while (stale.equals(response.body.toString("UTF-8")) && System.nanoTime() < until);
+        assertNotEquals(stale, response.body.toString("UTF-8"));
+        return response;
+    }
+
+    private static Stubs.Response get(RelaxServlet servlet, String uri) throws Exception {
+        int question = uri.indexOf('?');
+        Map<String, String> parameters = new HashMap<>();
+        if (question >= 0) {
+            String[] pair = uri.substring(question + 1).split("=");
+            parameters.put(pair[0], pair[1]);
+        }
+        Stubs.Context context = Stubs.exchange("GET", question >= 0 ? uri.substring(0, question) : uri,
+                Collections.<String, String>emptyMap(), parameters, null);
+        servlet.service(context.getRequest(), context.getResponse());
+        assertTrue(context.await(5, TimeUnit.SECONDS));
+        return (Stubs.Response) context.getResponse();
+    }
+
+    private static ResponseCache cache(String name) throws Exception {
+        Method method = null;
+        for (Method candidate : CountService.class.getMethods()) {
+            if (candidate.getName().equals(name)) {
+                method = candidate;
+            }
+        }
+        Endpoint endpoint = new Endpoint("GET", "/" + name, null, method, null, null);
+        return new ResponseCache(endpoint, method.getAnnotation(Cached.class));
+    }
+}
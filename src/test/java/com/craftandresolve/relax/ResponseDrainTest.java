@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class ResponseDrainTest {
+
+    @Test
+    public void slowClientReceivesOneChunkPerReadyCallback() throws Exception {
+        Stubs.Context context = context();
+        Stubs.Response response = (Stubs.Response) context.getResponse();
+        response.slow = true;
+        byte[] data = data(20000);
+
+        ResponseDrain.write(context, data);
+        assertEquals(8192, response.body.size());
+        response.resume();
+        assertEquals(16384, response.body.size());
+        response.resume();
+        assertEquals(20000, response.body.size());
+        // everything is out, but the context completes only once the container says the output is ready again
+        assertFalse(context.await(0, TimeUnit.MILLISECONDS));
+
+        response.resume();
+        assertTrue(context.await(0, TimeUnit.MILLISECONDS));
+        assertArrayEquals(data, response.body.toByteArray());
+    }
+
+    @Test
+    public void fastClientIsAnsweredInOneCallback() throws Exception {
+        Stubs.Context context = context();
+        byte[] data = data(50000);
+        ResponseDrain.write(context, data);
+        assertTrue(context.await(0, TimeUnit.MILLISECONDS));
+        assertArrayEquals(data, ((Stubs.Response) context.getResponse()).body.toByteArray());
+    }
+
+    @Test
+    public void emptyBodyCompletesAtOnce() throws Exception {
+        Stubs.Context context = context();
+        ResponseDrain.write(context, new byte[0]);
+        assertTrue(context.await(0, TimeUnit.MILLISECONDS));
+        assertEquals(0, ((Stubs.Response) context.getResponse()).body.size());
+    }
+
+    @Test
+    public void writeErrorCompletesTheContext() throws Exception {
+        Stubs.Context context = context();
+        Stubs.Response response = (Stubs.Response) context.getResponse();
+        response.slow = true;
+        ResponseDrain.write(context, data(20000));
+        assertFalse(context.await(0, TimeUnit.MILLISECONDS));
+
+        response.fail(new IOException("Broken pipe"));
+        assertTrue(context.await(0, TimeUnit.MILLISECONDS));
+    }
+
+    private static Stubs.Context context() {
+        return Stubs.exchange("GET", "/", Collections.<String, String>emptyMap(), Collections.<String, String>emptyMap(), null);
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        Arrays.fill(data, (byte) 'x');
+        for (int i = 0; i < length; i += 100) {
+            data[i] = (byte) ('0' + i / 100 % 10);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.DELETE;
+import com.craftandresolve.relax.annotation.endpoint.GET;
+import com.craftandresolve.relax.annotation.parameter.Query;
+import com.craftandresolve.relax.annotation.service.Service;
+import com.craftandresolve.relax.exception.NotFoundException;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.reactivex.Completable;
+import io.reactivex.Maybe;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class ReturnTypesTest {
+
+    public static class Pet {
+        public String name;
+
+        Pet(String name) {
+            this.name = name;
+        }
+    }
+
+    @Service(root = "/test", version = "v1")
+    public static class PetService {
+
+        static final AtomicInteger deleted = new AtomicInteger();
+
+        @GET(path = "/maybe", description = "A pet, if there is one")
+        public Maybe<Pet> maybe(@Query(key = "name") String name) {
+            return null != name ? Maybe.just(new Pet(name)) : Maybe.empty();
+        }
+
+        @DELETE(path = "/completable", description = "Deletes all pets")
+        public Completable completable() {
+            return Completable.fromAction(deleted::incrementAndGet);
+        }
+
+        @GET(path = "/future", description = "A pet, maybe later")
+        public CompletableFuture<Pet> future(@Query(key = "name") String name) {
+            return CompletableFuture.supplyAsync(() -> null != name ? new Pet(name) : null);
+        }
+
+        @GET(path = "/stage", description = "A pet that cannot be found")
+        public CompletionStage<Pet> stage() {
+            CompletableFuture<Pet> future = new CompletableFuture<>();
+            future.completeExceptionally(new NotFoundException("pet-not-found", "No such pet"));
+            return future;
+        }
+
+        @GET(path = "/failing", description = "Fails as a Maybe")
+        public Maybe<Pet> failing() {
+            return Maybe.error(new NotFoundException("pet-not-found", "No such pet"));
+        }
+    }
+
+    private RelaxServlet servlet;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("services", PetService.class.getName());
+        parameters.put("directory", "/directory");
+        servlet = new RelaxServlet();
+        servlet.init(Stubs.config(parameters));
+    }
+
+    @After
+    public void tearDown() {
+        servlet.destroy();
+    }
+
+    @Test
+    public void maybeAnswersItsValueOr204() throws Exception {
+        assertAnswer(200, "{\"name\":\"Rex\"}", call("GET", "/test/v1/maybe", "Rex"));
+        assertAnswer(204, "", call("GET", "/test/v1/maybe", null));
+        assertEquals(404, call("GET", "/test/v1/failing", null).status);
+    }
+
+    @Test
+    public void completableAnswers204OnCompletion() throws Exception {
+        PetService.deleted.set(0);
+        assertAnswer(204, "", call("DELETE", "/test/v1/completable", null));
+        assertEquals(1, PetService.deleted.get());
+    }
+
+    @Test
+    public void futureAnswersItsValueOr204() throws Exception {
+        assertAnswer(200, "{\"name\":\"Rex\"}", call("GET", "/test/v1/future", "Rex"));
+        assertAnswer(204, "", call("GET", "/test/v1/future", null));
+    }
+
+    @Test
+    public void failedStageKeepsTheExceptionCode() throws Exception {
+        Stubs.Response response = call("GET", "/test/v1/stage", null);
+        assertEquals(404, response.status);
+        assertEquals("pet-not-found", new JsonParser().parse(response.text()).getAsJsonObject().get("shortText").getAsString());
+    }
+
+    @Test
+    public void directoryNamesTheResponseKinds() throws Exception {
+        Map<String, String> kinds = new HashMap<>();
+        JsonObject directory = new JsonParser().parse(call("GET", "/directory", null).text()).getAsJsonObject();
+        directory.getAsJsonArray("services").get(0).getAsJsonObject().getAsJsonArray("endpoints").forEach(endpoint ->
+                kinds.put(endpoint.getAsJsonObject().get("path").getAsString(), endpoint.getAsJsonObject().get("responseKind").getAsString()));
+        assertEquals("optional", kinds.get("/test/v1/maybe"));
+        assertEquals("none", kinds.get("/test/v1/completable"));
+        assertEquals("optional", kinds.get("/test/v1/future"));
+        assertEquals("optional", kinds.get("/test/v1/stage"));
+    }
+
+    private static void assertAnswer(int status, String body, Stubs.Response response) {
+        assertEquals(status, response.status);
+        assertEquals(body, response.text());
+    }
+
+    private Stubs.Response call(String method, String path, String name) throws Exception {
+        Map<String, String> query = null != name ? Collections.singletonMap("name", name) : Collections.<String, String>emptyMap();
+        Stubs.Context context = Stubs.exchange(method, path, Collections.<String, String>emptyMap(), query, null);
+        servlet.service(context.getRequest(), context.getResponse());
+        if (!context.getRequest().isAsyncStarted()) {
+            context.getResponse().flushBuffer();
+        }
+        assertTrue(!context.getRequest().isAsyncStarted() || context.await(5, TimeUnit.SECONDS));
+        return (Stubs.Response) context.getResponse();
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.processor.RouteProcessor;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.reactivex.Single;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+
+public class RouteTableTest {
+
+    private static final String SERVICE = "sample.SampleService";
+
+    private static final String SOURCE = String.join("\n",
+            "package sample;",
+            "",
+            "import com.craftandresolve.relax.annotation.endpoint.DELETE;",
+            "import com.craftandresolve.relax.annotation.endpoint.GET;",
+            "import com.craftandresolve.relax.annotation.endpoint.POST;",
+            "import com.craftandresolve.relax.annotation.entity.Format;",
+            "import com.craftandresolve.relax.annotation.parameter.Body;",
+            "import com.craftandresolve.relax.annotation.parameter.Header;",
+            "import com.craftandresolve.relax.annotation.parameter.Path;",
+            "import com.craftandresolve.relax.annotation.parameter.Query;",
+            "import com.craftandresolve.relax.annotation.service.Service;",
+            "import com.craftandresolve.relax.type.Response;",
+            "import io.reactivex.Completable;",
+            "import io.reactivex.Maybe;",
+            "import io.reactivex.Single;",
+            "",
+            "import javax.servlet.http.HttpServletRequest;",
+            "import java.util.Arrays;",
+            "import java.util.List;",
+            "import java.util.Map;",
+            "",
+            "@Service(root = \"/sample\", version = \"v1\")",
+            "public class SampleService {",
+            "",
+            "    public static class Item {",
+            "        public String name;",
+            "        @Format(\"iso-8601\")",
+            "        public String added;",
+            "    }",
+            "",
+            "    public static class Basket {",
+            "        public String owner;",
+            "        public List<Item> items;",
+            "        public Map<String, Integer> counts;",
+            "        public Basket next;",
+            "    }",
+            "",
+            "    @GET(path = \"/basket/{owner}\", description = \"One basket\")",
+            "    public Single<Basket> basket(@Path(key = \"owner\") String owner, @Query(key = \"limit\", format = \"count\") int limit,",
+            "                                 @Header(key = \"X-Trace\") String trace) {",
+            "        Basket basket = new Basket();",
+            "        basket.owner = owner + limit + trace;",
+            "        return Single.just(basket);",
+            "    }",
+            "",
+            "    @POST(path = \"/basket\", description = \"Store a basket\")",
+            "    public Single<Response<Basket>> store(@Body Basket basket, HttpServletRequest request) {",
+            "        return Single.just(Response.created(\"/basket/\" + basket.owner, basket));",
+            "    }",
+            "",
+            "    @DELETE(path = \"/basket/{owner}\", description = \"Drop a basket\")",
+            "    public Completable drop(@Path(key = \"owner\") String owner) {",
+            "        return Completable.complete();",
+            "    }",
+            "",
+            "    @GET(path = \"/owners\", description = \"Every owner\")",
+            "    public Maybe<List<String>> owners() {",
+            "        return Maybe.just(Arrays.asList(\"a\", \"b\"));",
+            "    }",
+            "",
+            "    public String helper() {",
+            "        return \"not an endpoint\";",
+            "    }",
+            "}",
+            "");
+
+    @Test
+    public void generatedTableMatchesReflection() throws Exception {
+        Class<?> service = Compilation.compile(SERVICE, SOURCE, Collections.singletonList(new RouteProcessor()), "-Arelax.routes=true")
+                .loadClass(SERVICE);
+        RouteTable table = (RouteTable) service.getClassLoader().loadClass(SERVICE + "_RelaxRoutes").getConstructor().newInstance();
+
+        List<RouteTable.Route> generated = sorted(table.routes());
+        List<RouteTable.Route> reflected = sorted(RelaxServlet.reflectRoutes(service));
+        assertEquals(4, generated.size());
+        assertEquals(reflected.size(), generated.size());
+        for (int i = 0; i < generated.size(); ++i) {
+            RouteTable.Route expected = reflected.get(i);
+            RouteTable.Route actual = generated.get(i);
+            assertEquals(expected.verb, actual.verb);
+            assertEquals(expected.path, actual.path);
+            assertEquals(expected.description, actual.description);
+            assertEquals(expected.method, actual.method);
+            assertArrayEquals(expected.parameterTypes, actual.parameterTypes);
+            assertEquals(expected.arguments.length, actual.arguments.length);
+            for (int j = 0; j < expected.arguments.length; ++j) {
+                assertEquals(expected.arguments[j].kind, actual.arguments[j].kind);
+                assertEquals(expected.arguments[j].key, actual.arguments[j].key);
+                assertEquals(expected.arguments[j].format, actual.arguments[j].format);
+            }
+            assertNotNull(actual.invoker);
+            assertNotNull(actual.response);
+        }
+    }
+
+    @Test
+    public void generatedInvokerCallsTheMethod() throws Exception {
+        Class<?> service = Compilation.compile(SERVICE, SOURCE, Collections.singletonList(new RouteProcessor()), "-Arelax.routes=true")
+                .loadClass(SERVICE);
+        RouteTable table = (RouteTable) service.getClassLoader().loadClass(SERVICE + "_RelaxRoutes").getConstructor().newInstance();
+        for (RouteTable.Route route : table.routes()) {
+            if ("basket".equals(route.method)) {
+                Object basket = ((Single<?>) route.invoker.invoke(service.getConstructor().newInstance(), new Object[] {"ann", 3, "t"})).blockingGet();
+                assertEquals("ann3t", basket.getClass().getField("owner").get(basket));
+                return;
+            }
+        }
+        fail("no route for basket");
+    }
+
+    @Test
+    public void generatedDirectoryMatchesReflection() throws Exception {
+        Class<?> generated = Compilation.compile(SERVICE, SOURCE, Collections.singletonList(new RouteProcessor()), "-Arelax.routes=true")
+                .loadClass(SERVICE);
+        Class<?> reflected = Compilation.compile(SERVICE, SOURCE, Collections.emptyList()).loadClass(SERVICE);
+        assertEquals(directory(reflected), directory(generated));
+    }
+
+    @Test
+    public void nothingIsGeneratedWithoutTheOption() throws Exception {
+        ClassLoader loader = Compilation.compile(SERVICE, SOURCE, Collections.singletonList(new RouteProcessor()));
+        assertNotNull(loader.loadClass(SERVICE));
+        try {
+            loader.loadClass(SERVICE + "_RelaxRoutes");
+            fail("a route table was generated without -Arelax.routes=true");
+        }
+        catch (ClassNotFoundException e) {
+            assertNull(e.getCause());
+        }
+    }
+
+    private static List<RouteTable.Route> sorted(List<RouteTable.Route> routes) {
+        List<RouteTable.Route> sorted = new ArrayList<>(routes);
+        sorted.sort(Comparator.comparing(route -> route.verb + " " + route.path));
+        return sorted;
+    }
+
+    private static JsonElement directory(Class<?> service) throws Exception {
+        RelaxServlet servlet = new RelaxServlet();
+        servlet.initialize("/directory", Collections.<Class<?>>singletonList(service), null, null, false);
+        try {
+            Stubs.Response response = RelaxServletTest.call(servlet, "GET", "/directory", Collections.<String, String>emptyMap(), null);
+            assertEquals(200, response.status);
+            JsonObject directory = new JsonParser().parse(response.text()).getAsJsonObject();
+            // reflection lists the endpoints in no particular order
+            for (JsonElement entry : directory.getAsJsonArray("services")) {
+                JsonArray endpoints = entry.getAsJsonObject().getAsJsonArray("endpoints");
+                List<JsonElement> ordered = new ArrayList<>();
+                endpoints.forEach(ordered::add);
+                ordered.sort(Comparator.comparing(endpoint -> endpoint.getAsJsonObject().get("method").getAsString()
+                        + " " + endpoint.getAsJsonObject().get("path").getAsString()));
+                JsonArray sorted = new JsonArray();
+                ordered.forEach(sorted::add);
+                entry.getAsJsonObject().add("endpoints", sorted);
+            }
+            return directory;
+        }
+        finally {
+            servlet.destroy();
+        }
+    }
+}
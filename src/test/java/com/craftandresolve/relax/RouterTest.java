@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+public class RouterTest {
+
+    private Router<String> router;
+
+    @Before
+    public void setUp() {
+        router = new Router<>();
+        router.add("GET", "/users/{id}", "user");
+        router.add("GET", "/users/me", "me");
+        router.add("GET", "/users/me/settings", "settings");
+        router.add("GET", "/users/{id}/friends", "friends");
+        router.add("GET", "/users/{id}/friends/{friend}", "friend");
+        router.add("GET", "", "root");
+        router.add("DELETE", "/users/{id}", "delete");
+    }
+
+    @Test
+    public void literalWinsOverParameter() {
+        assertEquals("me", router.match("GET", "/users/me").target);
+        assertEquals("user", router.match("GET", "/users/you").target);
+    }
+
+    @Test
+    public void deadEndLiteralBacktracksIntoParameter() {
+        // "me" is a literal branch, but only /users/{id}/friends goes on to "friends"
+        Router.Match<String> match = router.match("GET", "/users/me/friends");
+        assertEquals("friends", match.target);
+        assertEquals("me", match.values[0]);
+
+        match = router.match("GET", "/users/me/friends/ann");
+        assertEquals("friend", match.target);
+        assertArrayEquals(new String[] {"me", "ann"}, match.values);
+    }
+
+    @Test
+    public void parametersAreCapturedInPatternOrder() {
+        assertArrayEquals(new String[] {"bob", "ann"}, router.match("GET", "/users/bob/friends/ann").values);
+        assertArrayEquals(new String[] {"id", "friend"}, Router.parameterLabels("/users/{id}/friends/{friend}"));
+    }
+
+    @Test
+    public void trailingSlashIsIgnored() {
+        assertEquals("user", router.match("GET", "/users/bob/").target);
+        assertEquals("settings", router.match("GET", "/users/me/settings/").target);
+        assertEquals("root", router.match("GET", "/").target);
+        assertEquals("root", router.match("GET", null).target);
+    }
+
+    @Test
+    public void emptySegmentsDoNotMatch() {
+        assertNull(router.match("GET", "/users/"));
+        assertNull(router.match("GET", "/users//"));
+        assertNull(router.match("GET", "/users//friends"));
+        assertNull(router.match("GET", "//users/bob"));
+    }
+
+    @Test
+    public void valuesArePassedOnAsTheContainerDecodedThem() {
+        // getPathInfo() is decoded already; decoding again would turn a literal "%41" into "A"
+        assertEquals("caf\u00e9 au lait", router.match("GET", "/users/caf\u00e9 au lait").values[0]);
+        assertEquals("100%41", router.match("GET", "/users/100%41").values[0]);
+    }
+
+    @Test
+    public void unknownPathsDoNotMatch() {
+        assertNull(router.match("GET", "/groups/1"));
+        assertNull(router.match("GET", "/users/bob/enemies"));
+        assertNull(router.match("GET", "/users/me/settings/more"));
+    }
+
+    @Test
+    public void wrongVerbDoesNotMatch() {
+        assertNull(router.match("POST", "/users/bob"));
+        assertNull(router.match("DELETE", "/users/me/settings"));
+        assertEquals("delete", router.match("DELETE", "/users/me").target);
+    }
+}
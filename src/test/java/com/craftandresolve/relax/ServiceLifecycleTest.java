@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.GET;
+import com.craftandresolve.relax.annotation.service.Service;
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import org.junit.Test;
+
+import javax.servlet.ServletException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class ServiceLifecycleTest {
+
+    public static class Identity {
+        public int instance;
+    }
+
+    @Service(root = "/test", version = "v1")
+    public static class CountedService {
+
+        static final AtomicInteger created = new AtomicInteger();
+
+        final int instance = created.incrementAndGet();
+
+        @GET(path = "/first", description = "Names the instance")
+        public Single<Identity> first() {
+            return identity();
+        }
+
+        @GET(path = "/second", description = "Names the instance")
+        public Single<Identity> second() {
+            return identity();
+        }
+
+        private Single<Identity> identity() {
+            Identity identity = new Identity();
+            identity.instance = instance;
+            return Single.just(identity);
+        }
+    }
+
+    public static class CountingFactory implements ServiceFactory {
+
+        static final AtomicInteger calls = new AtomicInteger();
+        static volatile Object supplied;
+
+        @Override
+        public Object create(Class<?> serviceClass) throws Exception {
+            calls.incrementAndGet();
+            supplied = serviceClass.getConstructor().newInstance();
+            return supplied;
+        }
+    }
+
+    @Service(root = "/test", version = "v1")
+    public static class ManagedService implements ServiceLifecycle {
+
+        Completable start = Completable.complete();
+        volatile boolean startDisposed;
+        volatile boolean startDisposedBeforeStop;
+        final AtomicInteger stops = new AtomicInteger();
+
+        @GET(path = "/ping", description = "Answers at once")
+        public Single<Identity> ping() {
+            return Single.just(new Identity());
+        }
+
+        @Override
+        public Completable start() {
+            return start.doOnDispose(() -> startDisposed = true);
+        }
+
+        @Override
+        public Completable stop() {
+            return Completable.fromAction(() -> {
+                startDisposedBeforeStop = startDisposed;
+                stops.incrementAndGet();
+            });
+        }
+    }
+
+    @Test
+    public void oneInstanceServesEveryEndpointAndRoot() throws Exception {
+        CountedService.created.set(0);
+        Map<String, List<Class<?>>> roots = new LinkedHashMap<>();
+        roots.put("", Collections.<Class<?>>singletonList(CountedService.class));
+        roots.put("/other", Collections.<Class<?>>singletonList(CountedService.class));
+        RelaxServlet servlet = new RelaxServlet();
+        servlet.initialize(null, roots, null, null, false);
+        try {
+            assertEquals(1, CountedService.created.get());
+            for (String path : Arrays.asList("/test/v1/first", "/test/v1/second", "/other/test/v1/first")) {
+                Stubs.Response response = RelaxServletTest.call(servlet, "GET", path, Collections.<String, String>emptyMap(), null);
+                assertEquals(path, 200, response.status);
+                assertEquals(path, "{\"instance\":1}", response.body.toString("UTF-8"));
+            }
+        }
+        finally {
+            servlet.destroy();
+        }
+    }
+
+    @Test
+    public void servicesComeFromTheNamedFactory() throws Exception {
+        CountingFactory.calls.set(0);
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("services", CountedService.class.getName());
+        parameters.put("servicefactory", CountingFactory.class.getName());
+        RelaxServlet servlet = new RelaxServlet();
+        servlet.init(Stubs.config(parameters));
+        try {
+            assertEquals(1, CountingFactory.calls.get());
+            Stubs.Response response = RelaxServletTest.call(servlet, "GET", "/test/v1/first", Collections.<String, String>emptyMap(), null);
+            assertEquals("{\"instance\":" + ((CountedService) CountingFactory.supplied).instance + "}", response.body.toString("UTF-8"));
+        }
+        finally {
+            servlet.destroy();
+        }
+    }
+
+    @Test
+    public void initWaitsForStartAndDestroyStops() throws Exception {
+        ManagedService service = new ManagedService();
+        boolean[] started = new boolean[1];
+        service.start = Completable.timer(100, TimeUnit.MILLISECONDS).doOnComplete(() -> started[0] = true);
+        RelaxServlet servlet = servlet(service, Collections.<String, String>emptyMap());
+        assertTrue(started[0]);
+        assertEquals(0, service.stops.get());
+
+        servlet.destroy();
+        assertEquals(1, service.stops.get());
+    }
+
+    @Test
+    public void failedStartStopsTheServices() throws Exception {
+        ManagedService service = new ManagedService();
+        service.start = Completable.error(new IllegalStateException("no database"));
+        try {
+            servlet(service, Collections.<String, String>emptyMap());
+            fail("init succeeded although a service did not start");
+        }
+        catch (ServletException e) {
+            assertSame(IllegalStateException.class, e.getCause().getClass());
+        }
+        assertEquals(1, service.stops.get());
+    }
+
+    @Test
+    public void startTimeoutDisposesTheStartsBeforeStopping() throws Exception {
+        ManagedService service = new ManagedService();
+        service.start = Completable.never();
+        try {
+            servlet(service, Collections.singletonMap("lifecycletimeout", "50"));
+            fail("init succeeded although a service never started");
+        }
+        catch (ServletException e) {
+            assertTrue(e.getMessage().contains("50 ms"));
+        }
+        assertTrue(service.startDisposedBeforeStop);
+        assertEquals(1, service.stops.get());
+    }
+
+    @Test
+    public void malformedLifecycleTimeoutFailsInit() throws Exception {
+        ManagedService service = new ManagedService();
+        try {
+            servlet(service, Collections.singletonMap("lifecycletimeout", "soon"));
+            fail("init accepted a lifecycletimeout that is not a number");
+        }
+        catch (ServletException e) {
+            assertSame(NumberFormatException.class, e.getCause().getClass());
+        }
+        assertFalse(service.startDisposed);
+    }
+
+    private static RelaxServlet servlet(ManagedService service, Map<String, String> parameters) throws Exception {
+        Map<String, String> config = new HashMap<>(parameters);
+        config.put("services", ManagedService.class.getName());
+        RelaxServlet servlet = new RelaxServlet() {
+            @Override
+            protected Object createService(Class<?> serviceClass) {
+                return service;
+            }
+        };
+        servlet.init(Stubs.config(config));
+        return servlet;
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.Coalesced;
+import com.craftandresolve.relax.annotation.endpoint.GET;
+import com.craftandresolve.relax.annotation.service.Bulkhead;
+import com.craftandresolve.relax.annotation.service.Service;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import io.reactivex.subjects.MaybeSubject;
+import io.reactivex.subjects.SingleSubject;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class SingleFlightTest {
+
+    public static class Count {
+        public int value;
+    }
+
+    @Service(root = "/test", version = "v1")
+    public static class SlowService {
+
+        final AtomicInteger calls = new AtomicInteger();
+        volatile SingleSubject<Count> pending;
+
+        @GET(path = "/count", description = "Answers when the test says so")
+        @Coalesced
+        public Single<Count> count() {
+            pending = SingleSubject.create();
+            calls.incrementAndGet();
+            return pending;
+        }
+    }
+
+    @Service(root = "/held", version = "v1")
+    @Bulkhead(threads = 1, queue = 0)
+    public static class HeldService {
+
+        volatile SingleSubject<Count> pending;
+
+        @GET(path = "/count", description = "Answers when the test says so")
+        @Coalesced
+        public Single<Count> count() {
+            pending = SingleSubject.create();
+            return pending;
+        }
+
+        @GET(path = "/quick", description = "Answers at once")
+        public Single<Count> quick() {
+            return Single.just(new Count());
+        }
+    }
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    public void identicalRequestsShareOneFlight() throws Exception {
+        SingleFlight flight = flight();
+        MaybeSubject<Object> result = MaybeSubject.create();
+        Maybe<Object> first = flight.join("a", () -> call(result));
+        Maybe<Object> second = flight.join("a", () -> call(result));
+        assertSame(first, second);
+        assertEquals(1, calls.get());
+        assertEquals(1, flight.invocations.sum());
+        assertEquals(1, flight.joined.sum());
+
+        first.test();
+        second.test();
+        result.onSuccess("done");
+        first.test().assertResult("done");
+        assertEquals(0, flight.size());
+    }
+
+    @Test
+    public void differentKeysFlySeparately() throws Exception {
+        SingleFlight flight = flight();
+        assertNotSame(flight.join("a", () -> call(MaybeSubject.create())), flight.join("b", () -> call(MaybeSubject.create())));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void finishedFlightsAreForgotten() throws Exception {
+        SingleFlight flight = flight();
+        flight.join("a", () -> call(Maybe.error(new IllegalStateException()))).test().assertError(IllegalStateException.class);
+        assertEquals(0, flight.size());
+        flight.join("a", () -> call(Maybe.just("again"))).test().assertResult("again");
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void servletInvokesOnceForConcurrentRequests() throws Exception {
+        SlowService service = new SlowService();
+        RelaxServlet servlet = new RelaxServlet() {
+            @Override
+            protected Object createService(Class<?> serviceClass) {
+                return service;
+            }
+        };
+        servlet.initialize(null, Collections.<Class<?>>singletonList(SlowService.class), null, null, false);
+        try {
+            Stubs.Context first = start(servlet);
+            Stubs.Context second = start(servlet);
+            long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (null == service.pending && System.nanoTime() < until) {
+                Thread.sleep(1);
+            }
+            Count count = new Count();
+            count.value = 7;
+            service.pending.onSuccess(count);
+
+            for (Stubs.Context context : new Stubs.Context[] {first, second}) {
+                assertTrue(context.await(5, TimeUnit.SECONDS));
+                assertEquals("{\"value\":7}", ((Stubs.Response) context.getResponse()).body.toString("UTF-8"));
+            }
+            assertEquals(1, service.calls.get());
+        }
+        finally {
+            servlet.destroy();
+        }
+    }
+
+    @Test
+    public void flightKeepsItsPermitAfterTheLeaderLeaves() throws Exception {
+        HeldService service = new HeldService();
+        RelaxServlet servlet = servlet(service, Collections.<String, String>emptyMap());
+        try {
+            Stubs.Context leader = start(servlet, "/held/v1/count");
+            awaitPending(service);
+            Stubs.Context follower = start(servlet, "/held/v1/count");
+
+            leader.disconnect();
+            // the flight is still at work for the follower, so the pool has no room for anything else
+            assertEquals(503, RelaxServletTest.call(servlet, "GET", "/held/v1/quick", Collections.<String, String>emptyMap(), null).status);
+
+            Count count = new Count();
+            count.value = 7;
+            service.pending.onSuccess(count);
+            assertTrue(follower.await(5, TimeUnit.SECONDS));
+            assertEquals(200, ((Stubs.Response) follower.getResponse()).status);
+            assertEquals("{\"value\":7}", ((Stubs.Response) follower.getResponse()).body.toString("UTF-8"));
+            // the permit came back with the end of the flight
+            assertEquals(200, RelaxServletTest.call(servlet, "GET", "/held/v1/quick", Collections.<String, String>emptyMap(), null).status);
+        }
+        finally {
+            servlet.destroy();
+        }
+    }
+
+    @Test
+    public void followersAreAdmittedAgainstTheConcurrencyLimit() throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("concurrencylimit", "aimd");
+        parameters.put("concurrencylimitmax", "1");
+        HeldService service = new HeldService();
+        RelaxServlet servlet = servlet(service, parameters);
+        try {
+            Stubs.Context leader = start(servlet, "/held/v1/count");
+            awaitPending(service);
+
+            Stubs.Response follower = RelaxServletTest.call(servlet, "GET", "/held/v1/count", Collections.<String, String>emptyMap(), null);
+            assertEquals(503, follower.status);
+            assertTrue(follower.body.toString("UTF-8").contains("concurrency-limit"));
+
+            service.pending.onSuccess(new Count());
+            assertTrue(leader.await(5, TimeUnit.SECONDS));
+            assertEquals(200, ((Stubs.Response) leader.getResponse()).status);
+        }
+        finally {
+            servlet.destroy();
+        }
+    }
+
+    private Maybe<Object> call(Maybe<Object> result) {
+        calls.incrementAndGet();
+        return result;
+    }
+
+    private static Stubs.Context start(RelaxServlet servlet) throws Exception {
+        return start(servlet, "/test/v1/count");
+    }
+
+    private static Stubs.Context start(RelaxServlet servlet, String path) throws Exception {
+        Stubs.Context context = Stubs.exchange("GET", path, Collections.<String, String>emptyMap(),
+                Collections.<String, String>emptyMap(), null);
+        servlet.service(context.getRequest(), context.getResponse());
+        return context;
+    }
+
+    private static RelaxServlet servlet(HeldService service, Map<String, String> parameters) throws Exception {
+        Map<String, String> config = new HashMap<>(parameters);
+        config.put("services", HeldService.class.getName());
+        RelaxServlet servlet = new RelaxServlet() {
+            @Override
+            protected Object createService(Class<?> serviceClass) {
+                return service;
+            }
+        };
+        servlet.init(Stubs.config(config));
+        return servlet;
+    }
+
+    private static void awaitPending(HeldService service) throws InterruptedException {
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (null == service.pending && System.nanoTime() < until) {
+            Thread.sleep(1);
+        }
+        assertNotNull(service.pending);
+    }
+
+    private static SingleFlight flight() throws Exception {
+        Method method = SlowService.class.getMethod("count");
+        Endpoint endpoint = new Endpoint("GET", "/count", null, method, null, null);
+        return new SingleFlight(endpoint, method.getAnnotation(Coalesced.class));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.GET;
+import com.craftandresolve.relax.annotation.service.Service;
+import com.craftandresolve.relax.exception.NotFoundException;
+import io.reactivex.Single;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class StacklessExceptionsTest {
+
+    public static class Message {
+        public String text;
+    }
+
+    @Service(root = "/test", version = "v1")
+    public static class FailingService {
+
+        volatile NotFoundException thrown;
+
+        @GET(path = "/missing", description = "Answers with a not-found exception")
+        public Single<Message> missing() {
+            thrown = new NotFoundException("message-not-found", "No such message");
+            return Single.error(thrown);
+        }
+
+        @GET(path = "/broken", description = "Fails unexpectedly")
+        public Single<Message> broken() {
+            throw new IllegalStateException("broken");
+        }
+    }
+
+    @Test
+    public void onlyTheStacklessServletDropsStackTraces() throws Exception {
+        FailingService stacklessService = new FailingService();
+        FailingService tracedService = new FailingService();
+        RelaxServlet stackless = servlet(stacklessService, true, new ArrayList<>());
+        RelaxServlet traced = servlet(tracedService, false, new ArrayList<>());
+        try {
+            assertEquals(404, get(stackless, "/test/v1/missing").status);
+            assertEquals(0, stacklessService.thrown.getStackTrace().length);
+
+            assertEquals(404, get(traced, "/test/v1/missing").status);
+            assertTrue(0 < tracedService.thrown.getStackTrace().length);
+
+            // nothing outside the servlet's endpoint calls is affected
+            assertTrue(0 < new NotFoundException("a", "b").getStackTrace().length);
+        }
+        finally {
+            stackless.destroy();
+            traced.destroy();
+        }
+    }
+
+    @Test
+    public void wrappedFailuresAreLogged() throws Exception {
+        List<Throwable> logged = new ArrayList<>();
+        RelaxServlet servlet = servlet(new FailingService(), true, logged);
+        try {
+            Stubs.Response response = get(servlet, "/test/v1/broken");
+            assertEquals(500, response.status);
+            assertEquals(1, logged.size());
+            Throwable cause = logged.get(0);
+            while (null != cause.getCause()) {
+                cause = cause.getCause();
+            }
+            assertSame(IllegalStateException.class, cause.getClass());
+            assertEquals("broken", cause.getMessage());
+        }
+        finally {
+            servlet.destroy();
+        }
+    }
+
+    private static RelaxServlet servlet(FailingService service, boolean stackless, List<Throwable> logged) throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("services", FailingService.class.getName());
+        if (stackless) {
+            parameters.put("stacklessexceptions", "true");
+        }
+        RelaxServlet servlet = new RelaxServlet() {
+            @Override
+            protected Object createService(Class<?> serviceClass) {
+                return service;
+            }
+
+            @Override
+            public void log(String message, Throwable t) {
+                logged.add(t);
+            }
+        };
+        servlet.init(Stubs.config(parameters));
+        return servlet;
+    }
+
+    private static Stubs.Response get(RelaxServlet servlet, String path) throws Exception {
+        return RelaxServletTest.call(servlet, "GET", path, Collections.<String, String>emptyMap(), null);
+    }
+}
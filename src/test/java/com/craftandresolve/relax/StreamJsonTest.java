@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.GET;
+import com.craftandresolve.relax.annotation.endpoint.Streaming;
+import com.craftandresolve.relax.annotation.service.Service;
+import io.reactivex.Single;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class StreamJsonTest {
+
+    public static class Entry {
+        public int id;
+        public String name;
+        public List<String> tags;
+        public Map<String, Double> scores;
+    }
+
+    public static class Catalog {
+        public String title;
+        public List<Entry> entries = new ArrayList<>();
+    }
+
+    @Service(root = "/test", version = "v1")
+    public static class CatalogService {
+
+        @GET(path = "/catalog", description = "A large nested body")
+        public Single<Catalog> catalog() {
+            Catalog catalog = new Catalog();
+            catalog.title = "caf\u00e9 <&> \"quoted\"";
+            for (int i = 0; i < 2000; ++i) {
+                Entry entry = new Entry();
+                entry.id = i;
+                entry.name = "entry " + i + " \u2603";
+                entry.tags = i % 3 == 0 ? null : Collections.singletonList("tag" + i);
+                entry.scores = Collections.singletonMap("score", i / 7.0);
+                catalog.entries.add(entry);
+            }
+            return Single.just(catalog);
+        }
+
+        @GET(path = "/buffered", description = "Never streamed")
+        @Streaming(false)
+        public Single<Catalog> buffered() {
+            return catalog();
+        }
+
+        @GET(path = "/streamed", description = "Always streamed")
+        @Streaming
+        public Single<Catalog> streamed() {
+            return catalog();
+        }
+    }
+
+    @Test
+    public void streamedBodyIsTheBufferedBody() throws Exception {
+        for (String pretty : new String[] {"false", "true"}) {
+            RelaxServlet buffering = servlet("false", pretty, "false");
+            RelaxServlet streaming = servlet("true", pretty, "false");
+            try {
+                byte[] buffered = get(buffering, "/test/v1/catalog").body.toByteArray();
+                byte[] streamed = get(streaming, "/test/v1/catalog").body.toByteArray();
+                assertTrue(buffered.length > 100000);
+                assertArrayEquals("prettyjson=" + pretty, buffered, streamed);
+            }
+            finally {
+                buffering.destroy();
+                streaming.destroy();
+            }
+        }
+    }
+
+    @Test
+    public void endpointsOverrideTheInitParam() throws Exception {
+        // only a buffered body is hashed for an ETag, which tells the two paths apart
+        RelaxServlet streaming = servlet("true", "false", "true");
+        RelaxServlet buffering = servlet("false", "false", "true");
+        try {
+            assertNull(get(streaming, "/test/v1/catalog").headers.get("ETag"));
+            assertNotNull(get(streaming, "/test/v1/buffered").headers.get("ETag"));
+
+            assertNotNull(get(buffering, "/test/v1/catalog").headers.get("ETag"));
+            Stubs.Response streamed = get(buffering, "/test/v1/streamed");
+            assertNull(streamed.headers.get("ETag"));
+            assertEquals(200, streamed.status);
+            assertEquals("application/json", streamed.headers.get("Content-Type"));
+            assertFalse(streamed.text().isEmpty());
+        }
+        finally {
+            streaming.destroy();
+            buffering.destroy();
+        }
+    }
+
+    private static RelaxServlet servlet(String streamJson, String prettyJson, String etags) throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("services", CatalogService.class.getName());
+        parameters.put("streamjson", streamJson);
+        parameters.put("prettyjson", prettyJson);
+        parameters.put("etags", etags);
+        RelaxServlet servlet = new RelaxServlet();
+        servlet.init(Stubs.config(parameters));
+        return servlet;
+    }
+
+    private static Stubs.Response get(RelaxServlet servlet, String path) throws Exception {
+        return RelaxServletTest.call(servlet, "GET", path, Collections.<String, String>emptyMap(), null);
+    }
+}
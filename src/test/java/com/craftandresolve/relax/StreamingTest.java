@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.GET;
+import com.craftandresolve.relax.annotation.service.Service;
+import com.craftandresolve.relax.exception.NotFoundException;
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class StreamingTest {
+
+    public static class Item {
+        public int n;
+
+        Item(int n) {
+            this.n = n;
+        }
+    }
+
+    @Service(root = "/test", version = "v1")
+    public static class ItemService {
+
+        final AtomicInteger produced = new AtomicInteger();
+        final CountDownLatch cancelled = new CountDownLatch(1);
+
+        @GET(path = "/items", description = "Three items")
+        public Flowable<Item> items() {
+            return Flowable.range(1, 3).map(Item::new);
+        }
+
+        @GET(path = "/observed", description = "Three items without backpressure")
+        public Observable<Item> observed() {
+            return Observable.range(1, 3).map(Item::new);
+        }
+
+        @GET(path = "/none", description = "No items")
+        public Flowable<Item> none() {
+            return Flowable.empty();
+        }
+
+        @GET(path = "/many", description = "Counts every item it produces")
+        public Flowable<Item> many() {
+            return Flowable.range(1, 1000).map(Item::new).doOnNext(item -> produced.incrementAndGet());
+        }
+
+        @GET(path = "/endless", description = "Produces until cancelled")
+        public Flowable<Item> endless() {
+            return Flowable.range(1, Integer.MAX_VALUE).map(Item::new).doOnCancel(cancelled::countDown);
+        }
+
+        @GET(path = "/failing", description = "Fails after two items")
+        public Flowable<Item> failing() {
+            return Flowable.range(1, 2).map(Item::new).concatWith(Flowable.<Item>error(new IllegalStateException("gone")));
+        }
+
+        @GET(path = "/missing", description = "Fails before any item")
+        public Flowable<Item> missing() {
+            return Flowable.error(new NotFoundException("item-not-found", "No items."));
+        }
+    }
+
+    private final ItemService service = new ItemService();
+    private RelaxServlet servlet;
+
+    @Before
+    public void setUp() throws Exception {
+        servlet = new RelaxServlet() {
+            @Override
+            protected Object createService(Class<?> serviceClass) {
+                return service;
+            }
+        };
+        servlet.initialize(null, Collections.<Class<?>>singletonList(ItemService.class), null, null, false);
+    }
+
+    @After
+    public void tearDown() {
+        servlet.destroy();
+    }
+
+    @Test
+    public void itemsAreFramedAsAJsonArray() throws Exception {
+        Stubs.Response response = RelaxServletTest.call(servlet, "GET", "/test/v1/items", Collections.<String, String>emptyMap(), null);
+        assertEquals(200, response.status);
+        assertEquals("application/json", response.headers.get("Content-Type"));
+        assertEquals("[{\"n\":1},{\"n\":2},{\"n\":3}]", response.text());
+    }
+
+    @Test
+    public void emptyStreamIsAnEmptyArray() throws Exception {
+        Stubs.Response response = RelaxServletTest.call(servlet, "GET", "/test/v1/none", Collections.<String, String>emptyMap(), null);
+        assertEquals("[]", response.text());
+    }
+
+    @Test
+    public void observableIsStreamedToo() throws Exception {
+        Stubs.Response response = RelaxServletTest.call(servlet, "GET", "/test/v1/observed", Collections.<String, String>emptyMap(), null);
+        assertEquals("[{\"n\":1},{\"n\":2},{\"n\":3}]", response.text());
+    }
+
+    @Test
+    public void ndjsonIsOneItemPerLine() throws Exception {
+        Map<String, String> headers = Collections.singletonMap("Accept", "application/x-ndjson");
+        Stubs.Response response = RelaxServletTest.call(servlet, "GET", "/test/v1/items", headers, null);
+        assertEquals("application/x-ndjson", response.headers.get("Content-Type"));
+        assertEquals("{\"n\":1}\n{\"n\":2}\n{\"n\":3}\n", response.text());
+    }
+
+    @Test
+    public void slowClientHoldsBackTheProducer() throws Exception {
+        Stubs.Context context = Stubs.exchange("GET", "/test/v1/many", Collections.<String, String>emptyMap(),
+                Collections.<String, String>emptyMap(), null);
+        Stubs.Response response = (Stubs.Response) context.getResponse();
+        response.slow = true;
+        servlet.service(context.getRequest(), context.getResponse());
+
+        awaitText(response, "[{\"n\":1}");
+        Thread.sleep(50);
+        // the output took one write and is not ready again; nothing more was asked for
+        assertEquals(1, service.produced.get());
+
+        response.resume();
+        assertEquals("[{\"n\":1},{\"n\":2}", response.text());
+        assertEquals(2, service.produced.get());
+
+        response.slow = false;
+        response.resume();
+        assertTrue(context.await(5, TimeUnit.SECONDS));
+        assertEquals(1000, service.produced.get());
+        assertTrue(response.text().endsWith(",{\"n\":1000}]"));
+    }
+
+    @Test
+    public void errorAfterTheFirstItemCutsTheBodyShort() throws Exception {
+        Stubs.Response response = RelaxServletTest.call(servlet, "GET", "/test/v1/failing", Collections.<String, String>emptyMap(), null);
+        // the status line is gone already
+        assertEquals(200, response.status);
+        assertEquals("[{\"n\":1},{\"n\":2}", response.text());
+    }
+
+    @Test
+    public void errorBeforeTheFirstItemIsAnErrorResponse() throws Exception {
+        Stubs.Response response = RelaxServletTest.call(servlet, "GET", "/test/v1/missing", Collections.<String, String>emptyMap(), null);
+        assertEquals(404, response.status);
+        assertTrue(response.text().contains("item-not-found"));
+    }
+
+    @Test
+    public void disconnectCancelsTheStream() throws Exception {
+        Stubs.Context context = Stubs.exchange("GET", "/test/v1/endless", Collections.<String, String>emptyMap(),
+                Collections.<String, String>emptyMap(), null);
+        Stubs.Response response = (Stubs.Response) context.getResponse();
+        response.slow = true;
+        servlet.service(context.getRequest(), context.getResponse());
+        awaitText(response, "[{\"n\":1}");
+
+        context.disconnect();
+        assertTrue(service.cancelled.await(5, TimeUnit.SECONDS));
+        assertTrue(context.await(5, TimeUnit.SECONDS));
+        assertFalse(response.text().endsWith("]"));
+    }
+
+    private static void awaitText(Stubs.Response response, String text) throws InterruptedException {
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!response.text().equals(text) && System.nanoTime() < until) {
+            Thread.sleep(1);
+        }
+        assertEquals(text, response.text());
+    }
+}
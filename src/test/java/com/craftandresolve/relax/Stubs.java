@@ -0,0 +1,486 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * In-memory servlet request, response and async context, enough to drive RelaxServlet without
+ * a container. Anything the servlet is not expected to call fails with UnsupportedOperationException.
+ */
+final class Stubs {
+
+    private static final HttpServletRequest NO_REQUEST = unsupported(HttpServletRequest.class);
+    private static final HttpServletResponse NO_RESPONSE = unsupported(HttpServletResponse.class);
+
+    private Stubs() {
+    }
+
+    static final class Request extends HttpServletRequestWrapper {
+        private final String method;
+        private final String path;
+        private final Map<String, String> headers;
+        private final Map<String, String> parameters;
+        private final byte[] body;
+        private final Map<String, Object> attributes = new HashMap<>();
+
+        Context context;
+        private volatile boolean asyncStarted;
+
+        Request(String method, String path, Map<String, String> headers, Map<String, String> parameters, byte[] body) {
+            super(NO_REQUEST);
+            this.method = method;
+            this.path = path;
+            this.headers = headers;
+            this.parameters = parameters;
+            this.body = body;
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+
+        @Override
+        public String getPathInfo() {
+            return path;
+        }
+
+        @Override
+        public String getRequestURI() {
+            return path;
+        }
+
+        @Override
+        public String getProtocol() {
+            return "HTTP/1.1";
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return headers.get(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            String value = headers.get(name);
+            return Collections.enumeration(null != value ? Collections.singletonList(value) : Collections.<String>emptyList());
+        }
+
+        @Override
+        public long getDateHeader(String name) {
+            return -1;
+        }
+
+        @Override
+        public String getParameter(String name) {
+            return parameters.get(name);
+        }
+
+        @Override
+        public String getContentType() {
+            return headers.get("Content-Type");
+        }
+
+        @Override
+        public int getContentLength() {
+            // a chunked body announces no length
+            return null != body && !headers.containsKey("Transfer-Encoding") ? body.length : -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return getContentLength();
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return "UTF-8";
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(null != body ? body : new byte[0]);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return input.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return 0 == input.available();
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    try {
+                        if (0 < input.available()) {
+                            listener.onDataAvailable();
+                        }
+                        listener.onAllDataRead();
+                    }
+                    catch (IOException e) {
+                        listener.onError(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public AsyncContext startAsync() {
+            asyncStarted = true;
+            return context;
+        }
+
+        @Override
+        public boolean isAsyncStarted() {
+            return asyncStarted;
+        }
+
+        @Override
+        public AsyncContext getAsyncContext() {
+            return context;
+        }
+    }
+
+    static final class Response extends HttpServletResponseWrapper {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+        final Map<String, String> headers = new HashMap<>();
+        int status = SC_OK;
+
+        // a slow client takes one write at a time, each time resume() is called
+        volatile boolean slow;
+        private volatile boolean ready = true;
+        private volatile WriteListener listener;
+
+        private final ServletOutputStream output = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                synchronized (body) {
+                    body.write(b);
+                }
+                ready = !slow;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                synchronized (body) {
+                    body.write(b, off, len);
+                }
+                ready = !slow;
+            }
+
+            @Override
+            public boolean isReady() {
+                return ready;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                listener = writeListener;
+                try {
+                    writeListener.onWritePossible();
+                }
+                catch (IOException e) {
+                    writeListener.onError(e);
+                }
+            }
+        };
+        private PrintWriter writer;
+
+        Response() {
+            super(NO_RESPONSE);
+        }
+
+        void resume() throws IOException {
+            ready = true;
+            listener.onWritePossible();
+        }
+
+        void fail(Throwable throwable) {
+            listener.onError(throwable);
+        }
+
+        String text() {
+            synchronized (body) {
+                return new String(body.toByteArray(), StandardCharsets.UTF_8);
+            }
+        }
+
+        @Override
+        public void setStatus(int status) {
+            this.status = status;
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            headers.put(name, value);
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            headers.put(name, value);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return headers.get(name);
+        }
+
+        @Override
+        public boolean containsHeader(String name) {
+            return headers.containsKey(name);
+        }
+
+        @Override
+        public void setContentType(String type) {
+            headers.put("Content-Type", type);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return output;
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            if (null == writer) {
+                writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() {
+            if (null != writer) {
+                writer.flush();
+            }
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return false;
+        }
+    }
+
+    static final class Context implements AsyncContext {
+        private final Request request;
+        private final Response response;
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private final List<AsyncListener> listeners = new ArrayList<>(2);
+        private volatile long timeout;
+
+        Context(Request request, Response response) {
+            this.request = request;
+            this.response = response;
+            request.context = this;
+        }
+
+        boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return completed.await(timeout, unit);
+        }
+
+        @Override
+        public ServletRequest getRequest() {
+            return request;
+        }
+
+        @Override
+        public ServletResponse getResponse() {
+            return response;
+        }
+
+        @Override
+        public boolean hasOriginalRequestAndResponse() {
+            return true;
+        }
+
+        @Override
+        public void dispatch() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void dispatch(String path) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void dispatch(ServletContext context, String path) {
+            throw new UnsupportedOperationException();
+        }
+
+        void disconnect() {
+            for (AsyncListener listener : new ArrayList<>(listeners)) {
+                try {
+                    listener.onError(new AsyncEvent(this, request, response, new IOException("Broken pipe")));
+                }
+                catch (IOException e) {
+                    // IGNORED
+                }
+            }
+        }
+
+        @Override
+        public void complete() {
+            response.flushBuffer();
+            for (AsyncListener listener : listeners) {
+                try {
+                    listener.onComplete(new AsyncEvent(this, request, response));
+                }
+                catch (IOException e) {
+                    // IGNORED
+                }
+            }
+            completed.countDown();
+        }
+
+        @Override
+        public void start(Runnable run) {
+            new Thread(run).start();
+        }
+
+        @Override
+        public void addListener(AsyncListener listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void addListener(AsyncListener listener, ServletRequest request, ServletResponse response) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public <T extends AsyncListener> T createListener(Class<T> clazz) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setTimeout(long timeout) {
+            this.timeout = timeout;
+        }
+
+        @Override
+        public long getTimeout() {
+            return timeout;
+        }
+    }
+
+    static ServletConfig config(Map<String, String> parameters) {
+        // logging is the one thing the servlet may ask of its context
+        ServletContext context = (ServletContext) Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[] {ServletContext.class}, (proxy, method, arguments) -> {
+            if (!"log".equals(method.getName())) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            return null;
+        });
+        return new ServletConfig() {
+            @Override
+            public String getServletName() {
+                return "relax";
+            }
+
+            @Override
+            public ServletContext getServletContext() {
+                return context;
+            }
+
+            @Override
+            public String getInitParameter(String name) {
+                return parameters.get(name);
+            }
+
+            @Override
+            public Enumeration<String> getInitParameterNames() {
+                return Collections.enumeration(parameters.keySet());
+            }
+        };
+    }
+
+    static Context exchange(String method, String path, Map<String, String> headers, Map<String, String> parameters, byte[] body) {
+        return new Context(new Request(method, path, headers, parameters, body), new Response());
+    }
+
+    private static <T> T unsupported(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[] {type}, (proxy, method, arguments) -> {
+            throw new UnsupportedOperationException(method.getName());
+        }));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.GET;
+import com.craftandresolve.relax.annotation.endpoint.POST;
+import com.craftandresolve.relax.annotation.parameter.Body;
+import com.craftandresolve.relax.annotation.service.Service;
+import com.craftandresolve.relax.type.Response;
+import io.reactivex.Single;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+
+public class TypedResponseTest {
+
+    public static class Person {
+        public int id;
+        public String name;
+    }
+
+    @Service(root = "/test", version = "v1")
+    public static class PersonService {
+
+        @POST(path = "/person", description = "Create a person")
+        public Single<Response<Person>> create(@Body Person person) {
+            person.id = 7;
+            return Single.just(Response.created("/test/v1/person/" + person.id, person));
+        }
+
+        @POST(path = "/import", description = "Queue an import")
+        public Single<Response<Person>> enqueue(@Body Person person) {
+            return Single.just(Response.accepted(person).header("X-Queue", "imports").header("Retry-After", "5"));
+        }
+
+        @POST(path = "/forget", description = "Forget everyone")
+        public Single<Response<Person>> forget() {
+            return Single.just(Response.<Person>noContent().header("X-Forgotten", "all"));
+        }
+
+        @GET(path = "/person", description = "The one person, as a plain 200")
+        public Single<Response<Person>> person() {
+            Person person = new Person();
+            person.name = "Ada";
+            return Single.just(Response.ok(person).header("X-Source", "memory"));
+        }
+
+        @GET(path = "/partial", description = "The one person, as a 203")
+        public Single<Response<Person>> partial() {
+            Person person = new Person();
+            person.name = "Ada";
+            return Single.just(new Response<>(203, person));
+        }
+    }
+
+    private RelaxServlet servlet;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("services", PersonService.class.getName());
+        parameters.put("etags", "true");
+        servlet = new RelaxServlet();
+        servlet.init(Stubs.config(parameters));
+    }
+
+    @After
+    public void tearDown() {
+        servlet.destroy();
+    }
+
+    @Test
+    public void createdCarriesItsLocationAndBody() throws Exception {
+        Stubs.Response response = call("POST", "/test/v1/person", "{\"name\":\"Ada\"}", Collections.<String, String>emptyMap());
+        assertEquals(201, response.status);
+        assertEquals("/test/v1/person/7", response.headers.get("Location"));
+        assertEquals("{\"id\":7,\"name\":\"Ada\"}", response.text());
+    }
+
+    @Test
+    public void headersAreSentWithTheStatus() throws Exception {
+        Stubs.Response response = call("POST", "/test/v1/import", "{\"name\":\"Ada\"}", Collections.<String, String>emptyMap());
+        assertEquals(202, response.status);
+        assertEquals("imports", response.headers.get("X-Queue"));
+        assertEquals("5", response.headers.get("Retry-After"));
+        assertEquals("{\"id\":0,\"name\":\"Ada\"}", response.text());
+    }
+
+    @Test
+    public void withoutABodyOnlyStatusAndHeadersAreSent() throws Exception {
+        Stubs.Response response = call("POST", "/test/v1/forget", null, Collections.<String, String>emptyMap());
+        assertEquals(204, response.status);
+        assertEquals("all", response.headers.get("X-Forgotten"));
+        assertEquals("", response.text());
+        assertNull(response.headers.get("Content-Type"));
+    }
+
+    @Test
+    public void plain200KeepsItsValidators() throws Exception {
+        Stubs.Response response = call("GET", "/test/v1/person", null, Collections.<String, String>emptyMap());
+        assertEquals(200, response.status);
+        assertEquals("memory", response.headers.get("X-Source"));
+        String etag = response.headers.get("ETag");
+        assertNotNull(etag);
+
+        Stubs.Response revalidated = call("GET", "/test/v1/person", null, Collections.singletonMap("If-None-Match", etag));
+        assertEquals(304, revalidated.status);
+        assertEquals("", revalidated.text());
+    }
+
+    @Test
+    public void otherStatusesGetNoValidators() throws Exception {
+        Stubs.Response response = call("GET", "/test/v1/partial", null, Collections.<String, String>emptyMap());
+        assertEquals(203, response.status);
+        assertNull(response.headers.get("ETag"));
+        assertEquals("{\"id\":0,\"name\":\"Ada\"}", response.text());
+
+        // a validator the client happens to hold is not compared either
+        String etag = call("GET", "/test/v1/person", null, Collections.<String, String>emptyMap()).headers.get("ETag");
+        assertEquals(203, call("GET", "/test/v1/partial", null, Collections.singletonMap("If-None-Match", etag)).status);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void headersCannotBeChangedBehindTheResponse() {
+        Response.ok("body").getHeaders().put("X-Late", "no");
+    }
+
+    private Stubs.Response call(String method, String path, String body, Map<String, String> headers) throws Exception {
+        Map<String, String> all = new HashMap<>(headers);
+        if (null != body) {
+            all.put("Content-Type", "application/json");
+        }
+        return RelaxServletTest.call(servlet, method, path, all, body);
+    }
+}
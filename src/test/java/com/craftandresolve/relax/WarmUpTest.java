@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax;
+
+import com.craftandresolve.relax.annotation.endpoint.GET;
+import com.craftandresolve.relax.annotation.endpoint.POST;
+import com.craftandresolve.relax.annotation.parameter.Body;
+import com.craftandresolve.relax.annotation.service.Service;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import io.reactivex.Single;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class WarmUpTest {
+
+    // counts what Gson does with the types it is given, since the servlet keeps its Gson to itself
+    public static class CountingAdapter<T> extends TypeAdapter<T> {
+        static final AtomicInteger created = new AtomicInteger();
+        static final AtomicInteger written = new AtomicInteger();
+        static final AtomicInteger read = new AtomicInteger();
+
+        private final T empty;
+
+        CountingAdapter(T empty) {
+            this.empty = empty;
+            created.incrementAndGet();
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            written.incrementAndGet();
+            out.beginObject().endObject();
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            read.incrementAndGet();
+            in.skipValue();
+            return empty;
+        }
+    }
+
+    public static class ItemAdapter extends CountingAdapter<Item> {
+        public ItemAdapter() {
+            super(new Item());
+        }
+    }
+
+    public static class OrderAdapter extends CountingAdapter<Order> {
+        public OrderAdapter() {
+            super(new Order());
+        }
+    }
+
+    @JsonAdapter(ItemAdapter.class)
+    public static class Item {
+    }
+
+    @JsonAdapter(OrderAdapter.class)
+    public static class Order {
+    }
+
+    @JsonAdapter(BrokenAdapter.class)
+    public static class Broken {
+    }
+
+    public static class BrokenAdapter extends TypeAdapter<Broken> {
+        @Override
+        public void write(JsonWriter out, Broken value) throws IOException {
+            throw new IOException("cannot write");
+        }
+
+        @Override
+        public Broken read(JsonReader in) throws IOException {
+            throw new IOException("cannot read");
+        }
+    }
+
+    @Service(root = "/test", version = "v1")
+    public static class OrderService {
+
+        @GET(path = "/items", description = "Lists items")
+        public Single<List<Item>> items() {
+            return Single.just(Collections.singletonList(new Item()));
+        }
+
+        @POST(path = "/order", description = "Places an order")
+        public Single<Item> order(@Body Order order) {
+            return Single.just(new Item());
+        }
+    }
+
+    @Service(root = "/broken", version = "v1")
+    public static class BrokenService {
+
+        @GET(path = "/broken", description = "Cannot be serialized")
+        public Single<Broken> broken() {
+            return Single.just(new Broken());
+        }
+    }
+
+    private final List<String> logged = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        CountingAdapter.created.set(0);
+        CountingAdapter.written.set(0);
+        CountingAdapter.read.set(0);
+    }
+
+    @Test
+    public void withoutWarmUpAdaptersWaitForTheFirstRequest() throws Exception {
+        RelaxServlet servlet = servlet(OrderService.class, null);
+        try {
+            assertEquals(0, CountingAdapter.created.get());
+            RelaxServletTest.call(servlet, "GET", "/test/v1/items", Collections.<String, String>emptyMap(), null);
+            assertEquals(1, CountingAdapter.created.get());
+        }
+        finally {
+            servlet.destroy();
+        }
+    }
+
+    @Test
+    public void adaptersAreBuiltForResponseElementAndBodyTypes() throws Exception {
+        RelaxServlet servlet = servlet(OrderService.class, "adapters");
+        try {
+            // Item as the element of a list and as a response, Order as a body
+            assertEquals(2, CountingAdapter.created.get());
+            assertEquals(0, CountingAdapter.written.get());
+            assertEquals(0, CountingAdapter.read.get());
+            assertTrue(logged.get(0), logged.get(0).startsWith("Warmed up "));
+
+            // the request finds them built
+            RelaxServletTest.call(servlet, "GET", "/test/v1/items", Collections.<String, String>emptyMap(), null);
+            assertEquals(2, CountingAdapter.created.get());
+        }
+        finally {
+            servlet.destroy();
+        }
+    }
+
+    @Test
+    public void serializationPassesASampleThroughEveryCodec() throws Exception {
+        RelaxServlet servlet = servlet(OrderService.class, "serialization");
+        try {
+            // Item and Order, each through JSON and CBOR
+            assertEquals(4, CountingAdapter.written.get());
+            assertTrue(CountingAdapter.read.get() >= 4);
+        }
+        finally {
+            servlet.destroy();
+        }
+    }
+
+    @Test
+    public void failuresAreLoggedWithoutFailingInit() throws Exception {
+        RelaxServlet servlet = servlet(BrokenService.class, "serialization");
+        try {
+            assertTrue(logged.contains("Could not warm up " + Broken.class.getName()));
+        }
+        finally {
+            servlet.destroy();
+        }
+    }
+
+    private RelaxServlet servlet(Class<?> service, String warmUp) throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("services", service.getName());
+        parameters.put("codecs", "cbor");
+        if (null != warmUp) {
+            parameters.put("warmup", warmUp);
+        }
+        RelaxServlet servlet = new RelaxServlet() {
+            @Override
+            public void log(String message) {
+                logged.add(message);
+            }
+
+            @Override
+            public void log(String message, Throwable t) {
+                logged.add(message);
+            }
+        };
+        servlet.init(Stubs.config(parameters));
+        return servlet;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2016-2018 Craft+Resolve, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.craftandresolve.relax.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+
+public class CborCodecTest {
+
+    public static class Entity {
+        public String text;
+        public int small;
+        public long large;
+        public double ratio;
+        public float half;
+        public boolean flag;
+        public String missing;
+        public List<Entity> children;
+        public Map<String, Integer> counts;
+    }
+
+    private final Gson gson = new Gson();
+    private final CborCodec codec = new CborCodec(gson);
+
+    @Test
+    public void entitiesRoundTrip() throws IOException {
+        Entity child = new Entity();
+        child.text = "child";
+        child.small = -25;
+        Entity entity = new Entity();
+        entity.text = "caf\u00e9 \u2603 \ud83d\ude00";
+        entity.small = 23;
+        entity.large = 1L << 40;
+        entity.ratio = 0.1;
+        entity.half = 1.5f;
+        entity.flag = true;
+        entity.children = Arrays.asList(child);
+        entity.counts = new LinkedHashMap<>();
+        entity.counts.put("a", 1);
+        entity.counts.put("b", 100000);
+
+        Entity decoded = (Entity) codec.decode(new ByteArrayInputStream(codec.encode(entity, Entity.class)), Entity.class);
+        // the CBOR form carries exactly what the JSON form does
+        assertEquals(gson.toJson(entity), gson.toJson(decoded));
+        assertNull(decoded.missing);
+    }
+
+    @Test
+    public void integersUseTheShortestHead() throws IOException {
+        assertEncoded("00", 0L);
+        assertEncoded("17", 23L);
+        assertEncoded("1818", 24L);
+        assertEncoded("1903e8", 1000L);
+        assertEncoded("1a000f4240", 1000000L);
+        assertEncoded("1b000000e8d4a51000", 1000000000000L);
+        assertEncoded("20", -1L);
+        assertEncoded("3863", -100L);
+    }
+
+    @Test
+    public void otherValuesMatchTheSpecification() throws IOException {
+        assertEncoded("6161", "a");
+        assertEncoded("f5", true);
+        assertEncoded("f4", false);
+        assertEncoded("fa3fc00000", 1.5);
+        assertEncoded("fb3ff199999999999a", 1.1);
+        assertEncoded("9f010203ff", Arrays.asList(1, 2, 3));
+    }
+
+    @Test
+    public void nullMembersAreLeftOut() throws IOException {
+        Entity entity = new Entity();
+        JsonElement decoded = CborReader.read(new ByteArrayInputStream(codec.encode(entity, Entity.class)));
+        assertFalse(decoded.getAsJsonObject().has("missing"));
+    }
+
+    @Test
+    public void definiteLengthsAreRead() throws IOException {
+        assertDecoded("{\"a\":1,\"b\":[2,3]}", "a26161016162820203");
+    }
+
+    @Test
+    public void indefiniteStringsAreJoined() throws IOException {
+        assertDecoded("\"streaming\"", "7f657374726561646d696e67ff");
+    }
+
+    @Test
+    public void halfFloatsAreRead() throws IOException {
+        assertEquals(1.0, read("f93c00").getAsDouble(), 0);
+        assertEquals(-4.0, read("f9c400").getAsDouble(), 0);
+        assertEquals(5.960464477539063e-8, read("f90001").getAsDouble(), 1e-20);
+    }
+
+    @Test
+    public void largeUnsignedIntegersStayExact() throws IOException {
+        assertEquals(new BigInteger("18446744073709551615"), read("1bffffffffffffffff").getAsBigInteger());
+        assertEquals(new BigInteger("-18446744073709551616"), read("3bffffffffffffffff").getAsBigInteger());
+    }
+
+    @Test
+    public void truncatedInputFails() {
+        assertFails("6561");
+        assertFails("8201");
+    }
+
+    @Test
+    public void deepNestingFails() {
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < 600; ++i) {
+            hex.append("81");
+        }
+        assertFails(hex.append("01").toString());
+    }
+
+    private void assertEncoded(String hex, Object value) throws IOException {
+        assertArrayEquals(bytes(hex), codec.encode(value, value instanceof List ? new TypeToken<List<Integer>>() {}.getType() : value.getClass()));
+    }
+
+    private static void assertDecoded(String json, String hex) throws IOException {
+        assertEquals(new JsonParser().parse(json), read(hex));
+    }
+
+    private static JsonElement read(String hex) throws IOException {
+        return CborReader.read(new ByteArrayInputStream(bytes(hex)));
+    }
+
+    private static void assertFails(String hex) {
+        try {
+            read(hex);
+            fail("read malformed CBOR " + hex);
+        }
+        catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static byte[] bytes(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}